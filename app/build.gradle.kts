@@ -82,6 +82,13 @@ android {
         viewBinding = true
         buildConfig = true
     }
+
+    // Benchmark JVM chỉ chạy khi gọi với -Pbenchmark (ví dụ ./gradlew testDebugUnitTest -Pbenchmark)
+    testOptions {
+        unitTests.all {
+            it.systemProperty("benchmark", project.hasProperty("benchmark").toString())
+        }
+    }
 }
 
 configurations.all {
@@ -145,6 +152,7 @@ dependencies {
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
     implementation("androidx.coordinatorlayout:coordinatorlayout:1.2.0")
     implementation("androidx.gridlayout:gridlayout:1.0.0")
+    implementation("androidx.asynclayoutinflater:asynclayoutinflater:1.0.0")
 
     // RecyclerView & CardView
     implementation("androidx.recyclerview:recyclerview:1.3.2")
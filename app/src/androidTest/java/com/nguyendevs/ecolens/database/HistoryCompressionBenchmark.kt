@@ -0,0 +1,125 @@
+package com.nguyendevs.ecolens.database
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.nguyendevs.ecolens.model.HistoryEntry
+import com.nguyendevs.ecolens.model.SpeciesInfo
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * So sánh kích thước file DB và thời gian truy vấn danh sách giữa lưu thường và lưu nén.
+ * Thời gian danh sách đo trên truy vấn HistorySummary mà màn hình lịch sử thực sự dùng.
+ * Kết quả được ghi ra logcat (tag HistoryCompressionBench).
+ */
+@RunWith(AndroidJUnit4::class)
+class HistoryCompressionBenchmark {
+
+    companion object {
+        private const val TAG = "HistoryCompressionBench"
+        private const val ENTRY_COUNT = 500
+        private const val QUERY_ROUNDS = 10
+    }
+
+    private lateinit var context: Context
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        context.deleteDatabase("bench_plain.db")
+        context.deleteDatabase("bench_compressed.db")
+    }
+
+    @After
+    fun tearDown() {
+        context.deleteDatabase("bench_plain.db")
+        context.deleteDatabase("bench_compressed.db")
+    }
+
+    @Test
+    fun compressedStorageIsSmallerAndListsNoSlower() = runBlocking {
+        val plain = measure("bench_plain.db", compress = false)
+        val compressed = measure("bench_compressed.db", compress = true)
+
+        Log.i(TAG, "plain: ${plain.sizeBytes} B, summary list ${plain.listQueryMs} ms, detail ${plain.detailMs} ms")
+        Log.i(TAG, "compressed: ${compressed.sizeBytes} B, summary list ${compressed.listQueryMs} ms, detail ${compressed.detailMs} ms")
+
+        assertTrue(compressed.sizeBytes < plain.sizeBytes)
+    }
+
+    private class Result(val sizeBytes: Long, val listQueryMs: Double, val detailMs: Double)
+
+    private suspend fun measure(name: String, compress: Boolean): Result {
+        val db = Room.databaseBuilder(context, HistoryDatabase::class.java, name)
+            .setJournalMode(RoomDatabase.JournalMode.TRUNCATE)
+            .build()
+        val dao = db.historyDao()
+        try {
+            repeat(ENTRY_COUNT) { index ->
+                val info = sampleInfo(index)
+                val details = if (compress) SpeciesDetailsCodec.encode(info) else null
+                dao.insert(HistoryEntry(
+                    imagePath = "/bench/$index.jpg",
+                    speciesInfo = if (details != null) SpeciesDetailsCodec.stripDetails(info) else info,
+                    timestamp = index.toLong(),
+                    compressedDetails = details
+                ))
+            }
+
+            dao.getAllHistoryNewestFirst().first()
+            var listNanos = 0L
+            repeat(QUERY_ROUNDS) {
+                val start = SystemClock.elapsedRealtimeNanos()
+                val entries = dao.getAllHistoryNewestFirst().first()
+                listNanos += SystemClock.elapsedRealtimeNanos() - start
+                assertEquals(ENTRY_COUNT, entries.size)
+            }
+
+            var detailNanos = 0L
+            repeat(QUERY_ROUNDS) { round ->
+                val start = SystemClock.elapsedRealtimeNanos()
+                val entry = dao.getHistoryById(round + 1)!!
+                val info = entry.compressedDetails?.let { SpeciesDetailsCodec.decode(it, entry.speciesInfo) }
+                    ?: entry.speciesInfo
+                detailNanos += SystemClock.elapsedRealtimeNanos() - start
+                assertEquals(sampleInfo(round).description, info.description)
+            }
+
+            db.close()
+            return Result(
+                sizeBytes = context.getDatabasePath(name).length(),
+                listQueryMs = listNanos / QUERY_ROUNDS / 1_000_000.0,
+                detailMs = detailNanos / QUERY_ROUNDS / 1_000_000.0
+            )
+        } finally {
+            if (db.isOpen) db.close()
+        }
+    }
+
+    // Văn bản HTML dài cỡ một phản hồi Gemini thực tế
+    private fun sampleInfo(index: Int): SpeciesInfo {
+        val paragraph = "<b>Loài $index</b> sống chủ yếu ở rừng nhiệt đới ẩm, thường gặp ở độ cao 200–1500 m. " +
+            "Thân cao, lá mọc so le, hoa nở vào mùa xuân và quả chín vào cuối hè.<br>"
+        return SpeciesInfo(
+            commonName = "Loài $index",
+            scientificName = "Species bench$index",
+            kingdom = "Plantae",
+            family = "Fagaceae",
+            description = paragraph.repeat(12),
+            characteristics = paragraph.repeat(10),
+            distribution = paragraph.repeat(6),
+            habitat = paragraph.repeat(6),
+            conservationStatus = paragraph.repeat(3)
+        )
+    }
+}
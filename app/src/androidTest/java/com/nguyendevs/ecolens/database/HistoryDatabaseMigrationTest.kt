@@ -0,0 +1,135 @@
+package com.nguyendevs.ecolens.database
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.nguyendevs.ecolens.model.ChatMessage
+import com.nguyendevs.ecolens.model.IdentificationJournalEntry
+import com.nguyendevs.ecolens.model.PendingIdentification
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Mở một DB ở phiên bản 3 (schema bản phát hành đầu, tạo tay) bằng Room với toàn bộ migration.
+ * Không bật fallbackToDestructiveMigration nên thiếu migration sẽ làm test lỗi, và Room tự kiểm tra
+ * schema sau migration khớp với các entity hiện tại (kể cả bảng FTS).
+ */
+@RunWith(AndroidJUnit4::class)
+class HistoryDatabaseMigrationTest {
+
+    companion object {
+        private const val DB_NAME = "migration_test.db"
+        private const val TIMESTAMP = 1_700_000_000_000L
+    }
+
+    private lateinit var context: Context
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        context.deleteDatabase(DB_NAME)
+        createVersion3()
+    }
+
+    @After
+    fun tearDown() {
+        context.deleteDatabase(DB_NAME)
+    }
+
+    @Test
+    fun migrate3To10_keepsDataAndMatchesSchema() = runBlocking {
+        val db = HistoryDatabase.builder(context, DB_NAME).build()
+        try {
+            val history = db.historyDao().getHistoryById(1)!!
+            assertEquals("Cây lim", history.speciesInfo.commonName)
+            assertEquals("Fabaceae", history.speciesInfo.family)
+            assertNull(history.compressedDetails)
+
+            // Bảng thống kê được điền từ lịch sử có sẵn
+            assertEquals(0, db.statsDao().countInconsistentBuckets())
+            assertEquals(2, db.statsDao().getTotalSightings().first())
+
+            val messages = db.chatDao().getMessagesBySession(1)
+            assertEquals(listOf("Xin chào", "Chào bạn"), messages.map { it.content })
+            assertNull(messages.first().rawContent)
+
+            // Tin nhắn cũ chưa có trong chỉ mục, tin nhắn mới được tìm thấy qua FTS
+            assertEquals(2, db.chatDao().getUnindexedMessages(10).size)
+            val id = db.chatDao().insertMessageIndexed(
+                ChatMessage(sessionId = 1, content = "<b>Rừng ngập mặn</b>", isUser = false, timestamp = TIMESTAMP + 2),
+                plainText = "Rừng ngập mặn"
+            )
+            assertEquals(listOf(id), db.chatDao().searchCandidates("ngập*").map { it.messageId })
+            assertEquals(listOf(id), db.chatDao().searchMessages("ngập*", listOf(id)).map { it.messageId })
+
+            db.pendingIdentificationDao().insert(PendingIdentification(
+                imagePath = "/pending/1.jpg",
+                languageCode = "vi",
+                imageHash = "abc",
+                createdAt = TIMESTAMP
+            ))
+            assertEquals("abc", db.pendingIdentificationDao().getPending(10).single().imageHash)
+
+            db.identificationJournalDao().upsert(IdentificationJournalEntry(
+                imageHash = "abc",
+                languageCode = "vi",
+                updatedAt = TIMESTAMP
+            ))
+            assertNotNull(db.identificationJournalDao().get("abc", "vi"))
+        } finally {
+            db.close()
+        }
+    }
+
+    // Schema Room sinh ra cho phiên bản 3: history_table, chat_sessions, chat_messages
+    private fun createVersion3() {
+        val file = context.getDatabasePath(DB_NAME).apply { parentFile?.mkdirs() }
+        val db = SQLiteDatabase.openOrCreateDatabase(file, null)
+        try {
+            db.execSQL(
+                "CREATE TABLE IF NOT EXISTS `history_table` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`imagePath` TEXT NOT NULL, `timestamp` INTEGER NOT NULL, `isFavorite` INTEGER NOT NULL, " +
+                    "`commonName` TEXT NOT NULL, `scientificName` TEXT NOT NULL, `kingdom` TEXT NOT NULL, " +
+                    "`phylum` TEXT NOT NULL, `className` TEXT NOT NULL, `taxorder` TEXT NOT NULL, " +
+                    "`family` TEXT NOT NULL, `genus` TEXT NOT NULL, `species` TEXT NOT NULL, " +
+                    "`description` TEXT NOT NULL, `characteristics` TEXT NOT NULL, `distribution` TEXT NOT NULL, " +
+                    "`habitat` TEXT NOT NULL, `conservationStatus` TEXT NOT NULL, `confidence` REAL NOT NULL)"
+            )
+            db.execSQL(
+                "CREATE TABLE IF NOT EXISTS `chat_sessions` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`title` TEXT NOT NULL, `lastMessage` TEXT NOT NULL, `timestamp` INTEGER NOT NULL)"
+            )
+            db.execSQL(
+                "CREATE TABLE IF NOT EXISTS `chat_messages` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`sessionId` INTEGER NOT NULL, `content` TEXT NOT NULL, `isUser` INTEGER NOT NULL, " +
+                    "`timestamp` INTEGER NOT NULL, `isLoading` INTEGER NOT NULL, `isStreaming` INTEGER NOT NULL, " +
+                    "FOREIGN KEY(`sessionId`) REFERENCES `chat_sessions`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )"
+            )
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_chat_messages_sessionId` ON `chat_messages` (`sessionId`)")
+
+            listOf("Cây lim" to "Fabaceae", "Sóc đen" to "Sciuridae").forEachIndexed { index, (name, family) ->
+                db.execSQL(
+                    "INSERT INTO history_table (imagePath, timestamp, isFavorite, commonName, scientificName, " +
+                        "kingdom, phylum, className, taxorder, family, genus, species, description, " +
+                        "characteristics, distribution, habitat, conservationStatus, confidence) " +
+                        "VALUES (?, ?, 0, ?, '', 'Plantae', '', '', '', ?, '', '', 'Mô tả', '', '', '', '', 0.9)",
+                    arrayOf<Any>("/history/$index.jpg", TIMESTAMP + index, name, family)
+                )
+            }
+            db.execSQL("INSERT INTO chat_sessions (id, title, lastMessage, timestamp) VALUES (1, 'Phiên', 'Chào bạn', $TIMESTAMP)")
+            db.execSQL(
+                "INSERT INTO chat_messages (sessionId, content, isUser, timestamp, isLoading, isStreaming) " +
+                    "VALUES (1, 'Xin chào', 1, $TIMESTAMP, 0, 0), (1, 'Chào bạn', 0, ${TIMESTAMP + 1}, 0, 0)"
+            )
+            db.version = 3
+        } finally {
+            db.close()
+        }
+    }
+}
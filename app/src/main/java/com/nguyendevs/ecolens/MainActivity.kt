@@ -1,9 +1,11 @@
 package com.nguyendevs.ecolens
 
+import android.Manifest
 import android.animation.ValueAnimator
 import android.content.Context
 import android.net.Uri
 import android.os.Bundle
+import android.os.Looper
 import android.view.MotionEvent
 import android.view.View
 import android.view.ViewGroup
@@ -11,11 +13,13 @@ import android.view.animation.AccelerateDecelerateInterpolator
 import android.widget.FrameLayout
 import android.widget.ImageView
 import android.widget.TextView
+import android.widget.Toast
 import androidx.activity.result.contract.ActivityResultContracts
 import androidx.appcompat.app.AppCompatActivity
 import androidx.core.view.isVisible
 import androidx.lifecycle.ViewModelProvider
 import androidx.lifecycle.lifecycleScope
+import androidx.recyclerview.widget.RecyclerView
 import androidx.transition.Fade
 import androidx.transition.TransitionManager
 import com.bumptech.glide.Glide
@@ -23,6 +27,7 @@ import com.google.android.material.bottomnavigation.BottomNavigationView
 import com.google.android.material.card.MaterialCardView
 import com.google.android.material.floatingactionbutton.FloatingActionButton
 import com.nguyendevs.ecolens.activities.CameraActivity
+import com.nguyendevs.ecolens.fragments.BatchIdentificationFragment
 import com.nguyendevs.ecolens.fragments.ChatHistoryFragment
 import com.nguyendevs.ecolens.fragments.HistoryFragment
 import com.nguyendevs.ecolens.handlers.*
@@ -30,6 +35,7 @@ import com.nguyendevs.ecolens.managers.*
 import com.nguyendevs.ecolens.model.LoadingStage
 import com.nguyendevs.ecolens.model.SpeciesInfo
 import com.nguyendevs.ecolens.utils.KeyboardUtils
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
 import com.nguyendevs.ecolens.utils.TextToSpeechGenerator
 import com.nguyendevs.ecolens.view.EcoLensViewModel
 import kotlinx.coroutines.launch
@@ -37,6 +43,12 @@ import kotlinx.coroutines.*
 
 class MainActivity : AppCompatActivity() {
 
+    companion object {
+        private const val DETAIL_SECTION_PREFETCH = 5
+        private const val HISTORY_ENTRY_PREFETCH = 6
+        private const val CHAT_MESSAGE_PREFETCH = 4
+    }
+
     private lateinit var errorCard: View
     private lateinit var errorText: TextView
     private lateinit var fabMute: FloatingActionButton
@@ -62,7 +74,8 @@ class MainActivity : AppCompatActivity() {
     private lateinit var settingsContainer: View
     private lateinit var settingsHandler: SettingsHandler
     private lateinit var speakerManager: SpeakerManager
-    private lateinit var speciesInfoCard: MaterialCardView
+    private lateinit var speciesInfoCardContainer: FrameLayout
+    private lateinit var layoutPrefetcher: LayoutPrefetcher
     private lateinit var speciesInfoHandler: SpeciesInfoHandler
     private lateinit var viewModel: EcoLensViewModel
 
@@ -76,8 +89,11 @@ class MainActivity : AppCompatActivity() {
         ActivityResultContracts.StartActivityForResult()
     ) { result ->
         if (result.resultCode == RESULT_OK) {
+            val uriStrings = result.data?.getStringArrayListExtra(CameraActivity.KEY_IMAGE_URIS)
             val uriString = result.data?.getStringExtra(CameraActivity.KEY_IMAGE_URI)
-            if (uriString != null) {
+            if (!uriStrings.isNullOrEmpty()) {
+                handleBatchImages(uriStrings.map { Uri.parse(it) })
+            } else if (uriString != null) {
                 handleCapturedImage(Uri.parse(uriString))
             }
         }
@@ -91,6 +107,11 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    private val notificationPermissionLauncher = registerForActivityResult(
+        ActivityResultContracts.RequestPermission()
+    ) { }
+    private var hasAskedNotificationPermission = false
+
     override fun attachBaseContext(newBase: Context) {
         languageManager = LanguageManager(newBase)
         super.attachBaseContext(languageManager.updateBaseContext(newBase))
@@ -110,6 +131,7 @@ class MainActivity : AppCompatActivity() {
 
         updateNavigationState(R.id.nav_home)
         preloadFragments()
+        resumeInterruptedIdentification()
     }
 
     private fun initViews() {
@@ -135,7 +157,7 @@ class MainActivity : AppCompatActivity() {
         loadingCard = findViewById(R.id.loadingCard)
         errorCard = findViewById(R.id.errorCard)
         errorText = findViewById(R.id.errorText)
-        speciesInfoCard = findViewById(R.id.speciesInfoCard)
+        speciesInfoCardContainer = findViewById(R.id.speciesInfoCardContainer)
 
     }
 
@@ -163,7 +185,9 @@ class MainActivity : AppCompatActivity() {
     }
 
     private fun initHandlers() {
-        settingsHandler = SettingsHandler(this, languageManager, settingsContainer)
+        settingsHandler = SettingsHandler(this, languageManager, settingsContainer) { enabled ->
+            viewModel.setHistoryCompressionEnabled(enabled)
+        }
         settingsHandler.setup()
 
         searchBarHandler = SearchBarHandler(
@@ -195,20 +219,8 @@ class MainActivity : AppCompatActivity() {
         speakerManager.onSpeechFinished = {
             runOnUiThread { toggleSpeakerUI(false) }
         }
-        speciesInfoHandler = SpeciesInfoHandler(
-            this,
-            speciesInfoCard,
-            onCopySuccess = { copiedText ->
-                searchBarHandler.expandSearchBar(copiedText)
-            },
-            onRetryClick = {
-                if (speakerManager.isSpeaking()) {
-                    speakerManager.pause()
-                    toggleSpeakerUI(false)
-                }
-                viewModel.retryIdentification()
-            }
-        )
+        layoutPrefetcher = LayoutPrefetcher.of(this)
+        scheduleLayoutPrefetch()
 
 
 
@@ -247,6 +259,53 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    // Tiến trình bị hủy giữa lượt nhận diện trước: hiển thị lại ảnh và tiếp tục từ bước còn dở trong nhật ký
+    private fun resumeInterruptedIdentification() {
+        lifecycleScope.launch {
+            val uri = viewModel.findInterruptedIdentification() ?: return@launch
+            val state = viewModel.uiState.value
+            if (state.isLoading || state.speciesInfo != null || imageUri != null) return@launch
+
+            fabCamera.isClickable = false
+            fabCamera.alpha = 0.5f
+            imageUri = uri
+
+            animateCardExpansion {
+                Glide.with(this@MainActivity).load(uri).centerCrop().into(imagePreview)
+                imageZoomHandler.setImageUri(uri)
+                viewModel.resumeInterruptedIdentification()
+            }
+        }
+    }
+
+    private fun handleBatchImages(uris: List<Uri>) {
+        if (!viewModel.identifyBatch(uris, languageManager.getLanguage())) {
+            Toast.makeText(this, getString(R.string.batch_busy), Toast.LENGTH_SHORT).show()
+        } else if (uris.size > BatchIdentificationPipeline.MAX_BATCH_SIZE) {
+            Toast.makeText(
+                this,
+                getString(R.string.batch_limit, BatchIdentificationPipeline.MAX_BATCH_SIZE),
+                Toast.LENGTH_SHORT
+            ).show()
+        }
+        openBatchScreen()
+    }
+
+    private fun openBatchScreen() {
+        overlayContainer.visibility = View.VISIBLE
+
+        supportFragmentManager.beginTransaction()
+            .setCustomAnimations(
+                R.anim.fade_in_2,
+                R.anim.fade_out_2,
+                R.anim.fade_in_2,
+                R.anim.fade_out_2
+            )
+            .replace(R.id.fragmentContainer, BatchIdentificationFragment())
+            .addToBackStack("batch_screen")
+            .commit()
+    }
+
     private fun animateCardExpansion(onAnimationComplete: () -> Unit) {
         if (isExpandedState) {
             onAnimationComplete()
@@ -409,9 +468,17 @@ class MainActivity : AppCompatActivity() {
         fabMute.visibility = if (isSpeaking) View.VISIBLE else View.GONE
     }
 
+    // Hỏi quyền thông báo khi ảnh đầu tiên được xếp hàng ngoại tuyến, chỉ một lần mỗi phiên
+    private fun requestNotificationPermissionOnce() {
+        if (hasAskedNotificationPermission || !permissionManager.needsNotificationPermission()) return
+        hasAskedNotificationPermission = true
+        notificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS)
+    }
+
     private fun setupObservers() {
         lifecycleScope.launch {
             viewModel.uiState.collect { state ->
+                if (state.isQueuedOffline) requestNotificationPermissionOnce()
                 if (homeContainer.visibility == View.VISIBLE) {
                     updateHomeUI(state)
                 }
@@ -445,7 +512,7 @@ class MainActivity : AppCompatActivity() {
         if (error != null) {
             errorText.text = error
             errorCard.isVisible = true
-            speciesInfoCard.isVisible = false
+            speciesInfoCardContainer.isVisible = false
             fabSpeak.isVisible = false
 
             if (::initialStateLayout.isInitialized && initialStateLayout.visibility == View.VISIBLE) {
@@ -453,20 +520,22 @@ class MainActivity : AppCompatActivity() {
             }
         }
         else if (loadingStage == LoadingStage.NONE && state.speciesInfo == null) {
-            speciesInfoCard.isVisible = false
+            speciesInfoCardContainer.isVisible = false
             errorCard.isVisible = false
             fabSpeak.isVisible = false
-            speciesInfoHandler.displaySpeciesInfo(
-                SpeciesInfo(scientificName = "", commonName = ""),
-                null,
-                LoadingStage.NONE
-            )
+            if (::speciesInfoHandler.isInitialized) {
+                speciesInfoHandler.displaySpeciesInfo(
+                    SpeciesInfo(scientificName = "", commonName = ""),
+                    null,
+                    LoadingStage.NONE
+                )
+            }
         }
         else if (state.speciesInfo != null) {
-            speciesInfoCard.isVisible = true
+            speciesInfoCardContainer.isVisible = true
             errorCard.isVisible = false
 
-            speciesInfoHandler.displaySpeciesInfo(state.speciesInfo, imageUri, loadingStage)
+            ensureSpeciesInfoHandler().displaySpeciesInfo(state.speciesInfo, imageUri, loadingStage)
 
             if (loadingStage == LoadingStage.COMPLETE && fabMute.visibility != View.VISIBLE) {
                 fabSpeak.isVisible = true
@@ -476,6 +545,45 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    // Inflate nền thẻ thông tin loài và các mục danh sách hay dùng khi luồng chính rảnh lần đầu
+    private fun scheduleLayoutPrefetch() {
+        Looper.myQueue().addIdleHandler {
+            if (!isDestroyed) {
+                if (!::speciesInfoHandler.isInitialized) {
+                    layoutPrefetcher.prefetch(R.layout.card_species_info_modern, 1, speciesInfoCardContainer)
+                }
+                val listParent = RecyclerView(this)
+                layoutPrefetcher.prefetch(R.layout.item_history_entry_modern, HISTORY_ENTRY_PREFETCH, listParent)
+                layoutPrefetcher.prefetch(R.layout.item_chat_message_modern, CHAT_MESSAGE_PREFETCH, listParent)
+                layoutPrefetcher.prefetch(R.layout.item_detail_section, DETAIL_SECTION_PREFETCH, listParent)
+            }
+            false
+        }
+    }
+
+    // Thẻ chỉ được gắn vào màn hình khi có kết quả nhận diện đầu tiên
+    private fun ensureSpeciesInfoHandler(): SpeciesInfoHandler {
+        if (::speciesInfoHandler.isInitialized) return speciesInfoHandler
+
+        val card = layoutPrefetcher.inflate(R.layout.card_species_info_modern, speciesInfoCardContainer) as MaterialCardView
+        speciesInfoCardContainer.addView(card)
+        speciesInfoHandler = SpeciesInfoHandler(
+            this,
+            card,
+            onCopySuccess = { copiedText ->
+                searchBarHandler.expandSearchBar(copiedText)
+            },
+            onRetryClick = {
+                if (speakerManager.isSpeaking()) {
+                    speakerManager.pause()
+                    toggleSpeakerUI(false)
+                }
+                viewModel.retryIdentification()
+            }
+        )
+        return speciesInfoHandler
+    }
+
     override fun dispatchTouchEvent(event: MotionEvent): Boolean {
         KeyboardUtils.handleTouchEvent(this, event)
         return super.dispatchTouchEvent(event)
@@ -488,7 +596,7 @@ class MainActivity : AppCompatActivity() {
 
     override fun onDestroy() {
         speakerManager.shutdown()
-        speciesInfoHandler.onDestroy()
+        if (::speciesInfoHandler.isInitialized) speciesInfoHandler.onDestroy()
         super.onDestroy()
     }
 
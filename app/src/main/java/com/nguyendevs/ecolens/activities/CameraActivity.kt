@@ -1,6 +1,7 @@
 package com.nguyendevs.ecolens.activities
 
 import android.annotation.SuppressLint
+import android.content.ClipData
 import android.content.Context
 import android.content.Intent
 import android.media.MediaScannerConnection
@@ -28,6 +29,7 @@ import androidx.core.content.ContextCompat
 import androidx.core.content.FileProvider
 import com.google.android.material.floatingactionbutton.FloatingActionButton
 import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.network.ConnectionWarmer
 import java.io.File
 import java.text.SimpleDateFormat
 import java.util.*
@@ -40,6 +42,7 @@ class CameraActivity : AppCompatActivity() {
     companion object {
         private const val FILENAME_FORMAT = "yyyy-MM-dd-HH-mm-ss-SSS"
         const val KEY_IMAGE_URI = "image_uri"
+        const val KEY_IMAGE_URIS = "image_uris"
 
         fun newIntent(context: Context): Intent {
             return Intent(context, CameraActivity::class.java)
@@ -66,24 +69,33 @@ class CameraActivity : AppCompatActivity() {
     private var cameraControl: CameraControl? = null
     private var cameraInfo: CameraInfo? = null
 
-    private val selectImageFromGalleryResult = registerForActivityResult(ActivityResultContracts.GetContent()) { uri: Uri? ->
-        uri?.let {
-            val resultIntent = Intent().apply {
-                data = it
-                flags = Intent.FLAG_GRANT_READ_URI_PERMISSION
-                putExtra(KEY_IMAGE_URI, it.toString())
+    // Chọn một ảnh giữ luồng cũ; chọn nhiều ảnh thì trả về danh sách để MainActivity nhận diện hàng loạt
+    private val selectImageFromGalleryResult = registerForActivityResult(ActivityResultContracts.GetMultipleContents()) { uris: List<Uri> ->
+        if (uris.isEmpty()) return@registerForActivityResult
 
+        val resultIntent = Intent().apply {
+            data = uris.first()
+            flags = Intent.FLAG_GRANT_READ_URI_PERMISSION
+            if (uris.size == 1) {
+                putExtra(KEY_IMAGE_URI, uris.first().toString())
+            } else {
+                // ClipData để quyền đọc được cấp cho mọi URI, không chỉ data
+                clipData = ClipData.newRawUri(null, uris.first()).apply {
+                    uris.drop(1).forEach { addItem(ClipData.Item(it)) }
+                }
+                putStringArrayListExtra(KEY_IMAGE_URIS, ArrayList(uris.map { it.toString() }))
             }
-            setResult(RESULT_OK, resultIntent)
-            finish()
-            overridePendingTransition(R.anim.hold, R.anim.slide_out_bottom)
         }
+        setResult(RESULT_OK, resultIntent)
+        finish()
+        overridePendingTransition(R.anim.hold, R.anim.slide_out_bottom)
     }
 
     @SuppressLint("ClickableViewAccessibility")
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_camera_modern)
+        lifecycle.addObserver(ConnectionWarmer())
 
         viewFinder = findViewById(R.id.viewFinder)
         closeButton = findViewById(R.id.closeButton)
@@ -0,0 +1,109 @@
+package com.nguyendevs.ecolens.adapters
+
+import android.net.Uri
+import android.view.View
+import android.view.ViewGroup
+import android.widget.ImageView
+import android.widget.TextView
+import androidx.core.content.ContextCompat
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListAdapter
+import androidx.recyclerview.widget.RecyclerView
+import com.bumptech.glide.Glide
+import com.google.android.material.progressindicator.LinearProgressIndicator
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.model.BatchItem
+import com.nguyendevs.ecolens.model.BatchStage
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+
+class BatchItemAdapter(
+    private val clickListener: (BatchItem) -> Unit
+) : ListAdapter<BatchItem, BatchItemAdapter.BatchViewHolder>(BatchDiffCallback) {
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): BatchViewHolder {
+        val view = LayoutPrefetcher.inflate(R.layout.item_batch_entry, parent)
+        return BatchViewHolder(view)
+    }
+
+    override fun onBindViewHolder(holder: BatchViewHolder, position: Int) {
+        holder.bind(getItem(position))
+    }
+
+    inner class BatchViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
+        private val ivImage: ImageView = itemView.findViewById(R.id.ivBatchImage)
+        private val tvName: TextView = itemView.findViewById(R.id.tvBatchName)
+        private val tvStatus: TextView = itemView.findViewById(R.id.tvBatchStatus)
+        private val progressItem: LinearProgressIndicator = itemView.findViewById(R.id.progressBatchItem)
+        private val ivState: ImageView = itemView.findViewById(R.id.ivBatchState)
+        private var boundUri: Uri? = null
+
+        fun bind(item: BatchItem) {
+            val context = itemView.context
+
+            // Chỉ tải lại ảnh khi đổi mục, tránh nháy mỗi lần trạng thái thay đổi
+            if (boundUri != item.imageUri) {
+                boundUri = item.imageUri
+                Glide.with(ivImage).load(item.imageUri).centerCrop().into(ivImage)
+            }
+
+            tvName.text = item.commonName
+                ?: item.scientificName
+                ?: context.getString(R.string.batch_item_title, item.index + 1)
+
+            tvStatus.text = when (item.stage) {
+                BatchStage.WAITING -> context.getString(R.string.batch_stage_waiting)
+                BatchStage.DECODING -> context.getString(R.string.batch_stage_decoding)
+                BatchStage.UPLOADING -> context.getString(R.string.batch_stage_uploading)
+                BatchStage.DESCRIBING -> context.getString(R.string.batch_stage_describing)
+                BatchStage.RETRYING -> context.getString(R.string.batch_stage_retrying)
+                BatchStage.DONE -> context.getString(R.string.batch_stage_done)
+                BatchStage.NO_RESULT -> context.getString(R.string.error_no_result)
+                BatchStage.QUEUED_OFFLINE -> context.getString(R.string.batch_stage_queued)
+                BatchStage.FAILED -> item.error ?: context.getString(R.string.error)
+            }
+
+            if (item.stage.isFinished) {
+                progressItem.visibility = View.GONE
+            } else {
+                progressItem.visibility = View.VISIBLE
+                progressItem.setProgressCompat(progressOf(item.stage), true)
+            }
+
+            val (iconRes, tintRes) = when (item.stage) {
+                BatchStage.DONE -> R.drawable.ic_check_circle to R.color.success
+                BatchStage.QUEUED_OFFLINE -> R.drawable.ic_check_warning_circle to R.color.warning
+                BatchStage.NO_RESULT, BatchStage.FAILED -> R.drawable.ic_warning to R.color.error
+                else -> null to null
+            }
+            if (iconRes != null && tintRes != null) {
+                ivState.setImageResource(iconRes)
+                ivState.setColorFilter(ContextCompat.getColor(context, tintRes))
+                ivState.visibility = View.VISIBLE
+            } else {
+                ivState.visibility = View.GONE
+            }
+
+            itemView.isClickable = item.historyId != null
+            itemView.setOnClickListener { if (item.historyId != null) clickListener(item) }
+        }
+    }
+
+    // Tiến độ ước lượng theo bước; bước tra cứu thông tin loài chiếm phần lớn thời gian
+    private fun progressOf(stage: BatchStage): Int = when (stage) {
+        BatchStage.WAITING -> 0
+        BatchStage.DECODING -> 10
+        BatchStage.UPLOADING -> 30
+        BatchStage.DESCRIBING, BatchStage.RETRYING -> 60
+        else -> 100
+    }
+
+    private object BatchDiffCallback : DiffUtil.ItemCallback<BatchItem>() {
+        override fun areItemsTheSame(oldItem: BatchItem, newItem: BatchItem): Boolean {
+            return oldItem.index == newItem.index && oldItem.imageUri == newItem.imageUri
+        }
+
+        override fun areContentsTheSame(oldItem: BatchItem, newItem: BatchItem): Boolean {
+            return oldItem == newItem
+        }
+    }
+}
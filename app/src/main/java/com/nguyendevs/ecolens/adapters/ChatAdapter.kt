@@ -8,21 +8,20 @@ import android.text.Spannable
 import android.text.SpannableString
 import android.text.style.ForegroundColorSpan
 import android.view.Gravity
-import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageView
 import android.widget.LinearLayout
 import android.widget.TextView
 import androidx.core.content.ContextCompat
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import com.google.android.material.card.MaterialCardView
 import com.nguyendevs.ecolens.R
 import com.nguyendevs.ecolens.model.ChatMessage
-import io.noties.markwon.AbstractMarkwonPlugin
-import io.noties.markwon.Markwon
-import io.noties.markwon.core.MarkwonTheme
-import io.noties.markwon.html.HtmlPlugin
+import com.nguyendevs.ecolens.utils.IncrementalMarkdownRenderer
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+import com.nguyendevs.ecolens.utils.RenderEngine
 
 class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerView.Adapter<ChatAdapter.ChatViewHolder>() {
 
@@ -33,28 +32,9 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
     }
 
     private val messages = mutableListOf<ChatMessage>()
-    private lateinit var markwon: Markwon
 
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ChatViewHolder {
-        if (!::markwon.isInitialized) {
-            markwon = Markwon.builder(parent.context)
-                .usePlugin(HtmlPlugin.create())
-                .usePlugin(object : AbstractMarkwonPlugin() {
-                    override fun configureTheme(builder: MarkwonTheme.Builder) {
-                        builder
-                            .headingTextSizeMultipliers(floatArrayOf(
-                                2.0f,   // h1 (#)
-                                1.5f,   // h2 (##)
-                                1.17f,  // h3 (###)
-                                1.0f,   // h4 (####)
-                                0.83f,  // h5 (#####)
-                                0.67f   // h6 (######)
-                            ))
-                    }
-                })
-                .build()
-        }
-        val view = LayoutInflater.from(parent.context).inflate(R.layout.item_chat_message_modern, parent, false)
+        val view = LayoutPrefetcher.inflate(R.layout.item_chat_message_modern, parent)
         return ChatViewHolder(view)
     }
 
@@ -67,7 +47,7 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
     }
 
     override fun onBindViewHolder(holder: ChatViewHolder, position: Int) {
-        holder.bind(messages[position], position)
+        holder.bind(messages[position], position, position == messages.size - 1, actionListener)
     }
 
     override fun onViewRecycled(holder: ChatViewHolder) {
@@ -78,28 +58,48 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
     override fun getItemCount(): Int = messages.size
 
     fun submitList(newMessages: List<ChatMessage>) {
-        val oldSize = messages.size
-        val newSize = newMessages.size
+        val oldMessages = messages.toList()
+        val diff = DiffUtil.calculateDiff(MessageDiffCallback(oldMessages, newMessages))
 
         messages.clear()
         messages.addAll(newMessages)
+        diff.dispatchUpdatesTo(this)
 
-        if (newSize > oldSize) {
-            notifyItemRangeInserted(oldSize, newSize - oldSize)
-            if (oldSize > 0) notifyItemChanged(oldSize - 1)
-        } else if (newSize == oldSize && newSize > 0) {
-            val lastMsg = messages[newSize - 1]
-            if (lastMsg.isStreaming) {
-                notifyItemChanged(newSize - 1, "STREAMING")
-            } else {
-                notifyItemChanged(newSize - 1)
-            }
-        } else {
-            notifyDataSetChanged()
+        // Tin nhắn cuối cũ cần vẽ lại để ẩn nút tạo lại câu trả lời
+        val oldLast = oldMessages.lastOrNull() ?: return
+        if (oldLast.id != newMessages.lastOrNull()?.id) {
+            val index = messages.indexOfFirst { it.id == oldLast.id }
+            if (index != -1) notifyItemChanged(index)
+        }
+    }
+
+    fun lastMessageId(): Long? = messages.lastOrNull()?.id
+
+    private class MessageDiffCallback(
+        private val oldList: List<ChatMessage>,
+        private val newList: List<ChatMessage>
+    ) : DiffUtil.Callback() {
+        override fun getOldListSize() = oldList.size
+        override fun getNewListSize() = newList.size
+
+        override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+            return oldList[oldItemPosition].id == newList[newItemPosition].id
+        }
+
+        override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+            return oldList[oldItemPosition] == newList[newItemPosition]
+        }
+
+        override fun getChangePayload(oldItemPosition: Int, newItemPosition: Int): Any? {
+            val oldItem = oldList[oldItemPosition]
+            val newItem = newList[newItemPosition]
+            return if (oldItem.isStreaming && newItem.isStreaming) "STREAMING" else null
         }
     }
 
-    inner class ChatViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
+    // Holder nằm trong pool dùng chung giữa các ChatFragment nên không giữ tham chiếu tới adapter;
+    // listener và vị trí trong danh sách được truyền vào mỗi lần bind
+    class ChatViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
         private val container: LinearLayout = itemView.findViewById(R.id.chatContainer)
         private val cardView: MaterialCardView = itemView.findViewById(R.id.cardMessage)
         private val tvMessage: TextView = itemView.findViewById(R.id.tvMessage)
@@ -111,6 +111,7 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
         private val handler = Handler(Looper.getMainLooper())
         private var loopCount = 0
         private var cursorAnimator: ValueAnimator? = null
+        private val streamingRenderer by lazy { IncrementalMarkdownRenderer(RenderEngine.markwon(itemView.context)) }
 
         private val loadingAnimateRunnable = object : Runnable {
             override fun run() {
@@ -134,12 +135,13 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
 
         fun bindStreamingText(message: ChatMessage) {
             if (message.isStreaming) {
-                markwon.setMarkdown(tvMessage, message.content + " ▌")
+                streamingRenderer.render(tvMessage, message.id, message.content)
             }
         }
 
-        fun bind(message: ChatMessage, position: Int) {
+        fun bind(message: ChatMessage, position: Int, isLast: Boolean, actionListener: OnChatActionListener) {
             stopAnimation()
+            if (!message.isStreaming) streamingRenderer.reset()
             layoutAiActions.visibility = View.GONE
             tvMessage.alpha = 1f
 
@@ -167,7 +169,7 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
                     layoutAiActions.visibility = View.GONE
                 }
                 message.isUser -> {
-                    markwon.setMarkdown(tvMessage, message.content)
+                    RenderEngine.setMarkdown(tvMessage, message.content)
                     container.gravity = Gravity.END
                     cardView.setCardBackgroundColor(ContextCompat.getColor(itemView.context, R.color.green_primary))
                     tvMessage.setTextColor(ContextCompat.getColor(itemView.context, R.color.white))
@@ -177,14 +179,14 @@ class ChatAdapter(private val actionListener: OnChatActionListener) : RecyclerVi
                     }
                 }
                 else -> {
-                    markwon.setMarkdown(tvMessage, message.content)
+                    RenderEngine.setMarkdown(tvMessage, message.content)
                     container.gravity = Gravity.START
                     cardView.setCardBackgroundColor(ContextCompat.getColor(itemView.context, R.color.white))
                     tvMessage.setTextColor(ContextCompat.getColor(itemView.context, R.color.text_primary))
 
                     if (position > 0) {
                         layoutAiActions.visibility = View.VISIBLE
-                        btnRenewAi.visibility = if (position == messages.size - 1) View.VISIBLE else View.GONE
+                        btnRenewAi.visibility = if (isLast) View.VISIBLE else View.GONE
                         btnCopyAi.visibility = View.VISIBLE
                         btnShareAi.visibility = View.VISIBLE
 
@@ -0,0 +1,49 @@
+package com.nguyendevs.ecolens.adapters
+
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.TextView
+import androidx.core.text.HtmlCompat
+import androidx.recyclerview.widget.RecyclerView
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.model.ChatSearchResult
+import java.text.SimpleDateFormat
+import java.util.*
+
+class ChatSearchResultAdapter(
+    private var results: List<ChatSearchResult>,
+    private val onClick: (ChatSearchResult) -> Unit
+) : RecyclerView.Adapter<ChatSearchResultAdapter.ViewHolder>() {
+
+    private val dateTimeFormatter = SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault())
+
+    fun updateList(newList: List<ChatSearchResult>) {
+        results = newList
+        notifyDataSetChanged()
+    }
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
+        val view = LayoutInflater.from(parent.context).inflate(R.layout.item_chat_search_result, parent, false)
+        return ViewHolder(view)
+    }
+
+    override fun onBindViewHolder(holder: ViewHolder, position: Int) {
+        holder.bind(results[position])
+    }
+
+    override fun getItemCount() = results.size
+
+    inner class ViewHolder(view: View) : RecyclerView.ViewHolder(view) {
+        private val tvSessionTitle: TextView = view.findViewById(R.id.tvSessionTitle)
+        private val tvSnippet: TextView = view.findViewById(R.id.tvSnippet)
+        private val tvTime: TextView = view.findViewById(R.id.tvTime)
+
+        fun bind(result: ChatSearchResult) {
+            tvSessionTitle.text = result.sessionTitle
+            tvSnippet.text = HtmlCompat.fromHtml(result.snippet, HtmlCompat.FROM_HTML_MODE_COMPACT)
+            tvTime.text = dateTimeFormatter.format(Date(result.timestamp))
+            itemView.setOnClickListener { onClick(result) }
+        }
+    }
+}
@@ -1,70 +1,141 @@
 package com.nguyendevs.ecolens.adapters
 
-import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageView
 import android.widget.TextView
 import androidx.recyclerview.widget.RecyclerView
+import com.google.android.material.card.MaterialCardView
 import com.nguyendevs.ecolens.R
 import com.nguyendevs.ecolens.model.ChatSession
-import io.noties.markwon.Markwon
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+import com.nguyendevs.ecolens.utils.RenderEngine
 import java.text.SimpleDateFormat
 import java.util.*
 
 class ChatSessionAdapter(
     private var sessions: List<ChatSession>,
-    private val onClick: (ChatSession) -> Unit
+    private val onClick: (ChatSession) -> Unit,
+    private val onSelectionChanged: (Int) -> Unit = {}
 ) : RecyclerView.Adapter<ChatSessionAdapter.ViewHolder>() {
 
+    private val selectedIds = LinkedHashSet<Long>()
+
+    val isSelectionMode: Boolean
+        get() = selectedIds.isNotEmpty()
+
     private val dateFormatter = SimpleDateFormat("dd/MM/yyyy", Locale.getDefault())
     private val timeFormatter = SimpleDateFormat("HH:mm", Locale.getDefault())
-    private lateinit var markwon: Markwon
 
     fun updateList(newList: List<ChatSession>) {
         sessions = newList
+        val sizeBefore = selectedIds.size
+        if (selectedIds.isNotEmpty()) {
+            val currentIds = newList.mapTo(HashSet()) { it.id }
+            selectedIds.retainAll(currentIds)
+        }
         notifyDataSetChanged()
+        if (selectedIds.size != sizeBefore) onSelectionChanged(selectedIds.size)
     }
 
-    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
-        if (!::markwon.isInitialized) {
-            markwon = Markwon.create(parent.context)
+    fun getSelectedIds(): List<Long> = selectedIds.toList()
+
+    fun clearSelection() {
+        if (selectedIds.isEmpty()) return
+        selectedIds.clear()
+        notifyDataSetChanged()
+        onSelectionChanged(0)
+    }
+
+    private val onItemLongClick: (Int) -> Unit = { position -> toggleSelection(position) }
+
+    // Trả về true khi phiên được mở (không ở chế độ chọn), để holder chạy vòng tải
+    private val onItemClick: (Int) -> Boolean = { position ->
+        when {
+            position == RecyclerView.NO_POSITION -> false
+            isSelectionMode -> {
+                toggleSelection(position)
+                false
+            }
+            else -> {
+                onClick(sessions[position])
+                true
+            }
         }
-        val view = LayoutInflater.from(parent.context).inflate(R.layout.item_chat_entry_modern, parent, false)
+    }
+
+    private fun toggleSelection(position: Int) {
+        if (position == RecyclerView.NO_POSITION) return
+        val id = sessions[position].id
+        if (!selectedIds.remove(id)) selectedIds.add(id)
+        notifyItemChanged(position)
+        onSelectionChanged(selectedIds.size)
+    }
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
+        val view = LayoutPrefetcher.inflate(R.layout.item_chat_entry_modern, parent)
         return ViewHolder(view)
     }
 
     override fun onBindViewHolder(holder: ViewHolder, position: Int) {
         val session = sessions[position]
 
+        val dateText = dateFormatter.format(Date(session.timestamp))
         val isFirstOfDay = position == 0 ||
-                dateFormatter.format(Date(session.timestamp)) != dateFormatter.format(Date(sessions[position - 1].timestamp))
-
-        holder.bind(session, isFirstOfDay)
+                dateText != dateFormatter.format(Date(sessions[position - 1].timestamp))
+
+        holder.bind(
+            session = session,
+            showHeader = isFirstOfDay,
+            dateText = dateText,
+            timeText = timeFormatter.format(Date(session.timestamp)),
+            isSelected = session.id in selectedIds,
+            onClick = onItemClick,
+            onLongClick = onItemLongClick
+        )
     }
 
     override fun getItemCount() = sessions.size
 
-    inner class ViewHolder(view: View) : RecyclerView.ViewHolder(view) {
+    // Holder nằm trong pool dùng chung của Activity nên không giữ tham chiếu tới adapter;
+    // dữ liệu hiển thị và xử lý chạm được truyền vào mỗi lần bind
+    class ViewHolder(view: View) : RecyclerView.ViewHolder(view) {
         val tvDate: TextView = view.findViewById(R.id.tvDateHeader)
         val tvTitle: TextView = view.findViewById(R.id.tvTitle)
         val tvLastMessage: TextView = view.findViewById(R.id.tvLastMessage)
         val tvTime: TextView = view.findViewById(R.id.tvTime)
-        val card: View = view.findViewById(R.id.cardSession)
+        val card: MaterialCardView = view.findViewById(R.id.cardSession)
 
         val ivLoadingRing: ImageView = view.findViewById(R.id.ivLoadingRing)
 
-        fun bind(session: ChatSession, showHeader: Boolean) {
+        fun bind(
+            session: ChatSession,
+            showHeader: Boolean,
+            dateText: String,
+            timeText: String,
+            isSelected: Boolean,
+            onClick: (Int) -> Boolean,
+            onLongClick: (Int) -> Unit
+        ) {
             tvDate.visibility = if (showHeader) View.VISIBLE else View.GONE
-            tvDate.text = dateFormatter.format(Date(session.timestamp))
+            tvDate.text = dateText
             ivLoadingRing.visibility = View.INVISIBLE
             ivLoadingRing.animate().cancel()
             tvTitle.text = session.title
-            markwon.setMarkdown(tvLastMessage, session.lastMessage)
+            RenderEngine.setMarkdown(tvLastMessage, session.lastMessage)
 
-            tvTime.text = timeFormatter.format(Date(session.timestamp))
+            tvTime.text = timeText
+
+            card.setCardBackgroundColor(card.context.getColor(if (isSelected) R.color.primary_10 else R.color.surface))
+
+            card.setOnLongClickListener {
+                onLongClick(bindingAdapterPosition)
+                true
+            }
 
             card.setOnClickListener {
+                if (!onClick(bindingAdapterPosition)) return@setOnClickListener
+
                 ivLoadingRing.visibility = View.VISIBLE
                 ivLoadingRing.alpha = 1f
 
@@ -83,8 +154,6 @@ class ChatSessionAdapter(
                             .start()
                     }
                     .start()
-
-                onClick(session)
             }
         }
     }
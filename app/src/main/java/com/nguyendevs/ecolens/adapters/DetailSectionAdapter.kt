@@ -0,0 +1,52 @@
+package com.nguyendevs.ecolens.adapters
+
+import android.view.View
+import android.view.ViewGroup
+import android.widget.TextView
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListAdapter
+import androidx.recyclerview.widget.RecyclerView
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+import com.nguyendevs.ecolens.utils.TextRenderService
+import kotlinx.coroutines.CoroutineScope
+
+class DetailSectionAdapter(
+    private val prefetcher: LayoutPrefetcher,
+    private val renderScope: CoroutineScope
+) : ListAdapter<DetailSectionAdapter.Section, DetailSectionAdapter.SectionViewHolder>(SectionDiffCallback) {
+
+    data class Section(val title: String, val html: String)
+
+    // Ưu tiên view đã inflate nền từ LayoutPrefetcher
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): SectionViewHolder {
+        val view = prefetcher.inflate(R.layout.item_detail_section, parent)
+        return SectionViewHolder(view)
+    }
+
+    override fun onBindViewHolder(holder: SectionViewHolder, position: Int) {
+        holder.bind(getItem(position), renderScope)
+    }
+
+    // Holder nằm trong pool dùng chung của Activity nên không giữ tham chiếu tới adapter;
+    // scope của fragment hiện tại được truyền vào mỗi lần bind
+    class SectionViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
+        private val tvTitle: TextView = itemView.findViewById(R.id.tvSectionTitle)
+        private val tvContent: TextView = itemView.findViewById(R.id.tvSectionContent)
+
+        fun bind(section: Section, renderScope: CoroutineScope) {
+            tvTitle.text = section.title
+            TextRenderService.setHtml(tvContent, section.html, renderScope)
+        }
+    }
+
+    private object SectionDiffCallback : DiffUtil.ItemCallback<Section>() {
+        override fun areItemsTheSame(oldItem: Section, newItem: Section): Boolean {
+            return oldItem.title == newItem.title
+        }
+
+        override fun areContentsTheSame(oldItem: Section, newItem: Section): Boolean {
+            return oldItem == newItem
+        }
+    }
+}
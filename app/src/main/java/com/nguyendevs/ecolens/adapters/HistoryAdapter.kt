@@ -1,128 +1,209 @@
 package com.nguyendevs.ecolens.adapters
 
-import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageView
 import android.widget.TextView
+import androidx.recyclerview.widget.AsyncDifferConfig
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
 import com.nguyendevs.ecolens.R
-import com.nguyendevs.ecolens.model.HistoryEntry
-import io.noties.markwon.Markwon
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.Locale
-import java.util.TimeZone
+import com.nguyendevs.ecolens.model.HistoryListItem
+import com.nguyendevs.ecolens.model.HistorySummary
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+import com.nguyendevs.ecolens.utils.RenderEngine
+import com.nguyendevs.ecolens.utils.TextRenderService
+import kotlinx.coroutines.CoroutineScope
+import java.util.concurrent.Executors
 
 class HistoryAdapter(
-    private var historyList: List<HistoryEntry>,
-    private val markwon: Markwon,
-    private val clickListener: (HistoryEntry) -> Unit,
-    private val favoriteClickListener: (HistoryEntry) -> Unit
-) : RecyclerView.Adapter<HistoryAdapter.HistoryViewHolder>() {
+    private val renderScope: CoroutineScope,
+    private val clickListener: (HistorySummary) -> Unit,
+    private val favoriteClickListener: (HistorySummary) -> Unit,
+    private val selectionListener: (Int) -> Unit = {}
+) : ListAdapter<HistoryListItem, HistoryAdapter.HistoryViewHolder>(
+    AsyncDifferConfig.Builder(HistoryDiffCallback)
+        .setBackgroundThreadExecutor(diffExecutor)
+        .build()
+) {
+
+    private val selectedIds = LinkedHashSet<Int>()
+
+    val isSelectionMode: Boolean
+        get() = selectedIds.isNotEmpty()
 
     companion object {
-        private val dateFormatter = SimpleDateFormat("dd/MM/yyyy", Locale.getDefault()).apply {
-            timeZone = TimeZone.getDefault()
+        private const val PAYLOAD_FAVORITE = 1
+        private const val PAYLOAD_TIME = 1 shl 1
+        private const val PAYLOAD_GROUP = 1 shl 2
+        private const val PAYLOAD_SELECTION = 1 shl 3
+
+        // Một luồng nền dùng chung cho mọi lần tính diff của danh sách lịch sử
+        private val diffExecutor = Executors.newSingleThreadExecutor()
+    }
+
+    init {
+        setHasStableIds(true)
+    }
+
+    fun updateList(newList: List<HistoryListItem>) {
+        submitList(newList) {
+            val sizeBefore = selectedIds.size
+            if (selectedIds.isNotEmpty()) {
+                val currentIds = currentList.mapTo(HashSet()) { it.entry.id }
+                selectedIds.retainAll(currentIds)
+            }
+            if (selectedIds.size != sizeBefore) selectionListener(selectedIds.size)
         }
-        private val timeFormatter = SimpleDateFormat("HH:mm", Locale.getDefault()).apply {
-            timeZone = TimeZone.getDefault()
+    }
+
+    fun getSelectedIds(): List<Int> = selectedIds.toList()
+
+    fun isSelected(id: Int): Boolean = id in selectedIds
+
+    // Tất cả mục đang chọn đều đã yêu thích
+    fun areAllSelectedFavorite(): Boolean {
+        return currentList.filter { it.entry.id in selectedIds }.all { it.entry.isFavorite }
+    }
+
+    fun clearSelection() {
+        if (selectedIds.isEmpty()) return
+        selectedIds.clear()
+        notifyItemRangeChanged(0, itemCount, PAYLOAD_SELECTION)
+        selectionListener(0)
+    }
+
+    private val onItemClick: (Int) -> Unit = { position ->
+        if (position != RecyclerView.NO_POSITION) {
+            if (isSelectionMode) toggleSelection(position) else clickListener(getItem(position).entry)
         }
     }
 
-    fun updateList(newList: List<HistoryEntry>) {
-        historyList = newList
-        notifyDataSetChanged()
+    private val onItemLongClick: (Int) -> Unit = { position -> toggleSelection(position) }
+
+    private fun toggleSelection(position: Int) {
+        if (position == RecyclerView.NO_POSITION) return
+        val id = getItem(position).entry.id
+        if (!selectedIds.remove(id)) selectedIds.add(id)
+        notifyItemChanged(position, PAYLOAD_SELECTION)
+        selectionListener(selectedIds.size)
     }
 
+    override fun getItemId(position: Int): Long = getItem(position).entry.id.toLong()
+
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): HistoryViewHolder {
-        val view = LayoutInflater.from(parent.context)
-            .inflate(R.layout.item_history_entry_modern, parent, false)
+        val view = LayoutPrefetcher.inflate(R.layout.item_history_entry_modern, parent)
         return HistoryViewHolder(view)
     }
 
-    override fun onBindViewHolder(holder: HistoryViewHolder, position: Int) {
-        val entry = historyList[position]
+    override fun onBindViewHolder(holder: HistoryViewHolder, position: Int, payloads: MutableList<Any>) {
+        if (payloads.isEmpty()) {
+            super.onBindViewHolder(holder, position, payloads)
+            return
+        }
 
-        val isFirstItemOfDay = position == 0 || !isSameDay(entry.timestamp, historyList[position - 1].timestamp)
-        val isLastItemOfDay = position == historyList.size - 1 || !isSameDay(entry.timestamp, historyList[position + 1].timestamp)
+        var changes = 0
+        payloads.forEach { payload -> if (payload is Int) changes = changes or payload }
 
-        holder.bind(entry, isFirstItemOfDay, isLastItemOfDay, clickListener)
+        // Khung nền và trạng thái chọn do HistoryGroupDecoration vẽ, không cần bind lại
+        val item = getItem(position)
+        if (changes and PAYLOAD_FAVORITE != 0) holder.bindFavorite(item)
+        if (changes and PAYLOAD_TIME != 0) holder.bindTime(item)
+        if (changes and PAYLOAD_GROUP != 0) holder.bindGroup(item)
+    }
+
+    override fun onBindViewHolder(holder: HistoryViewHolder, position: Int) {
+        holder.bind(getItem(position), renderScope, onItemClick, onItemLongClick)
     }
 
-    override fun getItemCount(): Int = historyList.size
+    private object HistoryDiffCallback : DiffUtil.ItemCallback<HistoryListItem>() {
+        override fun areItemsTheSame(oldItem: HistoryListItem, newItem: HistoryListItem): Boolean {
+            return oldItem.entry.id == newItem.entry.id
+        }
+
+        override fun areContentsTheSame(oldItem: HistoryListItem, newItem: HistoryListItem): Boolean {
+            return oldItem == newItem
+        }
 
-    private fun isSameDay(timestamp1: Long, timestamp2: Long): Boolean {
-        return dateFormatter.format(Date(timestamp1)) == dateFormatter.format(Date(timestamp2))
+        // Chỉ đổi yêu thích/thời gian/nhóm ngày thì vẽ lại phần tương ứng, không tải lại ảnh và Markwon
+        override fun getChangePayload(oldItem: HistoryListItem, newItem: HistoryListItem): Any? {
+            val oldEntry = oldItem.entry
+            val newEntry = newItem.entry
+            if (oldEntry.copy(isFavorite = newEntry.isFavorite, timestamp = newEntry.timestamp) != newEntry) return null
+
+            var changes = 0
+            if (oldEntry.isFavorite != newEntry.isFavorite) changes = changes or PAYLOAD_FAVORITE
+            if (oldItem.timeLabel != newItem.timeLabel) changes = changes or PAYLOAD_TIME
+            if (oldItem.isFirstOfDay != newItem.isFirstOfDay ||
+                oldItem.isLastOfDay != newItem.isLastOfDay ||
+                oldItem.dateLabel != newItem.dateLabel
+            ) {
+                changes = changes or PAYLOAD_GROUP
+            }
+            return changes
+        }
     }
 
-    inner class HistoryViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
-        private val itemContainer: View = itemView.findViewById(R.id.itemContainer)
+    // Holder nằm trong pool dùng chung của Activity nên không giữ tham chiếu tới adapter;
+    // scope và xử lý chạm của adapter hiện tại được truyền vào mỗi lần bind đầy đủ
+    class HistoryViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
+        val itemContainer: View = itemView.findViewById(R.id.itemContainer)
         private val ivImage: ImageView = itemView.findViewById(R.id.ivHistoryImage)
         private val tvCommonName: TextView = itemView.findViewById(R.id.tvHistoryCommonName)
         private val tvDateHeader: TextView = itemView.findViewById(R.id.tvDateHeader)
         private val tvScientificName: TextView = itemView.findViewById(R.id.tvHistoryScientificName)
         private val tvTime: TextView = itemView.findViewById(R.id.tvHistoryTime)
+        private val ivFavorite: ImageView = itemView.findViewById(R.id.ivFavorite)
 
         fun bind(
-            entry: HistoryEntry,
-            isFirstItemOfDay: Boolean,
-            isLastItemOfDay: Boolean,
-            clickListener: (HistoryEntry) -> Unit
+            item: HistoryListItem,
+            renderScope: CoroutineScope,
+            onClick: (Int) -> Unit,
+            onLongClick: (Int) -> Unit
         ) {
             val context = itemView.context
+            val entry = item.entry
+
+            itemContainer.setOnClickListener { onClick(bindingAdapterPosition) }
+            itemContainer.setOnLongClickListener {
+                onLongClick(bindingAdapterPosition)
+                true
+            }
 
-            val commonText = entry.speciesInfo.commonName.ifEmpty { context.getString(R.string.unknown_common_name) }
-            val scientificText = entry.speciesInfo.scientificName.ifEmpty { context.getString(R.string.unknown_scientific_name) }
+            val commonText = entry.commonName.ifEmpty { context.getString(R.string.unknown_common_name) }
+            val scientificText = entry.scientificName.ifEmpty { context.getString(R.string.unknown_scientific_name) }
 
-            markwon.setMarkdown(tvCommonName, commonText)
-            markwon.setMarkdown(tvScientificName, scientificText)
+            val markwon = RenderEngine.markwon(context)
+            TextRenderService.setMarkdown(tvCommonName, markwon, commonText, renderScope)
+            TextRenderService.setMarkdown(tvScientificName, markwon, scientificText, renderScope)
 
-            tvTime.text = timeFormatter.format(Date(entry.timestamp))
+            bindTime(item)
+            bindFavorite(item)
+            bindGroup(item)
 
             Glide.with(context)
                 .load(entry.imagePath)
                 .centerCrop()
                 .into(ivImage)
+        }
 
-            if (isFirstItemOfDay) {
-                tvDateHeader.text = dateFormatter.format(Date(entry.timestamp))
-                tvDateHeader.visibility = View.VISIBLE
-            } else {
-                tvDateHeader.visibility = View.GONE
-            }
-
-            val strokeWidth = (1 * context.resources.displayMetrics.density).toInt()
-            val layoutParams = itemView.layoutParams as RecyclerView.LayoutParams
-
-            if (!isFirstItemOfDay) {
-                layoutParams.topMargin = -strokeWidth
-            } else {
-                layoutParams.topMargin = 0
-            }
-            itemView.layoutParams = layoutParams
-
-            val bgDrawable = android.graphics.drawable.GradientDrawable()
-            bgDrawable.setColor(context.getColor(R.color.white))
-
-            val strokeColor = android.graphics.Color.parseColor("#E0E0E0")
-            bgDrawable.setStroke(strokeWidth, strokeColor)
+        fun bindTime(item: HistoryListItem) {
+            tvTime.text = item.timeLabel
+        }
 
-            val radius = context.resources.displayMetrics.density * 16
+        fun bindFavorite(item: HistoryListItem) {
+            ivFavorite.visibility = if (item.entry.isFavorite) View.VISIBLE else View.GONE
+        }
 
-            if (isFirstItemOfDay && isLastItemOfDay) {
-                bgDrawable.cornerRadii = floatArrayOf(radius, radius, radius, radius, radius, radius, radius, radius)
-            } else if (isFirstItemOfDay) {
-                bgDrawable.cornerRadii = floatArrayOf(radius, radius, radius, radius, 0f, 0f, 0f, 0f)
-            } else if (isLastItemOfDay) {
-                bgDrawable.cornerRadii = floatArrayOf(0f, 0f, 0f, 0f, radius, radius, radius, radius)
+        fun bindGroup(item: HistoryListItem) {
+            if (item.isFirstOfDay) {
+                tvDateHeader.text = item.dateLabel
+                tvDateHeader.visibility = View.VISIBLE
             } else {
-                bgDrawable.cornerRadius = 0f
+                tvDateHeader.visibility = View.GONE
             }
-            itemContainer.background = bgDrawable
-
-            itemContainer.setOnClickListener { clickListener(entry) }
         }
     }
-}
\ No newline at end of file
+}
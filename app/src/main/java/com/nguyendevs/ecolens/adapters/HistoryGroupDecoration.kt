@@ -0,0 +1,82 @@
+package com.nguyendevs.ecolens.adapters
+
+import android.content.Context
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.Path
+import android.graphics.Rect
+import android.graphics.RectF
+import android.view.View
+import androidx.recyclerview.widget.RecyclerView
+import com.nguyendevs.ecolens.R
+
+// Vẽ khung bo góc cho từng nhóm ngày trong lịch sử, thay cho drawable riêng mỗi dòng
+class HistoryGroupDecoration(
+    context: Context,
+    private val adapter: HistoryAdapter
+) : RecyclerView.ItemDecoration() {
+
+    private val density = context.resources.displayMetrics.density
+    private val strokeWidth = (1 * density).toInt()
+    private val radius = 16 * density
+
+    private val fillColor = context.getColor(R.color.white)
+    private val selectedColor = context.getColor(R.color.primary_10)
+
+    private val fillPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        style = Paint.Style.FILL
+    }
+    private val strokePaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        style = Paint.Style.STROKE
+        strokeWidth = this@HistoryGroupDecoration.strokeWidth.toFloat()
+        color = Color.parseColor("#E0E0E0")
+    }
+
+    private val singleRadii = floatArrayOf(radius, radius, radius, radius, radius, radius, radius, radius)
+    private val topRadii = floatArrayOf(radius, radius, radius, radius, 0f, 0f, 0f, 0f)
+    private val bottomRadii = floatArrayOf(0f, 0f, 0f, 0f, radius, radius, radius, radius)
+    private val noRadii = FloatArray(8)
+
+    private val bounds = RectF()
+    private val path = Path()
+
+    // Các dòng giữa nhóm chồng lên nhau một nét viền để không bị viền đôi
+    override fun getItemOffsets(outRect: Rect, view: View, parent: RecyclerView, state: RecyclerView.State) {
+        val position = parent.getChildAdapterPosition(view)
+        val item = adapter.currentList.getOrNull(position) ?: return
+        outRect.top = if (item.isFirstOfDay) 0 else -strokeWidth
+    }
+
+    override fun onDraw(canvas: Canvas, parent: RecyclerView, state: RecyclerView.State) {
+        for (index in 0 until parent.childCount) {
+            val child = parent.getChildAt(index)
+            val holder = parent.getChildViewHolder(child) as? HistoryAdapter.HistoryViewHolder ?: continue
+            val item = adapter.currentList.getOrNull(holder.bindingAdapterPosition) ?: continue
+            val container = holder.itemContainer
+
+            val halfStroke = strokeWidth / 2f
+            bounds.set(
+                child.left + container.left + child.translationX + halfStroke,
+                child.top + container.top + child.translationY + halfStroke,
+                child.left + container.right + child.translationX - halfStroke,
+                child.top + container.bottom + child.translationY - halfStroke
+            )
+
+            val radii = when {
+                item.isFirstOfDay && item.isLastOfDay -> singleRadii
+                item.isFirstOfDay -> topRadii
+                item.isLastOfDay -> bottomRadii
+                else -> noRadii
+            }
+            path.rewind()
+            path.addRoundRect(bounds, radii, Path.Direction.CW)
+
+            fillPaint.color = if (adapter.isSelected(item.entry.id)) selectedColor else fillColor
+            fillPaint.alpha = (fillPaint.alpha * child.alpha).toInt()
+            strokePaint.alpha = (255 * child.alpha).toInt()
+            canvas.drawPath(path, fillPaint)
+            canvas.drawPath(path, strokePaint)
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.nguyendevs.ecolens.api
 
+import com.nguyendevs.ecolens.network.RequestSentSignal
 import okhttp3.MultipartBody
 import okhttp3.ResponseBody
+import retrofit2.Call
 import retrofit2.Response
 import retrofit2.http.*
 
@@ -15,6 +17,17 @@ interface INaturalistApi {
         @Query("locale") locale: String
     ): IdentificationResponse
 
+    // Cùng endpoint nhưng trả về ngay khi có header, body đọc sau (dùng cho yêu cầu dự phòng)
+    @Streaming
+    @Multipart
+    @POST("inaturalist/v1/computervision/score_image")
+    suspend fun scoreImage(
+        @Part image: MultipartBody.Part,
+        @Query("lat") lat: Double = 16.0544,
+        @Query("lng") lng: Double = 108.2022,
+        @Query("locale") locale: String
+    ): Response<ResponseBody>
+
     @GET("inaturalist/v1/taxa/{id}")
     suspend fun getTaxonDetails(
         @Path("id") taxonId: Int,
@@ -26,9 +39,11 @@ interface INaturalistApi {
         @Body request: GeminiRequest
     ): GeminiResponse
 
+    // Trả về Call để nơi gọi hủy được lệnh gọi (đóng socket) khi stream bị treo
     @Streaming
     @POST("gemini/stream")
-    suspend fun streamGemini(
-        @Body request: GeminiRequest
-    ): Response<ResponseBody>
+    fun streamGemini(
+        @Body request: GeminiRequest,
+        @Tag sentSignal: RequestSentSignal = RequestSentSignal()
+    ): Call<ResponseBody>
 }
\ No newline at end of file
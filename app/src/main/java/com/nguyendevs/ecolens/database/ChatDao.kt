@@ -7,6 +7,9 @@ import androidx.room.Query
 import androidx.room.Transaction
 import androidx.room.Update
 import com.nguyendevs.ecolens.model.ChatMessage
+import com.nguyendevs.ecolens.model.ChatMessageFts
+import com.nguyendevs.ecolens.model.ChatSearchCandidate
+import com.nguyendevs.ecolens.model.ChatSearchRow
 import com.nguyendevs.ecolens.model.ChatSession
 import kotlinx.coroutines.flow.Flow
 
@@ -30,8 +33,14 @@ interface ChatDao {
     @Query("DELETE FROM chat_sessions WHERE id = :id")
     suspend fun deleteSession(id: Long)
 
-    @Query("DELETE FROM chat_messages WHERE sessionId = :sessionId")
-    suspend fun deleteMessagesBySession(sessionId: Long)
+    @Query("DELETE FROM chat_sessions WHERE id IN (:ids)")
+    suspend fun deleteSessionsByIds(ids: List<Long>)
+
+    // chat_messages bị xóa theo ON DELETE CASCADE
+    @Transaction
+    suspend fun deleteSessions(ids: List<Long>) {
+        ids.chunked(HistoryDao.MAX_BATCH_SIZE).forEach { deleteSessionsByIds(it) }
+    }
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertMessage(message: ChatMessage): Long
@@ -42,12 +51,101 @@ interface ChatDao {
     @Query("UPDATE chat_messages SET content = :content WHERE id = :messageId")
     suspend fun updateMessageContent(messageId: Long, content: String)
 
-    @Query("SELECT * FROM chat_messages WHERE sessionId = :sessionId ORDER BY timestamp ASC")
-    fun getMessagesBySession(sessionId: Long): Flow<List<ChatMessage>>
+    // Toàn bộ tin nhắn của phiên, chỉ dùng để dựng lịch sử gửi lên API
+    @Query("SELECT * FROM chat_messages WHERE sessionId = :sessionId ORDER BY timestamp ASC, id ASC")
+    suspend fun getMessagesBySession(sessionId: Long): List<ChatMessage>
+
+    // --- PHÂN TRANG THEO KHÓA (timestamp, id) ---
+
+    // Trang mới nhất, sắp xếp giảm dần
+    @Query("SELECT * FROM chat_messages WHERE sessionId = :sessionId ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    suspend fun getLatestMessages(sessionId: Long, limit: Int): List<ChatMessage>
+
+    // Các tin nhắn cũ hơn khóa, sắp xếp giảm dần
+    @Query("""
+        SELECT * FROM chat_messages
+        WHERE sessionId = :sessionId AND (timestamp, id) < (:timestamp, :id)
+        ORDER BY timestamp DESC, id DESC LIMIT :limit
+    """)
+    suspend fun getMessagesBefore(sessionId: Long, timestamp: Long, id: Long, limit: Int): List<ChatMessage>
+
+    // Các tin nhắn mới hơn khóa, sắp xếp tăng dần
+    @Query("""
+        SELECT * FROM chat_messages
+        WHERE sessionId = :sessionId AND (timestamp, id) > (:timestamp, :id)
+        ORDER BY timestamp ASC, id ASC LIMIT :limit
+    """)
+    suspend fun getMessagesAfter(sessionId: Long, timestamp: Long, id: Long, limit: Int): List<ChatMessage>
+
+    // Trang cuối (từ khóa trở đi) được theo dõi trực tiếp
+    @Query("""
+        SELECT * FROM chat_messages
+        WHERE sessionId = :sessionId AND (timestamp, id) >= (:timestamp, :id)
+        ORDER BY timestamp ASC, id ASC LIMIT :limit
+    """)
+    fun observeMessagesFrom(sessionId: Long, timestamp: Long, id: Long, limit: Int): Flow<List<ChatMessage>>
+
+    @Query("SELECT * FROM chat_messages WHERE id = :messageId")
+    suspend fun getMessageById(messageId: Long): ChatMessage?
+
+    // --- TÌM KIẾM TOÀN VĂN ---
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertMessageFts(entries: List<ChatMessageFts>)
+
+    // Thêm tin nhắn và nội dung thuần văn bản của nó vào chỉ mục
+    @Transaction
+    suspend fun insertMessageIndexed(message: ChatMessage, plainText: String): Long {
+        val id = insertMessage(message)
+        insertMessageFts(listOf(ChatMessageFts(id, message.sessionId, plainText)))
+        return id
+    }
+
+    @Transaction
+    suspend fun updateMessageIndexed(message: ChatMessage, plainText: String) {
+        updateMessage(message)
+        insertMessageFts(listOf(ChatMessageFts(message.id, message.sessionId, plainText)))
+    }
+
+    // Tin nhắn đã hoàn tất nhưng chưa có trong chỉ mục (dữ liệu cũ trước khi có FTS)
+    @Query("""
+        SELECT * FROM chat_messages
+        WHERE isStreaming = 0 AND id NOT IN (SELECT rowid FROM chat_messages_fts)
+        LIMIT :limit
+    """)
+    suspend fun getUnindexedMessages(limit: Int): List<ChatMessage>
+
+    // Mọi tin khớp, chỉ kèm matchinfo (không tạo snippet) để xếp hạng trên toàn bộ trước khi cắt
+    @Query("""
+        SELECT chat_messages_fts.rowid AS messageId, m.timestamp AS timestamp,
+            matchinfo(chat_messages_fts, 'pcx') AS matchInfo
+        FROM chat_messages_fts
+        JOIN chat_messages m ON m.id = chat_messages_fts.rowid
+        WHERE chat_messages_fts MATCH :query
+    """)
+    suspend fun searchCandidates(query: String): List<ChatSearchCandidate>
+
+    // Snippet và thông tin phiên chỉ cho các tin đã chọn sau khi xếp hạng
+    @Query("""
+        SELECT m.id AS messageId, m.sessionId AS sessionId, s.title AS sessionTitle,
+            snippet(chat_messages_fts, '$SNIPPET_MATCH_START', '$SNIPPET_MATCH_END', '…', -1, 12) AS snippet,
+            m.isUser AS isUser, m.timestamp AS timestamp
+        FROM chat_messages_fts
+        JOIN chat_messages m ON m.id = chat_messages_fts.rowid
+        JOIN chat_sessions s ON s.id = m.sessionId
+        WHERE chat_messages_fts MATCH :query AND chat_messages_fts.rowid IN (:messageIds)
+    """)
+    suspend fun searchMessages(query: String, messageIds: List<Long>): List<ChatSearchRow>
 
     @Query("SELECT COUNT(*) FROM chat_messages WHERE sessionId = :sessionId AND isUser = 1")
     suspend fun getUserMessageCount(sessionId: Long): Int
 
     @Query("DELETE FROM chat_messages WHERE id = :msgId")
     suspend fun deleteMessageById(msgId: Long)
+
+    companion object {
+        // Ký tự điều khiển đánh dấu đoạn khớp; thay bằng thẻ HTML sau khi đã escape nội dung
+        const val SNIPPET_MATCH_START = "\u0002"
+        const val SNIPPET_MATCH_END = "\u0003"
+    }
 }
\ No newline at end of file
@@ -4,8 +4,11 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import androidx.room.Update
+import com.nguyendevs.ecolens.model.CompressedDetails
 import com.nguyendevs.ecolens.model.HistoryEntry
+import com.nguyendevs.ecolens.model.HistorySummary
 import kotlinx.coroutines.flow.Flow
 
 @Dao
@@ -20,24 +23,32 @@ interface HistoryDao {
     // --- GET (READ) ---
 
     // Lấy tất cả lịch sử sắp xếp từ mới nhất đến cũ nhất
-    @Query("SELECT * FROM history_table ORDER BY timestamp DESC")
-    fun getAllHistoryNewestFirst(): Flow<List<HistoryEntry>>
+    @Query("SELECT $SUMMARY_COLUMNS FROM history_table ORDER BY timestamp DESC")
+    fun getAllHistoryNewestFirst(): Flow<List<HistorySummary>>
 
     // Lấy tất cả lịch sử sắp xếp từ cũ nhất đến mới nhất
-    @Query("SELECT * FROM history_table ORDER BY timestamp ASC")
-    fun getAllHistoryOldestFirst(): Flow<List<HistoryEntry>>
+    @Query("SELECT $SUMMARY_COLUMNS FROM history_table ORDER BY timestamp ASC")
+    fun getAllHistoryOldestFirst(): Flow<List<HistorySummary>>
 
     // Lấy một entry theo ID
     @Query("SELECT * FROM history_table WHERE id = :id LIMIT 1")
     suspend fun getHistoryById(id: Int): HistoryEntry?
 
+    // Lấy đường dẫn ảnh của các bản ghi theo danh sách ID
+    @Query("SELECT imagePath FROM history_table WHERE id IN (:ids)")
+    suspend fun getImagePathsByIds(ids: List<Int>): List<String>
+
+    // Lấy đường dẫn ảnh của toàn bộ lịch sử
+    @Query("SELECT imagePath FROM history_table")
+    suspend fun getAllImagePaths(): List<String>
+
     // Lấy lịch sử theo khoảng thời gian, sắp xếp từ mới nhất
-    @Query("SELECT * FROM history_table WHERE timestamp BETWEEN :startDate AND :endDate ORDER BY timestamp DESC")
-    fun getHistoryByDateRangeNewest(startDate: Long, endDate: Long): Flow<List<HistoryEntry>>
+    @Query("SELECT $SUMMARY_COLUMNS FROM history_table WHERE timestamp BETWEEN :startDate AND :endDate ORDER BY timestamp DESC")
+    fun getHistoryByDateRangeNewest(startDate: Long, endDate: Long): Flow<List<HistorySummary>>
 
     // Lấy lịch sử theo khoảng thời gian, sắp xếp từ cũ nhất
-    @Query("SELECT * FROM history_table WHERE timestamp BETWEEN :startDate AND :endDate ORDER BY timestamp ASC")
-    fun getHistoryByDateRangeOldest(startDate: Long, endDate: Long): Flow<List<HistoryEntry>>
+    @Query("SELECT $SUMMARY_COLUMNS FROM history_table WHERE timestamp BETWEEN :startDate AND :endDate ORDER BY timestamp ASC")
+    fun getHistoryByDateRangeOldest(startDate: Long, endDate: Long): Flow<List<HistorySummary>>
 
     // --- UPDATE ---
 
@@ -45,6 +56,28 @@ interface HistoryDao {
     @Update
     suspend fun update(entry: HistoryEntry)
 
+    // Cập nhật nhiều bản ghi trong một câu lệnh
+    @Update
+    suspend fun updateAll(entries: List<HistoryEntry>)
+
+    // Các bản ghi đang lưu chi tiết dạng văn bản thường
+    @Query("SELECT * FROM history_table WHERE compressedDetails IS NULL LIMIT :limit")
+    suspend fun getEntriesWithPlainDetails(limit: Int): List<HistoryEntry>
+
+    // Các bản ghi đang lưu chi tiết dạng nén
+    @Query("SELECT * FROM history_table WHERE compressedDetails IS NOT NULL LIMIT :limit")
+    suspend fun getEntriesWithCompressedDetails(limit: Int): List<HistoryEntry>
+
+    // Đặt trạng thái yêu thích cho nhiều bản ghi
+    @Query("UPDATE history_table SET isFavorite = :isFavorite WHERE id IN (:ids)")
+    suspend fun updateFavoriteByIds(ids: List<Int>, isFavorite: Boolean)
+
+    // Đặt trạng thái yêu thích theo lô trong một transaction (một lần invalidation)
+    @Transaction
+    suspend fun setFavorite(ids: List<Int>, isFavorite: Boolean) {
+        ids.chunked(MAX_BATCH_SIZE).forEach { updateFavoriteByIds(it, isFavorite) }
+    }
+
     // Cập nhật chi tiết thông tin loài, timestamp và ngôn ngữ gốc
     @Query("""
         UPDATE history_table 
@@ -62,6 +95,7 @@ interface HistoryDao {
             distribution = :distribution,
             habitat = :habitat,
             conservationStatus = :conservationStatus,
+            compressedDetails = :compressedDetails,
             confidence = :confidence,
             timestamp = :timestamp
         WHERE id = :id
@@ -82,6 +116,7 @@ interface HistoryDao {
         distribution: String,
         habitat: String,
         conservationStatus: String,
+        compressedDetails: CompressedDetails?,
         confidence: Double,
         timestamp: Long
     )
@@ -91,4 +126,35 @@ interface HistoryDao {
     // Xóa tất cả lịch sử
     @Query("DELETE FROM history_table")
     suspend fun deleteAll()
+
+    // Xóa các bản ghi theo danh sách ID
+    @Query("DELETE FROM history_table WHERE id IN (:ids)")
+    suspend fun deleteByIds(ids: List<Int>)
+
+    // Xóa nhiều bản ghi trong một transaction, trả về đường dẫn ảnh cần dọn dẹp
+    @Transaction
+    suspend fun deleteEntries(ids: List<Int>): List<String> {
+        val imagePaths = mutableListOf<String>()
+        ids.chunked(MAX_BATCH_SIZE).forEach { chunk ->
+            imagePaths += getImagePathsByIds(chunk)
+            deleteByIds(chunk)
+        }
+        return imagePaths
+    }
+
+    // Xóa tất cả lịch sử, trả về đường dẫn ảnh cần dọn dẹp
+    @Transaction
+    suspend fun deleteAllEntries(): List<String> {
+        val imagePaths = getAllImagePaths()
+        deleteAll()
+        return imagePaths
+    }
+
+    companion object {
+        // Cột của HistorySummary cho các truy vấn danh sách, bỏ qua chi tiết loài và BLOB compressedDetails
+        const val SUMMARY_COLUMNS = "id, imagePath, commonName, scientificName, timestamp, isFavorite"
+
+        // Giữ số tham số mỗi câu lệnh dưới giới hạn 999 biến của SQLite
+        const val MAX_BATCH_SIZE = 500
+    }
 }
\ No newline at end of file
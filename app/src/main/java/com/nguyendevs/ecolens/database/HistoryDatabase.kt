@@ -5,11 +5,31 @@ import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
 import com.nguyendevs.ecolens.model.ChatMessage
+import com.nguyendevs.ecolens.model.ChatMessageFts
 import com.nguyendevs.ecolens.model.ChatSession
 import com.nguyendevs.ecolens.model.HistoryEntry
+import com.nguyendevs.ecolens.model.IdentificationJournalEntry
+import com.nguyendevs.ecolens.model.MonthlySightingStat
+import com.nguyendevs.ecolens.model.PendingIdentification
+import com.nguyendevs.ecolens.model.TaxonSightingStat
 
-@Database(entities = [HistoryEntry::class, ChatSession::class, ChatMessage::class], version = 3, exportSchema = false)
+@Database(
+    entities = [
+        HistoryEntry::class,
+        ChatSession::class,
+        ChatMessage::class,
+        ChatMessageFts::class,
+        MonthlySightingStat::class,
+        TaxonSightingStat::class,
+        PendingIdentification::class,
+        IdentificationJournalEntry::class
+    ],
+    version = 10,
+    exportSchema = false
+)
 @TypeConverters(HistoryTypeConverters::class)
 abstract class HistoryDatabase : RoomDatabase() {
 
@@ -19,17 +39,125 @@ abstract class HistoryDatabase : RoomDatabase() {
     // Truy cập DAO cho chat
     abstract fun chatDao(): ChatDao
 
+    // Truy cập DAO cho thống kê
+    abstract fun statsDao(): StatsDao
+
+    // Truy cập DAO cho hàng đợi nhận diện ngoại tuyến
+    abstract fun pendingIdentificationDao(): PendingIdentificationDao
+
+    // Truy cập DAO cho nhật ký các bước nhận diện
+    abstract fun identificationJournalDao(): IdentificationJournalDao
+
     companion object {
         @Volatile
         private var INSTANCE: HistoryDatabase? = null
 
+        // Chỉ mục khóa (sessionId, timestamp, id) cho phân trang tin nhắn
+        private val MIGRATION_3_4 = object : Migration(3, 4) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("DROP INDEX IF EXISTS `index_chat_messages_sessionId`")
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_chat_messages_sessionId_timestamp_id` " +
+                        "ON `chat_messages` (`sessionId`, `timestamp`, `id`)"
+                )
+            }
+        }
+
+        // Câu lệnh phải giống hệt câu Room sinh từ @Fts4 (kể cả dấu ` trong notindexed),
+        // vì FtsTableInfo so sánh nguyên văn các tùy chọn khi kiểm tra schema
+        private val MIGRATION_4_5 = object : Migration(4, 5) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS `chat_messages_fts` USING FTS4(" +
+                        "`sessionId` INTEGER NOT NULL, `content` TEXT NOT NULL, " +
+                        "tokenize=unicode61, notindexed=`sessionId`)"
+                )
+            }
+        }
+
+        // Cột BLOB cho chi tiết loài lưu dạng nén
+        private val MIGRATION_5_6 = object : Migration(5, 6) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE `history_table` ADD COLUMN `compressedDetails` BLOB")
+            }
+        }
+
+        // Bảng thống kê, điền dữ liệu ban đầu từ lịch sử hiện có
+        private val MIGRATION_6_7 = object : Migration(6, 7) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `stats_monthly` (`month` TEXT NOT NULL, " +
+                        "`count` INTEGER NOT NULL, PRIMARY KEY(`month`))"
+                )
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `stats_taxon` (`kingdom` TEXT NOT NULL, `family` TEXT NOT NULL, " +
+                        "`count` INTEGER NOT NULL, PRIMARY KEY(`kingdom`, `family`))"
+                )
+                db.execSQL(
+                    "INSERT INTO stats_monthly (month, count) " +
+                        "SELECT ${StatsDao.MONTH_OF_ROW}, COUNT(*) FROM history_table GROUP BY 1"
+                )
+                db.execSQL(
+                    "INSERT INTO stats_taxon (kingdom, family, count) " +
+                        "SELECT ${StatsDao.KINGDOM_OF_ROW}, ${StatsDao.FAMILY_OF_ROW}, COUNT(*) FROM history_table GROUP BY 1, 2"
+                )
+            }
+        }
+
+        // Hàng đợi nhận diện khi mất mạng
+        private val MIGRATION_7_8 = object : Migration(7, 8) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `pending_identifications` (" +
+                        "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `imagePath` TEXT NOT NULL, " +
+                        "`languageCode` TEXT NOT NULL, `historyId` INTEGER, `createdAt` INTEGER NOT NULL, " +
+                        "`attempts` INTEGER NOT NULL, `lastError` TEXT)"
+                )
+            }
+        }
+
+        // Nhật ký bước nhận diện; hàng đợi ngoại tuyến giữ khóa nhật ký của lượt gốc
+        private val MIGRATION_8_9 = object : Migration(8, 9) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `identification_journal` (`imageHash` TEXT NOT NULL, " +
+                        "`languageCode` TEXT NOT NULL, `historyId` INTEGER, `preparedPath` TEXT, " +
+                        "`scientificName` TEXT, `confidence` REAL, `taxonomyJson` TEXT, " +
+                        "`detailsText` TEXT NOT NULL, `detailsComplete` INTEGER NOT NULL, " +
+                        "`updatedAt` INTEGER NOT NULL, PRIMARY KEY(`imageHash`, `languageCode`))"
+                )
+                db.execSQL("ALTER TABLE `pending_identifications` ADD COLUMN `imageHash` TEXT")
+            }
+        }
+
+        // Markdown gốc của tin nhắn, dùng làm lịch sử gửi lên Gemini thay cho HTML đã render
+        private val MIGRATION_9_10 = object : Migration(9, 10) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE `chat_messages` ADD COLUMN `rawContent` TEXT")
+            }
+        }
+
+        private val triggerCallback = object : RoomDatabase.Callback() {
+            override fun onOpen(db: SupportSQLiteDatabase) {
+                // Tin nhắn bị xóa (kể cả theo CASCADE) cũng được gỡ khỏi chỉ mục
+                db.execSQL(
+                    "CREATE TRIGGER IF NOT EXISTS `chat_messages_fts_delete` AFTER DELETE ON `chat_messages` " +
+                        "BEGIN DELETE FROM `chat_messages_fts` WHERE rowid = OLD.id; END"
+                )
+                StatsTriggers.create(db)
+            }
+        }
+
+        // Builder có đủ migration và trigger, dùng chung cho ứng dụng và kiểm thử migration
+        internal fun builder(context: Context, name: String): RoomDatabase.Builder<HistoryDatabase> {
+            return Room.databaseBuilder(context.applicationContext, HistoryDatabase::class.java, name)
+                .addMigrations(MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10)
+                .addCallback(triggerCallback)
+        }
+
         fun getDatabase(context: Context): HistoryDatabase {
             return INSTANCE ?: synchronized(this) {
-                val instance = Room.databaseBuilder(
-                    context.applicationContext,
-                    HistoryDatabase::class.java,
-                    "ecolens_database"
-                )
+                val instance = builder(context, "ecolens_database")
                     .fallbackToDestructiveMigration()
                     .build()
                 INSTANCE = instance
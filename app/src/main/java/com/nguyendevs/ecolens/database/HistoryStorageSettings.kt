@@ -0,0 +1,32 @@
+package com.nguyendevs.ecolens.database
+
+import android.content.Context
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+// Tùy chọn lưu chi tiết loài dạng nén (mặc định tắt)
+class HistoryStorageSettings(context: Context) {
+
+    companion object {
+        private const val PREF_NAME = "EcoLensParams"
+        private const val KEY_COMPRESS_DETAILS = "KEY_COMPRESS_DETAILS"
+
+        // Dùng chung cho mọi instance: ghi lịch sử và chuyển đổi định dạng không chạy xen nhau
+        private val writeLock = Mutex()
+    }
+
+    private val prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+
+    fun isCompressionEnabled(): Boolean {
+        return prefs.getBoolean(KEY_COMPRESS_DETAILS, false)
+    }
+
+    fun setCompressionEnabled(enabled: Boolean) {
+        prefs.edit().putBoolean(KEY_COMPRESS_DETAILS, enabled).apply()
+    }
+
+    // Đọc cờ nén và ghi bản ghi trong cùng một khóa, để lượt chuyển đổi không bỏ sót bản ghi mới
+    suspend fun <T> withWriteLock(block: suspend (compressionEnabled: Boolean) -> T): T {
+        return writeLock.withLock { block(isCompressionEnabled()) }
+    }
+}
@@ -3,6 +3,7 @@ package com.nguyendevs.ecolens.database
 import androidx.room.TypeConverter
 import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
+import com.nguyendevs.ecolens.model.CompressedDetails
 import com.nguyendevs.ecolens.model.SpeciesInfo
 
 class HistoryTypeConverters {
@@ -22,4 +23,15 @@ class HistoryTypeConverters {
             gson.fromJson(it, type)
         }
     }
+
+    // BLOB chi tiết nén được giữ nguyên, chỉ giải nén khi cần hiển thị
+    @TypeConverter
+    fun fromCompressedDetails(details: CompressedDetails?): ByteArray? {
+        return details?.bytes
+    }
+
+    @TypeConverter
+    fun toCompressedDetails(bytes: ByteArray?): CompressedDetails? {
+        return bytes?.let { CompressedDetails(it) }
+    }
 }
\ No newline at end of file
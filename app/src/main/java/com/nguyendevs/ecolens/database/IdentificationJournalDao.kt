@@ -0,0 +1,41 @@
+package com.nguyendevs.ecolens.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.nguyendevs.ecolens.model.IdentificationJournalEntry
+
+@Dao
+interface IdentificationJournalDao {
+
+    // --- INSERT ---
+
+    // Ghi (hoặc ghi đè) nhật ký của một lượt nhận diện
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsert(entry: IdentificationJournalEntry)
+
+    // --- GET (READ) ---
+
+    // Lấy nhật ký theo ảnh và ngôn ngữ
+    @Query("SELECT * FROM identification_journal WHERE imageHash = :imageHash AND languageCode = :languageCode LIMIT 1")
+    suspend fun get(imageHash: String, languageCode: String): IdentificationJournalEntry?
+
+    // Lượt nhận diện trên màn hình chính bị gián đoạn gần nhất (chỉ lượt này giữ bản sao ảnh)
+    @Query("SELECT * FROM identification_journal WHERE preparedPath IS NOT NULL AND updatedAt >= :since ORDER BY updatedAt DESC LIMIT 1")
+    suspend fun getLatestInterrupted(since: Long): IdentificationJournalEntry?
+
+    // Đường dẫn ảnh của các nhật ký đã quá hạn
+    @Query("SELECT preparedPath FROM identification_journal WHERE updatedAt < :before AND preparedPath IS NOT NULL")
+    suspend fun getStalePreparedPaths(before: Long): List<String>
+
+    // --- DELETE ---
+
+    // Xóa nhật ký khi lượt nhận diện đã xong
+    @Query("DELETE FROM identification_journal WHERE imageHash = :imageHash AND languageCode = :languageCode")
+    suspend fun delete(imageHash: String, languageCode: String)
+
+    // Xóa các nhật ký đã quá hạn
+    @Query("DELETE FROM identification_journal WHERE updatedAt < :before")
+    suspend fun deleteOlderThan(before: Long)
+}
@@ -0,0 +1,34 @@
+package com.nguyendevs.ecolens.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.Query
+import com.nguyendevs.ecolens.model.PendingIdentification
+
+@Dao
+interface PendingIdentificationDao {
+
+    // --- INSERT ---
+
+    // Thêm một lượt nhận diện vào hàng đợi và trả về ID
+    @Insert
+    suspend fun insert(job: PendingIdentification): Long
+
+    // --- GET (READ) ---
+
+    // Lấy các lượt đang chờ, cũ nhất trước
+    @Query("SELECT * FROM pending_identifications ORDER BY createdAt ASC LIMIT :limit")
+    suspend fun getPending(limit: Int): List<PendingIdentification>
+
+    // --- UPDATE ---
+
+    // Ghi nhận một lần thử thất bại
+    @Query("UPDATE pending_identifications SET attempts = attempts + 1, lastError = :error WHERE id = :id")
+    suspend fun markAttempt(id: Long, error: String?)
+
+    // --- DELETE ---
+
+    // Xóa một lượt khỏi hàng đợi
+    @Query("DELETE FROM pending_identifications WHERE id = :id")
+    suspend fun delete(id: Long)
+}
@@ -0,0 +1,72 @@
+package com.nguyendevs.ecolens.database
+
+import com.nguyendevs.ecolens.model.CompressedDetails
+import com.nguyendevs.ecolens.model.SpeciesInfo
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * Nén/giải nén năm trường HTML dài của SpeciesInfo (mô tả, đặc điểm, phân bố,
+ * môi trường sống, bảo tồn) thành một BLOB: [phiên bản][deflate(độ dài + UTF-8)...].
+ */
+object SpeciesDetailsCodec {
+
+    private const val FORMAT_VERSION = 1
+
+    fun encode(info: SpeciesInfo): CompressedDetails {
+        val output = ByteArrayOutputStream()
+        output.write(FORMAT_VERSION)
+        DataOutputStream(DeflaterOutputStream(output, Deflater(Deflater.BEST_COMPRESSION))).use { data ->
+            listOf(
+                info.description,
+                info.characteristics,
+                info.distribution,
+                info.habitat,
+                info.conservationStatus
+            ).forEach { field ->
+                val bytes = field.toByteArray(Charsets.UTF_8)
+                data.writeInt(bytes.size)
+                data.write(bytes)
+            }
+        }
+        return CompressedDetails(output.toByteArray())
+    }
+
+    // Điền các trường chi tiết đã giải nén vào bản SpeciesInfo gốc
+    fun decode(details: CompressedDetails, base: SpeciesInfo): SpeciesInfo {
+        val input = ByteArrayInputStream(details.bytes)
+        val version = input.read()
+        if (version != FORMAT_VERSION) return base
+
+        DataInputStream(InflaterInputStream(input)).use { data ->
+            fun readField(): String {
+                val bytes = ByteArray(data.readInt())
+                data.readFully(bytes)
+                return String(bytes, Charsets.UTF_8)
+            }
+            return base.copy(
+                description = readField(),
+                characteristics = readField(),
+                distribution = readField(),
+                habitat = readField(),
+                conservationStatus = readField()
+            )
+        }
+    }
+
+    // Bản SpeciesInfo không còn các trường chi tiết (được lưu trong BLOB)
+    fun stripDetails(info: SpeciesInfo): SpeciesInfo {
+        return info.copy(
+            description = "",
+            characteristics = "",
+            distribution = "",
+            habitat = "",
+            conservationStatus = ""
+        )
+    }
+}
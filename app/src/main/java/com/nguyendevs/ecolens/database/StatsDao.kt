@@ -0,0 +1,86 @@
+package com.nguyendevs.ecolens.database
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+import com.nguyendevs.ecolens.model.KingdomSightingStat
+import com.nguyendevs.ecolens.model.MonthlySightingStat
+import com.nguyendevs.ecolens.model.TaxonSightingStat
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface StatsDao {
+
+    // --- GET (READ) ---
+
+    // Tổng số lần nhận diện
+    @Query("SELECT COALESCE(SUM(count), 0) FROM stats_monthly")
+    fun getTotalSightings(): Flow<Int>
+
+    // Thống kê theo tháng, mới nhất trước
+    @Query("SELECT * FROM stats_monthly ORDER BY month DESC")
+    fun getMonthlyStats(): Flow<List<MonthlySightingStat>>
+
+    // Thống kê theo giới
+    @Query("SELECT kingdom, SUM(count) AS count FROM stats_taxon GROUP BY kingdom ORDER BY count DESC")
+    fun getKingdomStats(): Flow<List<KingdomSightingStat>>
+
+    // Các họ được nhận diện nhiều nhất
+    @Query("SELECT * FROM stats_taxon WHERE family != '' ORDER BY count DESC LIMIT :limit")
+    fun getTopFamilyStats(limit: Int): Flow<List<TaxonSightingStat>>
+
+    // --- KIỂM TRA & XÂY LẠI ---
+
+    // Số bucket lệch giữa bảng thống kê và history_table (0 nghĩa là khớp)
+    @Query("""
+        SELECT
+            (SELECT COUNT(*) FROM (
+                SELECT month, count FROM stats_monthly
+                EXCEPT SELECT $MONTH_OF_ROW AS month, COUNT(*) FROM history_table GROUP BY 1
+            ))
+            + (SELECT COUNT(*) FROM (
+                SELECT $MONTH_OF_ROW AS month, COUNT(*) FROM history_table GROUP BY 1
+                EXCEPT SELECT month, count FROM stats_monthly
+            ))
+            + (SELECT COUNT(*) FROM (
+                SELECT kingdom, family, count FROM stats_taxon
+                EXCEPT SELECT $KINGDOM_OF_ROW, $FAMILY_OF_ROW, COUNT(*) FROM history_table GROUP BY 1, 2
+            ))
+            + (SELECT COUNT(*) FROM (
+                SELECT $KINGDOM_OF_ROW, $FAMILY_OF_ROW, COUNT(*) FROM history_table GROUP BY 1, 2
+                EXCEPT SELECT kingdom, family, count FROM stats_taxon
+            ))
+    """)
+    suspend fun countInconsistentBuckets(): Int
+
+    @Query("DELETE FROM stats_monthly")
+    suspend fun clearMonthlyStats()
+
+    @Query("DELETE FROM stats_taxon")
+    suspend fun clearTaxonStats()
+
+    @Query("INSERT INTO stats_monthly (month, count) SELECT $MONTH_OF_ROW, COUNT(*) FROM history_table GROUP BY 1")
+    suspend fun fillMonthlyStats()
+
+    @Query("""
+        INSERT INTO stats_taxon (kingdom, family, count)
+        SELECT $KINGDOM_OF_ROW, $FAMILY_OF_ROW, COUNT(*) FROM history_table GROUP BY 1, 2
+    """)
+    suspend fun fillTaxonStats()
+
+    // Xây lại toàn bộ bảng thống kê từ history_table
+    @Transaction
+    suspend fun rebuildStats() {
+        clearMonthlyStats()
+        clearTaxonStats()
+        fillMonthlyStats()
+        fillTaxonStats()
+    }
+
+    companion object {
+        // Cùng cách tính bucket với StatsTriggers
+        const val MONTH_OF_ROW = "strftime('%Y-%m', timestamp / 1000, 'unixepoch', 'localtime')"
+        const val KINGDOM_OF_ROW = "TRIM(REPLACE(REPLACE(kingdom, '<b>', ''), '</b>', ''))"
+        const val FAMILY_OF_ROW = "TRIM(REPLACE(REPLACE(family, '<b>', ''), '</b>', ''))"
+    }
+}
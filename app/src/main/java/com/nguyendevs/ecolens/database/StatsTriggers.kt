@@ -0,0 +1,44 @@
+package com.nguyendevs.ecolens.database
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Trigger trên history_table giữ stats_monthly và stats_taxon luôn khớp,
+ * để màn hình thống kê chỉ đọc O(số bucket) thay vì quét toàn bộ lịch sử.
+ */
+object StatsTriggers {
+
+    private fun monthOf(row: String) = "strftime('%Y-%m', $row.timestamp / 1000, 'unixepoch', 'localtime')"
+    private fun kingdomOf(row: String) = "TRIM(REPLACE(REPLACE($row.kingdom, '<b>', ''), '</b>', ''))"
+    private fun familyOf(row: String) = "TRIM(REPLACE(REPLACE($row.family, '<b>', ''), '</b>', ''))"
+
+    private fun increment(row: String) = """
+        INSERT OR IGNORE INTO stats_monthly (month, count) VALUES (${monthOf(row)}, 0);
+        UPDATE stats_monthly SET count = count + 1 WHERE month = ${monthOf(row)};
+        INSERT OR IGNORE INTO stats_taxon (kingdom, family, count) VALUES (${kingdomOf(row)}, ${familyOf(row)}, 0);
+        UPDATE stats_taxon SET count = count + 1 WHERE kingdom = ${kingdomOf(row)} AND family = ${familyOf(row)};
+    """
+
+    private fun decrement(row: String) = """
+        UPDATE stats_monthly SET count = count - 1 WHERE month = ${monthOf(row)};
+        DELETE FROM stats_monthly WHERE month = ${monthOf(row)} AND count <= 0;
+        UPDATE stats_taxon SET count = count - 1 WHERE kingdom = ${kingdomOf(row)} AND family = ${familyOf(row)};
+        DELETE FROM stats_taxon WHERE kingdom = ${kingdomOf(row)} AND family = ${familyOf(row)} AND count <= 0;
+    """
+
+    fun create(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `stats_history_insert` AFTER INSERT ON `history_table` " +
+                "BEGIN ${increment("NEW")} END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `stats_history_delete` AFTER DELETE ON `history_table` " +
+                "BEGIN ${decrement("OLD")} END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `stats_history_update` " +
+                "AFTER UPDATE OF timestamp, kingdom, family ON `history_table` " +
+                "BEGIN ${decrement("OLD")} ${increment("NEW")} END"
+        )
+    }
+}
@@ -0,0 +1,72 @@
+package com.nguyendevs.ecolens.fragments
+
+import android.os.Bundle
+import android.view.View
+import android.widget.ImageView
+import android.widget.TextView
+import androidx.fragment.app.Fragment
+import androidx.fragment.app.activityViewModels
+import androidx.lifecycle.lifecycleScope
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.adapters.BatchItemAdapter
+import com.nguyendevs.ecolens.model.BatchItem
+import com.nguyendevs.ecolens.view.EcoLensViewModel
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.launch
+
+class BatchIdentificationFragment : Fragment(R.layout.fragment_batch_identification_modern) {
+
+    private val viewModel: EcoLensViewModel by activityViewModels()
+
+    private lateinit var rvBatchItems: RecyclerView
+    private lateinit var tvBatchSummary: TextView
+    private lateinit var btnCancelBatch: ImageView
+
+    override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
+        super.onViewCreated(view, savedInstanceState)
+
+        rvBatchItems = view.findViewById(R.id.rvBatchItems)
+        tvBatchSummary = view.findViewById(R.id.tvBatchSummary)
+        btnCancelBatch = view.findViewById(R.id.btnCancelBatch)
+
+        view.findViewById<ImageView>(R.id.btnBack).setOnClickListener {
+            parentFragmentManager.popBackStack()
+        }
+        btnCancelBatch.setOnClickListener {
+            viewModel.cancelBatchIdentification()
+        }
+
+        val adapter = BatchItemAdapter { item -> openDetail(item) }
+        rvBatchItems.layoutManager = LinearLayoutManager(requireContext())
+        rvBatchItems.adapter = adapter
+        // Trạng thái đổi liên tục, tắt hiệu ứng thay đổi để thẻ không nháy
+        rvBatchItems.itemAnimator?.changeDuration = 0
+
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewModel.batchItems.collectLatest { items ->
+                adapter.submitList(items)
+                val finished = items.count { it.stage.isFinished }
+                tvBatchSummary.text = getString(R.string.batch_summary, finished, items.size)
+                btnCancelBatch.visibility = if (finished < items.size) View.VISIBLE else View.GONE
+            }
+        }
+    }
+
+    override fun onDestroyView() {
+        rvBatchItems.adapter = null
+        super.onDestroyView()
+    }
+
+    private fun openDetail(item: BatchItem) {
+        val historyId = item.historyId ?: return
+        val fragment = HistoryDetailFragment.newInstance(historyId)
+
+        parentFragmentManager.beginTransaction()
+            .setCustomAnimations(R.anim.slide_in_bottom, R.anim.hold, R.anim.hold, R.anim.slide_out_bottom)
+            .add(R.id.fragmentContainer, fragment)
+            .addToBackStack("Detail")
+            .commit()
+    }
+}
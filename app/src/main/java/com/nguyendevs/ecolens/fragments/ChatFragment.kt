@@ -2,11 +2,11 @@ package com.nguyendevs.ecolens.fragments
 
 import android.content.*
 import android.os.*
-import android.text.Html
 import android.util.Log
 import android.view.*
 import android.widget.*
 import androidx.appcompat.app.AlertDialog
+import androidx.appcompat.app.AppCompatActivity
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.activityViewModels
 import androidx.lifecycle.lifecycleScope
@@ -15,6 +15,10 @@ import androidx.recyclerview.widget.RecyclerView
 import com.nguyendevs.ecolens.R
 import com.nguyendevs.ecolens.adapters.ChatAdapter
 import com.nguyendevs.ecolens.model.ChatMessage
+import com.nguyendevs.ecolens.utils.FramePacedPresenter
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+import com.nguyendevs.ecolens.utils.RenderMetrics
+import com.nguyendevs.ecolens.utils.RichContent
 import com.nguyendevs.ecolens.view.EcoLensViewModel
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.launch
@@ -29,13 +33,23 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
     private lateinit var btnBack: ImageView
     private lateinit var btnMenu: ImageView
     private var currentSessionId: Long? = null
+    private var pendingTargetMessageId: Long? = null
+
+    // Danh sách tin nhắn và cuộn tự động được áp dụng cùng nhau, tối đa một lần mỗi khung hình
+    private val messagePresenter = FramePacedPresenter<List<ChatMessage>> { messages -> renderMessages(messages) }
+    private var wasStreaming = false
 
     companion object {
         private const val ARG_SESSION_ID = "session_id"
-        fun newInstance(sessionId: Long? = null): ChatFragment {
+        private const val ARG_TARGET_MESSAGE_ID = "target_message_id"
+        private const val NEW_MESSAGE_THRESHOLD = 2
+        private const val PAGE_PREFETCH_DISTANCE = 5
+        private const val RENDER_METRICS_SCREEN = "chat"
+        fun newInstance(sessionId: Long? = null, targetMessageId: Long? = null): ChatFragment {
             return ChatFragment().apply {
                 arguments = Bundle().apply {
                     sessionId?.let { putLong(ARG_SESSION_ID, it) }
+                    targetMessageId?.let { putLong(ARG_TARGET_MESSAGE_ID, it) }
                 }
             }
         }
@@ -44,6 +58,7 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         currentSessionId = arguments?.getLong(ARG_SESSION_ID, -1L)?.takeIf { it != -1L }
+        pendingTargetMessageId = arguments?.getLong(ARG_TARGET_MESSAGE_ID, -1L)?.takeIf { it != -1L }
     }
 
     override fun onCreateView(
@@ -61,7 +76,7 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
         observeViewModel()
 
         if (currentSessionId != null) {
-            viewModel.loadChatSession(currentSessionId!!)
+            viewModel.loadChatSession(currentSessionId!!, pendingTargetMessageId)
         } else {
             viewModel.initNewChatSession(
                 getString(R.string.chat_welcome),
@@ -75,14 +90,14 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
     override fun onCopy(text: String) {
         performHapticFeedback()
         val clipboard = requireContext().getSystemService(Context.CLIPBOARD_SERVICE) as ClipboardManager
-        val cleanText = stripHtml(text)
+        val cleanText = RichContent.plainTextOf(text)
         val clip = ClipData.newPlainText("EcoLens", cleanText)
         clipboard.setPrimaryClip(clip)
         Toast.makeText(requireContext(), "Đã sao chép", Toast.LENGTH_SHORT).show()
     }
 
     override fun onShare(text: String) {
-        val cleanText = stripHtml(text)
+        val cleanText = RichContent.plainTextOf(text)
         val intent = Intent(Intent.ACTION_SEND).apply {
             type = "text/plain"
             putExtra(Intent.EXTRA_TEXT, cleanText)
@@ -95,6 +110,16 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
         viewModel.renewAiResponse(message)
     }
 
+    override fun onDestroyView() {
+        messagePresenter.cancel()
+        wasStreaming = false
+        RenderMetrics.record(RENDER_METRICS_SCREEN, messagePresenter.takeStats())
+
+        // Trả ViewHolder về pool dùng chung của Activity cho lần mở sau
+        rvChat.adapter = null
+        super.onDestroyView()
+    }
+
     private fun initViews(view: View) {
         rvChat = view.findViewById(R.id.rvChat)
         etInput = view.findViewById(R.id.etChatInput)
@@ -108,8 +133,18 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
             stackFromEnd = true
         }
         rvChat.layoutManager = layoutManager
+        rvChat.setRecycledViewPool(LayoutPrefetcher.of(requireActivity() as AppCompatActivity).pool(R.layout.item_chat_message_modern))
         rvChat.adapter = adapter
         rvChat.itemAnimator = null
+        rvChat.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PAGE_PREFETCH_DISTANCE) {
+                    viewModel.loadOlderMessages()
+                } else if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= adapter.itemCount - 1 - PAGE_PREFETCH_DISTANCE) {
+                    viewModel.loadNewerMessages()
+                }
+            }
+        })
     }
 
     private fun setupListeners() {
@@ -166,24 +201,13 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
 
     private fun observeViewModel() {
         viewLifecycleOwner.lifecycleScope.launch {
-            viewModel.chatMessages.collectLatest { messages ->
-                val isNewMessageAdded = messages.size > adapter.itemCount
-                val layoutManager = rvChat.layoutManager as LinearLayoutManager
-                val lastVisibleItemPosition = layoutManager.findLastVisibleItemPosition()
-                val isAtBottom = lastVisibleItemPosition == adapter.itemCount - 1
-
-                adapter.submitList(messages)
-
-                if (messages.isNotEmpty()) {
-                    if (isNewMessageAdded) {
-                        rvChat.scrollToPosition(messages.size - 1)
-                    } else if (isAtBottom) {
-                        val lastPos = messages.size - 1
-                        if (layoutManager.findLastCompletelyVisibleItemPosition() < lastPos) {
-                            rvChat.scrollToPosition(lastPos)
-                        }
-                    }
-                }
+            viewModel.chatMessages.collect { messages ->
+                messagePresenter.submit(messages)
+
+                // Stream vừa kết thúc: vẽ bản hoàn chỉnh ngay, không chờ khung hình kế tiếp
+                val isStreaming = messages.any { it.isStreaming }
+                if (wasStreaming && !isStreaming) messagePresenter.flush()
+                wasStreaming = isStreaming
             }
         }
         viewLifecycleOwner.lifecycleScope.launch {
@@ -193,6 +217,38 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
         }
     }
 
+    private fun renderMessages(messages: List<ChatMessage>) {
+        val previousLastId = adapter.lastMessageId()
+        val layoutManager = rvChat.layoutManager as LinearLayoutManager
+        val lastVisibleItemPosition = layoutManager.findLastVisibleItemPosition()
+        val isAtBottom = lastVisibleItemPosition == adapter.itemCount - 1
+
+        // Tin nhắn mới được nối vào đuôi, không phải một trang vừa tải thêm
+        val previousLastIndex = messages.indexOfLast { it.id == previousLastId }
+        val isNewMessageAdded = previousLastId == null && messages.isNotEmpty() ||
+                previousLastIndex != -1 && messages.size - 1 - previousLastIndex in 1..NEW_MESSAGE_THRESHOLD
+
+        adapter.submitList(messages)
+
+        val targetIndex = pendingTargetMessageId?.let { id -> messages.indexOfFirst { it.id == id } } ?: -1
+        if (targetIndex != -1) {
+            pendingTargetMessageId = null
+            rvChat.post { layoutManager.scrollToPositionWithOffset(targetIndex, rvChat.height / 3) }
+            return
+        }
+
+        if (messages.isNotEmpty()) {
+            if (isNewMessageAdded) {
+                rvChat.scrollToPosition(messages.size - 1)
+            } else if (isAtBottom) {
+                val lastPos = messages.size - 1
+                if (layoutManager.findLastCompletelyVisibleItemPosition() < lastPos) {
+                    rvChat.scrollToPosition(lastPos)
+                }
+            }
+        }
+    }
+
     private fun updateUIForStreamingState(isStreaming: Boolean) {
         val alpha = if (isStreaming) 0.5f else 1f
         val enabled = !isStreaming
@@ -222,16 +278,4 @@ class ChatFragment : Fragment(), ChatAdapter.OnChatActionListener {
             Log.e("ChatFragment", "Vibration failed: ${e.message}")
         }
     }
-
-    private fun stripHtml(html: String): String {
-        var text = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Html.fromHtml(html, Html.FROM_HTML_MODE_COMPACT).toString()
-        } else {
-            @Suppress("DEPRECATION") Html.fromHtml(html).toString()
-        }
-        text = text.replace(Regex("\\*\\*(.*?)\\*\\*"), "$1")
-        text = text.replace(Regex("##(.*?)##"), "$1")
-        text = text.replace(Regex("~~(.*?)~~"), "$1")
-        return text.trim()
-    }
 }
\ No newline at end of file
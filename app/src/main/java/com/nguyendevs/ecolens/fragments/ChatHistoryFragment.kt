@@ -2,6 +2,11 @@ package com.nguyendevs.ecolens.fragments
 
 import android.os.Bundle
 import android.view.View
+import android.widget.EditText
+import android.widget.TextView
+import androidx.activity.OnBackPressedCallback
+import androidx.appcompat.app.AlertDialog
+import androidx.appcompat.app.AppCompatActivity
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.activityViewModels
 import androidx.lifecycle.lifecycleScope
@@ -9,9 +14,19 @@ import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton
 import com.nguyendevs.ecolens.R
+import androidx.core.widget.doAfterTextChanged
+import com.nguyendevs.ecolens.adapters.ChatSearchResultAdapter
 import com.nguyendevs.ecolens.adapters.ChatSessionAdapter
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
 import com.nguyendevs.ecolens.view.EcoLensViewModel
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.launch
 import android.content.Context
 import android.os.Build
@@ -21,48 +36,153 @@ import android.os.VibratorManager
 
 class ChatHistoryFragment : Fragment(R.layout.screen_assistant_modern) {
 
+    companion object {
+        private const val SEARCH_DEBOUNCE_MS = 300L
+    }
+
     private val viewModel: EcoLensViewModel by activityViewModels()
     private lateinit var adapter: ChatSessionAdapter
 
     private lateinit var rvChatHistory: RecyclerView
     private lateinit var emptyStateContainer: View
+    private lateinit var searchAdapter: ChatSearchResultAdapter
+    private lateinit var rvSearchResults: RecyclerView
+    private lateinit var tvSearchEmpty: View
+    private lateinit var etSearch: EditText
+    private lateinit var btnClearSearch: View
+
+    private val searchQuery = MutableStateFlow("")
+    private var isSessionListEmpty = true
+    private lateinit var selectionBar: View
+    private lateinit var tvSelectedCount: TextView
+
+    private val selectionBackCallback = object : OnBackPressedCallback(false) {
+        override fun handleOnBackPressed() {
+            adapter.clearSelection()
+        }
+    }
 
     override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
         super.onViewCreated(view, savedInstanceState)
 
         rvChatHistory = view.findViewById(R.id.rvChatHistory)
         emptyStateContainer = view.findViewById(R.id.emptyStateContainer)
+        selectionBar = view.findViewById(R.id.selectionBar)
+        tvSelectedCount = view.findViewById(R.id.tvSelectedCount)
         val fab = view.findViewById<ExtendedFloatingActionButton>(R.id.fabNewChat)
 
         setupRecyclerView(rvChatHistory)
+        setupSearch(view)
         observeChatSessions()
         setupFabListener(fab)
+        setupSelectionBar(view)
+    }
+
+    override fun onDestroyView() {
+        // Trả ViewHolder về pool dùng chung của Activity cho lần mở sau
+        rvChatHistory.adapter = null
+        super.onDestroyView()
     }
 
     private fun setupRecyclerView(rv: RecyclerView) {
-        adapter = ChatSessionAdapter(emptyList()) { session ->
-            openChatScreen(session.id)
-        }
+        adapter = ChatSessionAdapter(
+            sessions = emptyList(),
+            onClick = { session -> openChatScreen(session.id) },
+            onSelectionChanged = { count -> updateSelectionUI(count) }
+        )
 
         rv.layoutManager = LinearLayoutManager(requireContext())
+        rv.setRecycledViewPool(LayoutPrefetcher.of(requireActivity() as AppCompatActivity).pool(R.layout.item_chat_entry_modern))
         rv.adapter = adapter
     }
 
     private fun observeChatSessions() {
         viewLifecycleOwner.lifecycleScope.launch {
             viewModel.allChatSessions.collectLatest { list ->
-                if (list.isEmpty()) {
-                    rvChatHistory.visibility = View.GONE
-                    emptyStateContainer.visibility = View.VISIBLE
-                } else {
-                    rvChatHistory.visibility = View.VISIBLE
-                    emptyStateContainer.visibility = View.GONE
-                }
+                isSessionListEmpty = list.isEmpty()
                 adapter.updateList(list)
+                updateContentVisibility()
             }
         }
     }
 
+    @OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
+    private fun setupSearch(view: View) {
+        etSearch = view.findViewById(R.id.etChatSearch)
+        btnClearSearch = view.findViewById(R.id.btnClearChatSearch)
+        rvSearchResults = view.findViewById(R.id.rvChatSearchResults)
+        tvSearchEmpty = view.findViewById(R.id.tvChatSearchEmpty)
+
+        searchAdapter = ChatSearchResultAdapter(emptyList()) { result ->
+            openChatScreen(result.sessionId, result.messageId)
+        }
+        rvSearchResults.layoutManager = LinearLayoutManager(requireContext())
+        rvSearchResults.adapter = searchAdapter
+
+        etSearch.doAfterTextChanged { text ->
+            val query = text?.toString()?.trim().orEmpty()
+            btnClearSearch.visibility = if (query.isEmpty()) View.GONE else View.VISIBLE
+            searchQuery.value = query
+            updateContentVisibility()
+        }
+        btnClearSearch.setOnClickListener { etSearch.text.clear() }
+
+        viewLifecycleOwner.lifecycleScope.launch {
+            searchQuery
+                .debounce(SEARCH_DEBOUNCE_MS)
+                .distinctUntilChanged()
+                .filter { it.isNotEmpty() }
+                .flatMapLatest { viewModel.searchChatMessages(it) }
+                .collectLatest { results ->
+                    searchAdapter.updateList(results)
+                    tvSearchEmpty.visibility = if (results.isEmpty() && isSearching()) View.VISIBLE else View.GONE
+                }
+        }
+    }
+
+    private fun isSearching() = searchQuery.value.isNotEmpty()
+
+    private fun updateContentVisibility() {
+        if (isSearching()) {
+            rvChatHistory.visibility = View.GONE
+            emptyStateContainer.visibility = View.GONE
+            rvSearchResults.visibility = View.VISIBLE
+        } else {
+            rvSearchResults.visibility = View.GONE
+            tvSearchEmpty.visibility = View.GONE
+            searchAdapter.updateList(emptyList())
+            rvChatHistory.visibility = if (isSessionListEmpty) View.GONE else View.VISIBLE
+            emptyStateContainer.visibility = if (isSessionListEmpty) View.VISIBLE else View.GONE
+        }
+    }
+
+    private fun setupSelectionBar(view: View) {
+        view.findViewById<View>(R.id.btnClearSelection).setOnClickListener { adapter.clearSelection() }
+        view.findViewById<View>(R.id.btnDeleteSelected).setOnClickListener { confirmDeleteSelected() }
+        requireActivity().onBackPressedDispatcher.addCallback(viewLifecycleOwner, selectionBackCallback)
+    }
+
+    private fun updateSelectionUI(count: Int) {
+        selectionBar.visibility = if (count > 0) View.VISIBLE else View.GONE
+        tvSelectedCount.text = getString(R.string.selected_count, count)
+        selectionBackCallback.isEnabled = count > 0
+    }
+
+    private fun confirmDeleteSelected() {
+        val ids = adapter.getSelectedIds()
+        if (ids.isEmpty()) return
+
+        AlertDialog.Builder(requireContext())
+            .setTitle(R.string.dialog_delete_chat_title)
+            .setMessage(getString(R.string.dialog_delete_chats_message, ids.size))
+            .setPositiveButton(R.string.action_delete) { _, _ ->
+                viewModel.deleteChatSessions(ids)
+                adapter.clearSelection()
+            }
+            .setNegativeButton(R.string.action_cancel, null)
+            .show()
+    }
+
     private fun setupFabListener(fab: ExtendedFloatingActionButton) {
         fab.setOnClickListener {
             performHapticFeedback()
@@ -70,8 +190,8 @@ class ChatHistoryFragment : Fragment(R.layout.screen_assistant_modern) {
         }
     }
 
-    private fun openChatScreen(sessionId: Long?) {
-        val fragment = ChatFragment.newInstance(sessionId)
+    private fun openChatScreen(sessionId: Long?, targetMessageId: Long? = null) {
+        val fragment = ChatFragment.newInstance(sessionId, targetMessageId)
 
         parentFragmentManager.beginTransaction()
             .setCustomAnimations(R.anim.slide_in_right, R.anim.fade_out, R.anim.fade_in, R.anim.fade_out)
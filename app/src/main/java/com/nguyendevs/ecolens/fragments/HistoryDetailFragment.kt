@@ -6,51 +6,63 @@ import android.graphics.text.LineBreaker
 import android.content.ClipData
 import android.content.Intent
 import android.net.Uri
-import android.os.Build
 import android.os.Bundle
-import android.text.Html
-import android.util.TypedValue
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageView
-import android.widget.LinearLayout
 import android.widget.TextView
 import android.widget.Toast
+import androidx.appcompat.app.AppCompatActivity
 import androidx.core.content.ContextCompat
 import androidx.core.content.FileProvider
 import androidx.fragment.app.Fragment
+import androidx.fragment.app.activityViewModels
+import androidx.lifecycle.lifecycleScope
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
 import com.google.android.material.appbar.CollapsingToolbarLayout
 import com.google.android.material.floatingactionbutton.FloatingActionButton
-import com.google.gson.Gson
 import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.adapters.DetailSectionAdapter
 import com.nguyendevs.ecolens.managers.SpeakerManager
 import com.nguyendevs.ecolens.model.HistoryEntry
 import com.nguyendevs.ecolens.model.SpeciesInfo
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
+import com.nguyendevs.ecolens.utils.ShareTextGenerator
+import com.nguyendevs.ecolens.utils.TextRenderService
 import com.nguyendevs.ecolens.utils.TextToSpeechGenerator
+import com.nguyendevs.ecolens.view.EcoLensViewModel
+import kotlinx.coroutines.flow.firstOrNull
+import kotlinx.coroutines.launch
 import java.io.File
 
 class HistoryDetailFragment : Fragment() {
 
+    companion object {
+        private const val ARG_HISTORY_ID = "history_id"
+
+        fun newInstance(historyId: Int): HistoryDetailFragment {
+            return HistoryDetailFragment().apply {
+                arguments = Bundle().apply { putInt(ARG_HISTORY_ID, historyId) }
+            }
+        }
+    }
+
+    private val viewModel: EcoLensViewModel by activityViewModels()
     private lateinit var speakerManager: SpeakerManager
-    private var historyEntry: HistoryEntry? = null
+    private var historyId: Int? = null
     private var isSpeaking = false
+    private var sectionAdapter: DetailSectionAdapter? = null
 
     private fun TextView.setHtml(html: String) {
-        text = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Html.fromHtml(html, Html.FROM_HTML_MODE_COMPACT)
-        } else {
-            @Suppress("DEPRECATION")
-            Html.fromHtml(html)
-        }
+        TextRenderService.setHtml(this, html, viewLifecycleOwner.lifecycleScope)
     }
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
-        arguments?.getString("HISTORY_ENTRY_JSON")?.let { json ->
-            historyEntry = Gson().fromJson(json, HistoryEntry::class.java)
-        }
+        historyId = arguments?.getInt(ARG_HISTORY_ID, -1)?.takeIf { it != -1 }
         speakerManager = SpeakerManager(requireContext())
     }
 
@@ -64,13 +76,23 @@ class HistoryDetailFragment : Fragment() {
             speakerManager.pause()
         }
 
-        val entry = historyEntry ?: return
+        setupBackButton(view)
+        setupSections(view)
+        val id = historyId ?: return
+
+        // Chi tiết nén chỉ được giải nén khi mở màn hình này
+        viewLifecycleOwner.lifecycleScope.launch {
+            val entry = viewModel.getHistoryEntry(id).firstOrNull() ?: return@launch
+            bindEntry(view, entry)
+        }
+    }
+
+    private fun bindEntry(view: View, entry: HistoryEntry) {
         val info = entry.speciesInfo
 
-        setupBackButton(view)
         bindHeader(view, entry, info)
         bindTaxonomy(view, info)
-        bindContent(view, info)
+        bindContent(info)
         setupFab(view, info)
         setupShareButton(view, info, entry.imagePath)
         view.findViewById<FloatingActionButton>(R.id.fab_speak)?.let { fab ->
@@ -79,6 +101,26 @@ class HistoryDetailFragment : Fragment() {
         }
     }
 
+    // Các mục nội dung dùng RecyclerView với pool view chung của Activity
+    private fun setupSections(view: View) {
+        val prefetcher = LayoutPrefetcher.of(requireActivity() as AppCompatActivity)
+        val adapter = DetailSectionAdapter(prefetcher, viewLifecycleOwner.lifecycleScope)
+        sectionAdapter = adapter
+
+        view.findViewById<RecyclerView>(R.id.rvSections).apply {
+            layoutManager = LinearLayoutManager(context)
+            setRecycledViewPool(prefetcher.pool(R.layout.item_detail_section))
+            this.adapter = adapter
+        }
+    }
+
+    override fun onDestroyView() {
+        // Gỡ adapter để các ViewHolder quay về pool dùng chung thay vì bị bỏ đi
+        view?.findViewById<RecyclerView>(R.id.rvSections)?.adapter = null
+        sectionAdapter = null
+        super.onDestroyView()
+    }
+
     override fun onStop() {
         super.onStop()
         if (isSpeaking) {
@@ -132,42 +174,8 @@ class HistoryDetailFragment : Fragment() {
     }
 
     private fun shareSpeciesInfo(info: SpeciesInfo, imageUri: Uri?) {
-        val confidencePercent =
-            String.format("%.2f", if (info.confidence > 1) info.confidence else info.confidence * 100)
-
         val context = requireContext()
-        val shareText = buildString {
-            append(context.getString(R.string.share_title))
-            append("\n━━━━━━━━━━━━━━━━━━━━\n\n")
-            append("📌 ${stripHtml(info.commonName)}\n🔬 ${stripHtml(info.scientificName)}\n")
-            append("✅ ${context.getString(R.string.label_confidence_template, confidencePercent)}%\n\n")
-            append("━━━━━━━━━━━━━━━━━━━━\n${context.getString(R.string.share_taxonomy_title)}\n━━━━━━━━━━━━━━━━━━━━\n\n")
-            if (info.kingdom.isNotEmpty()) append("• ${context.getString(R.string.label_kingdom)} ${stripHtml(info.kingdom)}\n")
-            if (info.phylum.isNotEmpty()) append("• ${context.getString(R.string.label_phylum)} ${stripHtml(info.phylum)}\n")
-            if (info.className.isNotEmpty()) append("• ${context.getString(R.string.label_class)} ${stripHtml(info.className)}\n")
-            if (info.taxorder.isNotEmpty()) append("• ${context.getString(R.string.label_order)} ${stripHtml(info.taxorder)}\n")
-            if (info.family.isNotEmpty()) append("• ${context.getString(R.string.label_family)} ${stripHtml(info.family)}\n")
-            if (info.genus.isNotEmpty()) append("• ${context.getString(R.string.label_genus)} ${stripHtml(info.genus)}\n")
-            if (info.species.isNotEmpty()) append("• ${context.getString(R.string.label_species)} ${stripHtml(info.species)}\n")
-
-            val contentList = listOf(
-                info.description to R.string.share_desc_title,
-                info.characteristics to R.string.share_char_title,
-                info.distribution to R.string.share_dist_title,
-                info.habitat to R.string.share_hab_title,
-                info.conservationStatus to R.string.share_cons_title
-            )
-            contentList.forEach { (content, title) ->
-                if (content.isNotEmpty()) {
-                    append(
-                        "\n━━━━━━━━━━━━━━━━━━━━\n${context.getString(title)}\n━━━━━━━━━━━━━━━━━━━━\n\n${
-                            stripHtml(content)
-                        }\n"
-                    )
-                }
-            }
-            append("\n━━━━━━━━━━━━━━━━━━━━\n${context.getString(R.string.share_footer)}")
-        }
+        val shareText = ShareTextGenerator.generateShareText(context, info)
 
         try {
             val intent = Intent(Intent.ACTION_SEND).apply {
@@ -180,7 +188,7 @@ class HistoryDetailFragment : Fragment() {
                     type = "text/plain"
                 }
                 putExtra(Intent.EXTRA_TEXT, shareText)
-                putExtra(Intent.EXTRA_SUBJECT, context.getString(R.string.share_subject, stripHtml(info.commonName)))
+                putExtra(Intent.EXTRA_SUBJECT, ShareTextGenerator.generateShareSubject(context, info))
             }
             startActivity(Intent.createChooser(intent, context.getString(R.string.share_chooser_title)))
         } catch (e: Exception) {
@@ -188,17 +196,6 @@ class HistoryDetailFragment : Fragment() {
         }
     }
 
-    private fun stripHtml(html: String): String {
-        var text = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Html.fromHtml(html, Html.FROM_HTML_MODE_COMPACT).toString()
-        } else {
-            @Suppress("DEPRECATION") Html.fromHtml(html).toString()
-        }
-        text = text.replace(Regex("\\*\\*(.*?)\\*\\*"), "$1")
-        text = text.replace(Regex("\\*(.*?)\\*"), "$1")
-        return text.trim()
-    }
-
     private fun bindHeader(view: View, entry: HistoryEntry, info: SpeciesInfo) {
         val ivImage = view.findViewById<ImageView>(R.id.ivDetailImage)
         val tvCommon = view.findViewById<TextView>(R.id.tvCommonName)
@@ -255,58 +252,17 @@ class HistoryDetailFragment : Fragment() {
         setTaxonomyText(R.id.tvSpecies, info.species)
     }
 
-    private fun bindContent(view: View, info: SpeciesInfo) {
-        val container = view.findViewById<LinearLayout>(R.id.containerSections)
-        container.removeAllViews()
-
-        addSection(container, getString(R.string.section_description), info.description)
-        addSection(container, getString(R.string.section_characteristics), info.characteristics)
-        addSection(container, getString(R.string.section_distribution), info.distribution)
-        addSection(container, getString(R.string.section_habitat), info.habitat)
-        addSection(container, getString(R.string.section_conservation), info.conservationStatus)
-    }
-
-    private fun addSection(container: LinearLayout, title: String, content: String) {
-        if (content.isBlank()) return
-
-        val titleView = TextView(context).apply {
-            text = title
-            textSize = 20f
-            setTextColor(ContextCompat.getColor(context, R.color.text_primary))
-            setTypeface(null, android.graphics.Typeface.BOLD)
-            layoutParams = LinearLayout.LayoutParams(
-                ViewGroup.LayoutParams.WRAP_CONTENT,
-                ViewGroup.LayoutParams.WRAP_CONTENT
-            ).apply {
-                topMargin = 24.dpToPx()
-                bottomMargin = 10.dpToPx()
-            }
-        }
-
-        val divider = View(context).apply {
-            layoutParams = LinearLayout.LayoutParams(
-                ViewGroup.LayoutParams.MATCH_PARENT,
-                1.dpToPx()
-            ).apply {
-                bottomMargin = 12.dpToPx()
-            }
-            setBackgroundColor(Color.parseColor("#F0F0F0"))
-        }
-
-        val contentView = TextView(context).apply {
-            textSize = 15f
-            setTextColor(ContextCompat.getColor(context, R.color.text_secondary))
-            setLineSpacing(0f, 1.4f)
-            /*if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                justificationMode = LineBreaker.JUSTIFICATION_MODE_INTER_WORD
-            }
-             */
-            setHtml(content)
-        }
-
-        container.addView(titleView)
-        container.addView(divider)
-        container.addView(contentView)
+    private fun bindContent(info: SpeciesInfo) {
+        val sections = listOf(
+            R.string.section_description to info.description,
+            R.string.section_characteristics to info.characteristics,
+            R.string.section_distribution to info.distribution,
+            R.string.section_habitat to info.habitat,
+            R.string.section_conservation to info.conservationStatus
+        ).filter { it.second.isNotBlank() }
+            .map { (titleRes, html) -> DetailSectionAdapter.Section(getString(titleRes), html) }
+
+        sectionAdapter?.submitList(sections)
     }
 
     private fun setupFab(view: View, info: SpeciesInfo) {
@@ -339,12 +295,4 @@ class HistoryDetailFragment : Fragment() {
             fab.backgroundTintList = ColorStateList.valueOf(ContextCompat.getColor(requireContext(), R.color.green_primary))
         }
     }
-
-    private fun Int.dpToPx(): Int {
-        return TypedValue.applyDimension(
-            TypedValue.COMPLEX_UNIT_DIP,
-            this.toFloat(),
-            resources.displayMetrics
-        ).toInt()
-    }
 }
\ No newline at end of file
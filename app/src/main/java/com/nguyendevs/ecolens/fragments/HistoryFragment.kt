@@ -8,20 +8,22 @@ import android.widget.FrameLayout
 import android.widget.ImageView
 import android.widget.LinearLayout
 import android.widget.TextView
+import androidx.activity.OnBackPressedCallback
+import androidx.appcompat.app.AlertDialog
+import androidx.appcompat.app.AppCompatActivity
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.activityViewModels
 import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.RecyclerView
 import com.google.android.material.card.MaterialCardView
 import com.google.android.material.datepicker.MaterialDatePicker
-import com.google.gson.Gson
 import com.nguyendevs.ecolens.R
 import com.nguyendevs.ecolens.adapters.HistoryAdapter
-import com.nguyendevs.ecolens.model.HistoryEntry
+import com.nguyendevs.ecolens.adapters.HistoryGroupDecoration
 import com.nguyendevs.ecolens.model.HistorySortOption
+import com.nguyendevs.ecolens.model.HistorySummary
+import com.nguyendevs.ecolens.utils.LayoutPrefetcher
 import com.nguyendevs.ecolens.view.EcoLensViewModel
-import io.noties.markwon.Markwon
-import io.noties.markwon.html.HtmlPlugin
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.launch
 import java.text.SimpleDateFormat
@@ -42,6 +44,8 @@ class HistoryFragment : Fragment(R.layout.screen_history_modern) {
     private lateinit var optionsContainer: LinearLayout
     private lateinit var optionsHeader: FrameLayout
     private lateinit var rvHistory: RecyclerView
+    private lateinit var selectionBar: LinearLayout
+    private lateinit var tvSelectedCount: TextView
     private lateinit var tvCurrentSort: TextView
     private lateinit var tvFilterSubtitle: TextView
 
@@ -50,6 +54,12 @@ class HistoryFragment : Fragment(R.layout.screen_history_modern) {
     private var filterStartDate: Long? = null
     private var isOptionsExpanded = false
 
+    private val selectionBackCallback = object : OnBackPressedCallback(false) {
+        override fun handleOnBackPressed() {
+            adapter.clearSelection()
+        }
+    }
+
     override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
         super.onViewCreated(view, savedInstanceState)
         initViews(view)
@@ -59,6 +69,12 @@ class HistoryFragment : Fragment(R.layout.screen_history_modern) {
         updateSortUI()
     }
 
+    override fun onDestroyView() {
+        // Trả ViewHolder về pool dùng chung của Activity cho lần mở sau
+        rvHistory.adapter = null
+        super.onDestroyView()
+    }
+
     private fun initViews(view: View) {
         rvHistory = view.findViewById(R.id.rvHistory)
         emptyStateContainer = view.findViewById(R.id.emptyStateContainer)
@@ -70,20 +86,20 @@ class HistoryFragment : Fragment(R.layout.screen_history_modern) {
         optionsHeader = view.findViewById(R.id.optionsHeader)
         optionsContainer = view.findViewById(R.id.optionsContainer)
         ivExpandIcon = view.findViewById(R.id.ivExpandIcon)
+        selectionBar = view.findViewById(R.id.selectionBar)
+        tvSelectedCount = view.findViewById(R.id.tvSelectedCount)
     }
 
     private fun setupAdapter() {
-        val markwon = Markwon.builder(requireContext())
-            .usePlugin(HtmlPlugin.create())
-            .build()
-
         adapter = HistoryAdapter(
-            historyList = emptyList(),
-            markwon = markwon,
+            renderScope = viewLifecycleOwner.lifecycleScope,
             clickListener = { entry -> navigateToDetail(entry) },
-            favoriteClickListener = { entry -> viewModel.toggleFavorite(entry) }
+            favoriteClickListener = { entry -> viewModel.toggleFavorite(entry) },
+            selectionListener = { count -> updateSelectionUI(count) }
         )
+        rvHistory.setRecycledViewPool(LayoutPrefetcher.of(requireActivity() as AppCompatActivity).pool(R.layout.item_history_entry_modern))
         rvHistory.adapter = adapter
+        rvHistory.addItemDecoration(HistoryGroupDecoration(requireContext(), adapter))
     }
 
     private fun setupClickListeners() {
@@ -91,11 +107,40 @@ class HistoryFragment : Fragment(R.layout.screen_history_modern) {
         btnSort.setOnClickListener { toggleSortOption() }
         btnFilterByDate.setOnClickListener { showDateRangePickerDialog() }
         btnClearFilter.setOnClickListener { clearDateFilter() }
+
+        requireView().findViewById<View>(R.id.btnClearSelection).setOnClickListener { adapter.clearSelection() }
+        requireView().findViewById<View>(R.id.btnFavoriteSelected).setOnClickListener {
+            viewModel.setFavorite(adapter.getSelectedIds(), !adapter.areAllSelectedFavorite())
+            adapter.clearSelection()
+        }
+        requireView().findViewById<View>(R.id.btnDeleteSelected).setOnClickListener { confirmDeleteSelected() }
+        requireActivity().onBackPressedDispatcher.addCallback(viewLifecycleOwner, selectionBackCallback)
+    }
+
+    private fun updateSelectionUI(count: Int) {
+        selectionBar.visibility = if (count > 0) View.VISIBLE else View.GONE
+        tvSelectedCount.text = getString(R.string.selected_count, count)
+        selectionBackCallback.isEnabled = count > 0
+    }
+
+    private fun confirmDeleteSelected() {
+        val ids = adapter.getSelectedIds()
+        if (ids.isEmpty()) return
+
+        AlertDialog.Builder(requireContext())
+            .setTitle(R.string.dialog_delete_history_title)
+            .setMessage(getString(R.string.dialog_delete_history_message, ids.size))
+            .setPositiveButton(R.string.action_delete) { _, _ ->
+                viewModel.deleteHistoryEntries(ids)
+                adapter.clearSelection()
+            }
+            .setNegativeButton(R.string.action_cancel, null)
+            .show()
     }
 
     private fun observeHistory() {
         viewLifecycleOwner.lifecycleScope.launch {
-            viewModel.getHistoryBySortOption(currentSortOption, filterStartDate, filterEndDate)
+            viewModel.getHistorySections(currentSortOption, filterStartDate, filterEndDate)
                 .collectLatest { list ->
                     if (list.isEmpty()) {
                         rvHistory.visibility = View.GONE
@@ -103,19 +148,14 @@ class HistoryFragment : Fragment(R.layout.screen_history_modern) {
                     } else {
                         rvHistory.visibility = View.VISIBLE
                         emptyStateContainer.visibility = View.GONE
-                        adapter.updateList(list)
                     }
+                    adapter.updateList(list)
                 }
         }
     }
 
-    private fun navigateToDetail(entry: HistoryEntry) {
-        val jsonEntry = Gson().toJson(entry)
-        val fragment = HistoryDetailFragment().apply {
-            arguments = Bundle().apply {
-                putString("HISTORY_ENTRY_JSON", jsonEntry)
-            }
-        }
+    private fun navigateToDetail(entry: HistorySummary) {
+        val fragment = HistoryDetailFragment.newInstance(entry.id)
 
         parentFragmentManager.beginTransaction()
             .setCustomAnimations(R.anim.slide_in_bottom, R.anim.hold, R.anim.hold, R.anim.slide_out_bottom)
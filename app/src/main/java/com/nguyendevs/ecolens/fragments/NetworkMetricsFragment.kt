@@ -0,0 +1,123 @@
+package com.nguyendevs.ecolens.fragments
+
+import android.content.Intent
+import android.os.Bundle
+import android.view.LayoutInflater
+import android.view.View
+import android.widget.ImageView
+import android.widget.LinearLayout
+import android.widget.TextView
+import androidx.core.content.FileProvider
+import androidx.fragment.app.Fragment
+import androidx.lifecycle.lifecycleScope
+import com.google.android.material.materialswitch.MaterialSwitch
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.network.HedgingPolicy
+import com.nguyendevs.ecolens.network.NetworkMetrics
+import com.nguyendevs.ecolens.utils.RenderMetrics
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+
+class NetworkMetricsFragment : Fragment(R.layout.fragment_network_metrics_modern) {
+
+    private lateinit var containerMetrics: LinearLayout
+
+    override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
+        super.onViewCreated(view, savedInstanceState)
+
+        containerMetrics = view.findViewById(R.id.containerMetrics)
+
+        view.findViewById<ImageView>(R.id.btnBack).setOnClickListener {
+            parentFragmentManager.popBackStack()
+        }
+        view.findViewById<ImageView>(R.id.btnClearMetrics).setOnClickListener {
+            NetworkMetrics.clear()
+            RenderMetrics.clear()
+            bindSummaries()
+        }
+        view.findViewById<ImageView>(R.id.btnExportMetrics).setOnClickListener {
+            exportJsonLines()
+        }
+
+        // Yêu cầu dự phòng là tùy chọn thử nghiệm, bật tay để so sánh số liệu
+        val switchHedging = view.findViewById<MaterialSwitch>(R.id.switchHedging)
+        switchHedging.isChecked = HedgingPolicy.enabled
+        view.findViewById<View>(R.id.hedgingOption).setOnClickListener {
+            switchHedging.isChecked = !switchHedging.isChecked
+            HedgingPolicy.enabled = switchHedging.isChecked
+        }
+    }
+
+    override fun onResume() {
+        super.onResume()
+        bindSummaries()
+    }
+
+    private fun bindSummaries() {
+        containerMetrics.removeAllViews()
+        val inflater = LayoutInflater.from(containerMetrics.context)
+        val summaries = NetworkMetrics.summaries()
+
+        if (summaries.isEmpty()) {
+            val emptyView = inflater.inflate(R.layout.item_network_metric, containerMetrics, false)
+            emptyView.findViewById<TextView>(R.id.tvEndpoint).text = getString(R.string.network_metrics_empty)
+            emptyView.findViewById<TextView>(R.id.tvMetricLines).visibility = View.GONE
+            containerMetrics.addView(emptyView)
+        }
+
+        summaries.forEach { summary ->
+            val card = inflater.inflate(R.layout.item_network_metric, containerMetrics, false)
+            card.findViewById<TextView>(R.id.tvEndpoint).text = summary.endpoint
+            card.findViewById<TextView>(R.id.tvCallCount).text =
+                getString(R.string.network_metrics_calls, summary.count, summary.failures)
+            card.findViewById<TextView>(R.id.tvMetricLines).text = buildString {
+                appendLine("       p50    p95    p99")
+                appendPercentiles("total", summary.total)
+                appendPercentiles("ttfb", summary.ttfb)
+                appendPercentiles("upload", summary.upload)
+                appendPercentiles("connect", summary.connect)
+            }.trimEnd()
+            containerMetrics.addView(card)
+        }
+
+        bindRenderSummaries(inflater)
+    }
+
+    // Mức gộp cập nhật theo khung hình của các màn hình dùng FramePacedPresenter
+    private fun bindRenderSummaries(inflater: LayoutInflater) {
+        RenderMetrics.summaries().forEach { summary ->
+            val card = inflater.inflate(R.layout.item_network_metric, containerMetrics, false)
+            card.findViewById<TextView>(R.id.tvEndpoint).text = getString(R.string.render_metrics_screen, summary.screen)
+            card.findViewById<TextView>(R.id.tvCallCount).text =
+                getString(R.string.render_metrics_updates, summary.submitted, summary.rendered)
+            card.findViewById<TextView>(R.id.tvMetricLines).text =
+                getString(R.string.render_metrics_dropped, summary.dropped, summary.dropped * 100 / summary.submitted)
+            containerMetrics.addView(card)
+        }
+    }
+
+    private fun StringBuilder.appendPercentiles(label: String, value: NetworkMetrics.Percentiles?) {
+        if (value == null) return
+        appendLine(String.format("%-7s%5d  %5d  %5d", label, value.p50, value.p95, value.p99))
+    }
+
+    // Ghi JSON lines ra cache rồi chia sẻ qua FileProvider
+    private fun exportJsonLines() {
+        viewLifecycleOwner.lifecycleScope.launch {
+            val file = withContext(Dispatchers.IO) {
+                File(requireContext().cacheDir, "network_metrics.jsonl").apply {
+                    writeText(NetworkMetrics.toJsonLines())
+                }
+            }
+            val uri = FileProvider.getUriForFile(requireContext(), "${requireContext().packageName}.provider", file)
+            val intent = Intent(Intent.ACTION_SEND).apply {
+                type = "application/x-ndjson"
+                putExtra(Intent.EXTRA_STREAM, uri)
+                addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
+            }
+            startActivity(Intent.createChooser(intent, getString(R.string.network_metrics_export)))
+        }
+    }
+}
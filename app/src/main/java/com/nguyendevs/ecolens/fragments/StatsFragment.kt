@@ -0,0 +1,97 @@
+package com.nguyendevs.ecolens.fragments
+
+import android.os.Bundle
+import android.view.LayoutInflater
+import android.view.View
+import android.widget.ImageView
+import android.widget.LinearLayout
+import android.widget.TextView
+import androidx.fragment.app.Fragment
+import androidx.fragment.app.activityViewModels
+import androidx.lifecycle.lifecycleScope
+import com.google.android.material.progressindicator.LinearProgressIndicator
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.view.EcoLensViewModel
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.launch
+
+class StatsFragment : Fragment(R.layout.fragment_stats_modern) {
+
+    private val viewModel: EcoLensViewModel by activityViewModels()
+
+    private lateinit var containerFamily: LinearLayout
+    private lateinit var containerKingdom: LinearLayout
+    private lateinit var containerMonthly: LinearLayout
+    private lateinit var tvTotalSightings: TextView
+
+    override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
+        super.onViewCreated(view, savedInstanceState)
+
+        containerFamily = view.findViewById(R.id.containerFamily)
+        containerKingdom = view.findViewById(R.id.containerKingdom)
+        containerMonthly = view.findViewById(R.id.containerMonthly)
+        tvTotalSightings = view.findViewById(R.id.tvTotalSightings)
+
+        view.findViewById<ImageView>(R.id.btnBack).setOnClickListener {
+            parentFragmentManager.popBackStack()
+        }
+
+        viewModel.verifyStats()
+        observeStats()
+    }
+
+    private fun observeStats() {
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewModel.totalSightings.collectLatest { total ->
+                tvTotalSightings.text = total.toString()
+            }
+        }
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewModel.monthlyStats.collectLatest { stats ->
+                bindRows(containerMonthly, stats.map { formatMonth(it.month) to it.count })
+            }
+        }
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewModel.kingdomStats.collectLatest { stats ->
+                bindRows(containerKingdom, stats.map { labelOrUnknown(it.kingdom) to it.count })
+            }
+        }
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewModel.topFamilyStats.collectLatest { stats ->
+                bindRows(containerFamily, stats.map { labelOrUnknown(it.family) to it.count })
+            }
+        }
+    }
+
+    private fun bindRows(container: LinearLayout, rows: List<Pair<String, Int>>) {
+        container.removeAllViews()
+        val inflater = LayoutInflater.from(container.context)
+
+        if (rows.isEmpty()) {
+            val emptyView = inflater.inflate(R.layout.item_stat_row, container, false)
+            emptyView.findViewById<TextView>(R.id.tvStatLabel).text = getString(R.string.stats_empty)
+            emptyView.findViewById<LinearProgressIndicator>(R.id.progressStat).visibility = View.GONE
+            container.addView(emptyView)
+            return
+        }
+
+        val maxCount = rows.maxOf { it.second }.coerceAtLeast(1)
+        rows.forEach { (label, count) ->
+            val row = inflater.inflate(R.layout.item_stat_row, container, false)
+            row.findViewById<TextView>(R.id.tvStatLabel).text = label
+            row.findViewById<TextView>(R.id.tvStatCount).text = count.toString()
+            row.findViewById<LinearProgressIndicator>(R.id.progressStat).progress = count * 100 / maxCount
+            container.addView(row)
+        }
+    }
+
+    // yyyy-MM -> MM/yyyy
+    private fun formatMonth(month: String): String {
+        val parts = month.split("-")
+        return if (parts.size == 2) "${parts[1]}/${parts[0]}" else month
+    }
+
+    private fun labelOrUnknown(label: String): String {
+        return label.ifBlank { getString(R.string.stats_unknown) }
+    }
+}
@@ -8,20 +8,30 @@ import android.widget.FrameLayout
 import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
+import com.google.android.material.materialswitch.MaterialSwitch
+import com.nguyendevs.ecolens.BuildConfig
 import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.database.HistoryStorageSettings
 import com.nguyendevs.ecolens.fragments.AboutFragment
 import com.nguyendevs.ecolens.fragments.LanguageSelectionFragment
+import com.nguyendevs.ecolens.fragments.NetworkMetricsFragment
+import com.nguyendevs.ecolens.fragments.StatsFragment
 import com.nguyendevs.ecolens.managers.LanguageManager
 
 class SettingsHandler(
     private val activity: Activity,
     private val languageManager: LanguageManager,
-    private val settingsView: View
+    private val settingsView: View,
+    private val onCompressionChanged: (Boolean) -> Unit
 ) {
 
     private lateinit var aboutOption: View
+    private lateinit var statsOption: View
+    private lateinit var networkMetricsOption: View
     private lateinit var languageOption: View
     private lateinit var tvCurrentLanguage: TextView
+    private lateinit var compressHistoryOption: View
+    private lateinit var switchCompressHistory: MaterialSwitch
 
     private lateinit var btnFeedback: View
     private lateinit var btnFacebook: View
@@ -33,6 +43,10 @@ class SettingsHandler(
             languageOption = settingsView.findViewById(R.id.languageOption)
             tvCurrentLanguage = settingsView.findViewById(R.id.tvCurrentLanguage)
             aboutOption = settingsView.findViewById(R.id.aboutOption)
+            statsOption = settingsView.findViewById(R.id.statsOption)
+            networkMetricsOption = settingsView.findViewById(R.id.networkMetricsOption)
+            compressHistoryOption = settingsView.findViewById(R.id.compressHistoryOption)
+            switchCompressHistory = settingsView.findViewById(R.id.switchCompressHistory)
 
             btnFeedback = settingsView.findViewById(R.id.btnFeedback)
             btnFacebook = settingsView.findViewById(R.id.btnFacebook)
@@ -47,6 +61,24 @@ class SettingsHandler(
             aboutOption.setOnClickListener {
                 openAboutScreen()
             }
+            statsOption.setOnClickListener {
+                openStatsScreen()
+            }
+
+            // Màn hình đo thời gian mạng chỉ dành cho bản debug
+            if (BuildConfig.DEBUG) {
+                networkMetricsOption.visibility = View.VISIBLE
+                settingsView.findViewById<View>(R.id.networkMetricsDivider).visibility = View.VISIBLE
+                networkMetricsOption.setOnClickListener {
+                    openNetworkMetricsScreen()
+                }
+            }
+
+            switchCompressHistory.isChecked = HistoryStorageSettings(activity).isCompressionEnabled()
+            compressHistoryOption.setOnClickListener {
+                switchCompressHistory.isChecked = !switchCompressHistory.isChecked
+                onCompressionChanged(switchCompressHistory.isChecked)
+            }
 
             btnFeedback.setOnClickListener { sendEmail() }
             btnFacebook.setOnClickListener { openUrl("https://www.facebook.com/NguyenDevs") }
@@ -109,6 +141,44 @@ class SettingsHandler(
             .commit()
     }
 
+    private fun openStatsScreen() {
+        val fragmentContainer = (activity as AppCompatActivity)
+            .findViewById<FrameLayout>(R.id.fragmentContainer)
+
+        fragmentContainer.visibility = View.VISIBLE
+
+        val fragment = StatsFragment()
+        (activity as AppCompatActivity).supportFragmentManager.beginTransaction()
+            .setCustomAnimations(
+                R.anim.fade_in_2,
+                R.anim.fade_out_2,
+                R.anim.fade_in_2,
+                R.anim.fade_out_2
+            )
+            .replace(R.id.fragmentContainer, fragment)
+            .addToBackStack("stats_screen")
+            .commit()
+    }
+
+    private fun openNetworkMetricsScreen() {
+        val fragmentContainer = (activity as AppCompatActivity)
+            .findViewById<FrameLayout>(R.id.fragmentContainer)
+
+        fragmentContainer.visibility = View.VISIBLE
+
+        val fragment = NetworkMetricsFragment()
+        (activity as AppCompatActivity).supportFragmentManager.beginTransaction()
+            .setCustomAnimations(
+                R.anim.fade_in_2,
+                R.anim.fade_out_2,
+                R.anim.fade_in_2,
+                R.anim.fade_out_2
+            )
+            .replace(R.id.fragmentContainer, fragment)
+            .addToBackStack("network_metrics_screen")
+            .commit()
+    }
+
     private fun openUrl(url: String) {
         try {
             val intent = Intent(Intent.ACTION_VIEW, Uri.parse(url))
@@ -12,8 +12,6 @@ import android.graphics.drawable.ShapeDrawable
 import android.graphics.drawable.shapes.RectShape
 import android.graphics.drawable.shapes.Shape
 import android.net.Uri
-import android.os.Build
-import android.text.Html
 import android.view.View
 import android.view.animation.AccelerateDecelerateInterpolator
 import android.view.animation.DecelerateInterpolator
@@ -25,6 +23,9 @@ import com.google.android.material.card.MaterialCardView
 import com.nguyendevs.ecolens.R
 import com.nguyendevs.ecolens.model.LoadingStage
 import com.nguyendevs.ecolens.model.SpeciesInfo
+import com.nguyendevs.ecolens.utils.RichContent
+import com.nguyendevs.ecolens.utils.ShareTextGenerator
+import com.nguyendevs.ecolens.utils.TextRenderService
 import kotlinx.coroutines.*
 
 class SpeciesInfoHandler(
@@ -37,24 +38,29 @@ class SpeciesInfoHandler(
     private val viewCache = mutableMapOf<Int, View>()
     private val displayedRows = mutableSetOf<Int>()
     private val renderedSections = mutableSetOf<Int>()
+    private val renderedTexts = mutableMapOf<Int, String>()
     private var isInitialLoad = true
     private var allSectionsRendered = false
     private var confidenceRotationAnimator: ObjectAnimator? = null
     private var taxonomyShimmerAnimator: ValueAnimator? = null
     private var lastDisplayedCommonName: String? = null
     private var lastConfidenceValue: String? = null
+    private var isScientificNameShown = false
 
     init {
         cacheViews()
     }
 
     private fun renderHtml(textView: TextView, htmlContent: String) {
-        textView.text = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Html.fromHtml(htmlContent, Html.FROM_HTML_MODE_COMPACT)
-        } else {
-            @Suppress("DEPRECATION")
-            Html.fromHtml(htmlContent)
-        }
+        TextRenderService.setHtml(textView, htmlContent, handlerScope)
+    }
+
+    // Chỉ render lại khi nội dung khác lần hiển thị trước, trả về true nếu có thay đổi
+    private fun renderIfChanged(textView: TextView, htmlContent: String): Boolean {
+        if (renderedTexts[textView.id] == htmlContent) return false
+        renderedTexts[textView.id] = htmlContent
+        renderHtml(textView, htmlContent)
+        return true
     }
 
     fun displaySpeciesInfo(info: SpeciesInfo, imageUri: Uri?, stage: LoadingStage) {
@@ -200,7 +206,9 @@ class SpeciesInfoHandler(
     private fun clearAllViews() {
         lastDisplayedCommonName = null
         lastConfidenceValue = null
+        isScientificNameShown = false
         displayedRows.clear()
+        renderedTexts.clear()
         renderedSections.clear()
         allSectionsRendered = false
         stopConfidenceAnimation()
@@ -255,13 +263,13 @@ class SpeciesInfoHandler(
         val tvScientificName = viewCache[R.id.tvScientificName] as? TextView
         val btnCopy = viewCache[R.id.btnCopyScientificName]
 
-        tvScientificName?.let {
-            renderHtml(it, info.scientificName)
-            slideAndFadeIn(it, duration = 500, delay = 100)
-        }
-        btnCopy?.let {
-            slideAndFadeIn(it, duration = 500, delay = 150)
-        }
+        tvScientificName?.let { renderIfChanged(it, info.scientificName) }
+
+        // Chỉ trượt vào lần đầu tên xuất hiện; các cập nhật sau trong lúc stream chỉ đổi nội dung
+        if (isScientificNameShown) return
+        isScientificNameShown = true
+        tvScientificName?.let { slideAndFadeIn(it, duration = 500, delay = 100) }
+        btnCopy?.let { slideAndFadeIn(it, duration = 500, delay = 150) }
     }
 
     private fun displayCommonName(info: SpeciesInfo) {
@@ -439,9 +447,9 @@ class SpeciesInfoHandler(
                 val hasData = text.isNotEmpty() && text != "..." && text != "N/A"
 
                 if (hasData) {
-                    if (!displayedRows.contains(rowId)) {
-                        renderHtml(textView, text)
+                    renderIfChanged(textView, text)
 
+                    if (!displayedRows.contains(rowId)) {
                         rowView.visibility = View.VISIBLE
                         rowView.alpha = 0f
                         rowView.translationY = -10f
@@ -555,9 +563,8 @@ class SpeciesInfoHandler(
 
         if (text.isNotEmpty()) {
             val trimmedText = text.trim()
-            textView?.let { tv ->
-                renderHtml(tv, trimmedText)
-            }
+            val isChanged = textView?.let { tv -> renderIfChanged(tv, trimmedText) } ?: true
+            if (!isChanged && section?.visibility == View.VISIBLE) return
 
             section?.let { sectionView ->
                 val wasAlreadyRendered = renderedSections.contains(sectionId)
@@ -594,9 +601,8 @@ class SpeciesInfoHandler(
         val textView = viewCache[R.id.tvConservationStatus] as? TextView
 
         if (status.isNotEmpty()) {
-            textView?.let { tv ->
-                renderHtml(tv, status)
-            }
+            val isChanged = textView?.let { tv -> renderIfChanged(tv, status) } ?: true
+            if (!isChanged && section?.visibility == View.VISIBLE) return
 
             section?.let { sectionView ->
                 val wasAlreadyRendered = renderedSections.contains(R.id.sectionConservation)
@@ -718,7 +724,7 @@ class SpeciesInfoHandler(
     private fun setupCopyButton(info: SpeciesInfo) {
         viewCache[R.id.btnCopyScientificName]?.setOnClickListener {
             val clipboard = context.getSystemService(Context.CLIPBOARD_SERVICE) as ClipboardManager
-            val cleanName = stripHtml(info.scientificName)
+            val cleanName = RichContent.plainTextOf(info.scientificName)
             clipboard.setPrimaryClip(ClipData.newPlainText("Scientific Name", cleanName))
             onCopySuccess(cleanName)
         }
@@ -746,42 +752,7 @@ class SpeciesInfoHandler(
     }
 
     private fun shareSpeciesInfo(info: SpeciesInfo, imageUri: Uri?) {
-        val confidencePercent =
-            String.format("%.2f", if (info.confidence > 1) info.confidence else info.confidence * 100)
-        val shareText = buildString {
-            append(context.getString(R.string.share_title))
-            append("\n━━━━━━━━━━━━━━━━━━━━\n\n")
-            append("📌 ${stripHtml(info.commonName)}\n🔬 ${stripHtml(info.scientificName)}\n")
-            append("✅ ${context.getString(R.string.label_confidence_template, confidencePercent)}%\n\n")
-            append("━━━━━━━━━━━━━━━━━━━━\n${context.getString(R.string.share_taxonomy_title)}\n━━━━━━━━━━━━━━━━━━━━\n\n")
-            if (info.kingdom.isNotEmpty()) append("• ${context.getString(R.string.label_kingdom)} ${stripHtml(info.kingdom)}\n")
-            if (info.phylum.isNotEmpty()) append("• ${context.getString(R.string.label_phylum)} ${stripHtml(info.phylum)}\n")
-            if (info.className.isNotEmpty()) append("• ${context.getString(R.string.label_class)} ${stripHtml(info.className)}\n")
-            if (info.taxorder.isNotEmpty()) append("• ${context.getString(R.string.label_order)} ${stripHtml(info.taxorder)}\n")
-            if (info.family.isNotEmpty()) append("• ${context.getString(R.string.label_family)} ${stripHtml(info.family)}\n")
-            if (info.genus.isNotEmpty()) append("• ${context.getString(R.string.label_genus)} ${stripHtml(info.genus)}\n")
-            if (info.species.isNotEmpty()) append("• ${context.getString(R.string.label_species)} ${stripHtml(info.species)}\n")
-
-            val contentList = listOf(
-                info.description to R.string.share_desc_title,
-                info.characteristics to R.string.share_char_title,
-                info.distribution to R.string.share_dist_title,
-                info.habitat to R.string.share_hab_title,
-                info.conservationStatus to R.string.share_cons_title
-            )
-            contentList.forEach { (content, title) ->
-                if (content.isNotEmpty()) {
-                    append(
-                        "\n━━━━━━━━━━━━━━━━━━━━\n${context.getString(title)}\n━━━━━━━━━━━━━━━━━━━━\n\n${
-                            stripHtml(
-                                content
-                            )
-                        }\n"
-                    )
-                }
-            }
-            append("\n━━━━━━━━━━━━━━━━━━━━\n${context.getString(R.string.share_footer)}")
-        }
+        val shareText = ShareTextGenerator.generateShareText(context, info)
 
         try {
             val intent = Intent(Intent.ACTION_SEND).apply {
@@ -794,7 +765,7 @@ class SpeciesInfoHandler(
                     type = "text/plain"
                 }
                 putExtra(Intent.EXTRA_TEXT, shareText)
-                putExtra(Intent.EXTRA_SUBJECT, context.getString(R.string.share_subject, stripHtml(info.commonName)))
+                putExtra(Intent.EXTRA_SUBJECT, ShareTextGenerator.generateShareSubject(context, info))
             }
             context.startActivity(Intent.createChooser(intent, context.getString(R.string.share_chooser_title)))
         } catch (e: Exception) {
@@ -802,17 +773,6 @@ class SpeciesInfoHandler(
         }
     }
 
-    private fun stripHtml(html: String): String {
-        var text = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Html.fromHtml(html, Html.FROM_HTML_MODE_COMPACT).toString()
-        } else {
-            @Suppress("DEPRECATION") Html.fromHtml(html).toString()
-        }
-        text = text.replace(Regex("\\*\\*(.*?)\\*\\*"), "$1")
-        text = text.replace(Regex("\\*(.*?)\\*"), "$1")
-        return text.trim()
-    }
-
     private fun Float.dpToPx(): Float = this * context.resources.displayMetrics.density
 
     data class Quadruple<out A, out B, out C, out D>(
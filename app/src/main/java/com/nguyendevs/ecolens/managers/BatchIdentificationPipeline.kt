@@ -0,0 +1,270 @@
+package com.nguyendevs.ecolens.managers
+
+import android.app.Application
+import android.net.Uri
+import android.util.Log
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.model.BatchItem
+import com.nguyendevs.ecolens.model.BatchStage
+import com.nguyendevs.ecolens.model.SpeciesInfo
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.channels.SendChannel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import java.io.File
+import java.io.IOException
+
+/**
+ * Nhận diện nhiều ảnh từ thư viện theo dây chuyền ba bước nối bằng channel có giới hạn:
+ * thu nhỏ/mã hóa ảnh (CPU), gửi score_image (I/O) và stream phân loại + chi tiết rồi ghi lịch sử.
+ * Mỗi bước có số worker riêng nên ảnh sau được giải mã trong lúc ảnh trước đang tải lên,
+ * còn channel đầy sẽ chặn bước trước để không giữ quá nhiều ảnh đã giải mã trong bộ nhớ.
+ * Không dùng các trường current* của [SpeciesIdentificationManager] nên không ảnh hưởng màn hình chính.
+ */
+class BatchIdentificationPipeline(
+    private val application: Application,
+    private val speciesManager: SpeciesIdentificationManager,
+    private val offlineQueue: OfflineIdentificationQueue,
+    private val journal: IdentificationJournal
+) {
+
+    companion object {
+        private const val TAG = "BatchPipeline"
+
+        const val MAX_BATCH_SIZE = 20
+
+        private const val DECODE_WORKERS = 2
+        private const val UPLOAD_WORKERS = 3
+        private const val DESCRIBE_WORKERS = 2
+        private const val STAGE_CAPACITY = 2
+
+        // Số lần stream lại chi tiết dở dang ngay trong bước tra cứu khi vẫn có mạng
+        private const val DESCRIBE_RETRIES = 2
+        private const val DESCRIBE_RETRY_DELAY_MS = 2_000L
+    }
+
+    private class Prepared(val index: Int, val file: File, val journal: IdentificationJournal.Handle?)
+
+    private class Scored(
+        val index: Int,
+        val file: File,
+        val journal: IdentificationJournal.Handle?,
+        val scored: SpeciesIdentificationManager.ScoredImage
+    )
+
+    private val _items = MutableStateFlow<List<BatchItem>>(emptyList())
+    val items: StateFlow<List<BatchItem>> = _items.asStateFlow()
+
+    private var runJob: Job? = null
+
+    // Tính cả lúc đang hủy, để lượt mới không bị khối finally của lượt cũ ghi đè trạng thái
+    val isRunning: Boolean
+        get() = runJob?.isCompleted == false
+
+    // Trả về false nếu một lượt khác vẫn đang chạy
+    fun start(scope: CoroutineScope, uris: List<Uri>, languageCode: String): Boolean {
+        if (isRunning || uris.isEmpty()) return false
+        val selected = uris.take(MAX_BATCH_SIZE)
+        _items.value = selected.mapIndexed { index, uri -> BatchItem(index, uri) }
+
+        runJob = scope.launch {
+            try {
+                runPipeline(selected, languageCode)
+            } finally {
+                // Ảnh chưa xong khi bị hủy được đánh dấu lỗi để danh sách không treo ở trạng thái đang chạy
+                _items.update { list ->
+                    list.map { if (it.stage.isFinished) it else it.copy(stage = BatchStage.FAILED) }
+                }
+            }
+        }
+        return true
+    }
+
+    fun cancel() {
+        runJob?.cancel()
+    }
+
+    private suspend fun runPipeline(uris: List<Uri>, languageCode: String) = coroutineScope {
+        val sources = Channel<Int>(Channel.UNLIMITED)
+        uris.indices.forEach { sources.trySend(it) }
+        sources.close()
+
+        val prepared = Channel<Prepared>(STAGE_CAPACITY)
+        val scored = Channel<Scored>(STAGE_CAPACITY)
+
+        val decoders = List(DECODE_WORKERS) {
+            launch(Dispatchers.Default) { decodeStage(uris, languageCode, sources, prepared) }
+        }
+        val uploaders = List(UPLOAD_WORKERS) {
+            launch { uploadStage(languageCode, prepared, scored) }
+        }
+        repeat(DESCRIBE_WORKERS) {
+            launch { describeStage(languageCode, scored) }
+        }
+
+        // Đóng channel khi mọi worker của bước trước đã xong để bước sau thoát vòng lặp
+        launch {
+            decoders.joinAll()
+            prepared.close()
+            uploaders.joinAll()
+            scored.close()
+        }
+    }
+
+    private suspend fun decodeStage(
+        uris: List<Uri>,
+        languageCode: String,
+        input: ReceiveChannel<Int>,
+        output: SendChannel<Prepared>
+    ) {
+        for (index in input) {
+            setStage(index, BatchStage.DECODING)
+            val file = runStep(index) { speciesManager.prepareImage(uris[index]) } ?: continue
+            // Ảnh đã từng chạy dở (lượt trước bị hủy) bỏ qua các bước mạng đã có trong nhật ký
+            val handle = journal.hashOf(uris[index])?.let { journal.open(it, languageCode, null) }
+            setStage(index, BatchStage.UPLOADING)
+            output.send(Prepared(index, file, handle))
+        }
+    }
+
+    private suspend fun uploadStage(languageCode: String, input: ReceiveChannel<Prepared>, output: SendChannel<Scored>) {
+        for (item in input) {
+            val result = try {
+                speciesManager.scoreImage(item.file, languageCode, journalHandle = item.journal)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: IOException) {
+                if (!offlineQueue.isOnline()) {
+                    enqueueOffline(item.index, item.file, item.journal, languageCode)
+                } else {
+                    fail(item.index, e, item.file)
+                }
+                continue
+            } catch (e: Exception) {
+                fail(item.index, e, item.file)
+                continue
+            }
+
+            if (result == null) {
+                updateItem(item.index) { it.copy(stage = BatchStage.NO_RESULT) }
+                item.journal?.let { journal.complete(it) }
+                item.file.delete()
+                continue
+            }
+
+            updateItem(item.index) {
+                it.copy(stage = BatchStage.DESCRIBING, scientificName = result.scientificName)
+            }
+            output.send(Scored(item.index, item.file, item.journal, result))
+        }
+    }
+
+    private suspend fun describeStage(languageCode: String, input: ReceiveChannel<Scored>) {
+        for (item in input) {
+            val historyId = try {
+                val info = describeWithRetry(item, languageCode)
+                speciesManager.persistResult(info, null, item.file).also {
+                    item.journal?.let { handle -> journal.complete(handle) }
+                }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: IncompleteDetailsException) {
+                if (!offlineQueue.isOnline()) {
+                    // Mất mạng: chuyển sang hàng đợi, hàng đợi tự chạy khi có mạng và stream tiếp từ nhật ký
+                    enqueueOffline(item.index, item.file, item.journal, languageCode)
+                    continue
+                }
+                // Vẫn có mạng mà hết lượt thử: báo lỗi, phần đã nhận vẫn nằm trong nhật ký cho lần chạy lại
+                fail(item.index, e, item.file)
+                null
+            } catch (e: Exception) {
+                fail(item.index, e, item.file)
+                null
+            }
+
+            item.file.delete()
+            when {
+                historyId != null ->
+                    updateItem(item.index) { it.copy(stage = BatchStage.DONE, historyId = historyId) }
+                _items.value.getOrNull(item.index)?.stage != BatchStage.FAILED ->
+                    updateItem(item.index) { it.copy(stage = BatchStage.NO_RESULT) }
+            }
+        }
+    }
+
+    // Chi tiết dở dang khi vẫn có mạng được stream tiếp ngay tại đây (từ nhật ký), ảnh hiện trạng thái RETRYING
+    private suspend fun describeWithRetry(item: Scored, languageCode: String): SpeciesInfo {
+        var retries = 0
+        while (true) {
+            try {
+                return speciesManager.describeSpecies(item.scored, languageCode, journalHandle = item.journal) { info ->
+                    if (info.commonName.isNotEmpty() && info.commonName != "...") {
+                        updateItem(item.index) { it.copy(commonName = info.commonName) }
+                    }
+                }
+            } catch (e: IncompleteDetailsException) {
+                if (retries >= DESCRIBE_RETRIES || !offlineQueue.isOnline()) throw e
+                retries++
+                Log.w(TAG, "Item ${item.index} details incomplete, retry $retries")
+                setStage(item.index, BatchStage.RETRYING)
+                delay(DESCRIBE_RETRY_DELAY_MS * retries)
+            }
+        }
+    }
+
+    // Chạy một bước cho một ảnh; lỗi chỉ đánh dấu ảnh đó thất bại, các ảnh khác tiếp tục
+    private suspend fun <T> runStep(index: Int, file: File? = null, block: suspend () -> T): T? {
+        return try {
+            block()
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            fail(index, e, file)
+            null
+        }
+    }
+
+    private suspend fun enqueueOffline(
+        index: Int,
+        file: File,
+        journalHandle: IdentificationJournal.Handle?,
+        languageCode: String
+    ) {
+        try {
+            offlineQueue.enqueue(file, languageCode, null, journalHandle?.entry?.imageHash)
+            updateItem(index) { it.copy(stage = BatchStage.QUEUED_OFFLINE) }
+        } catch (e: IOException) {
+            fail(index, e, null)
+        }
+        file.delete()
+    }
+
+    private fun fail(index: Int, e: Exception, file: File?) {
+        Log.w(TAG, "Item $index failed: ${e.message}")
+        val message = when (e) {
+            is GeoBlockedException -> application.getString(R.string.error_geo_block)
+            else -> application.getString(R.string.error_general, e.message)
+        }
+        updateItem(index) { it.copy(stage = BatchStage.FAILED, error = message) }
+        file?.delete()
+    }
+
+    private fun setStage(index: Int, stage: BatchStage) {
+        updateItem(index) { it.copy(stage = stage) }
+    }
+
+    private fun updateItem(index: Int, transform: (BatchItem) -> BatchItem) {
+        _items.update { list -> list.map { if (it.index == index) transform(it) else it } }
+    }
+}
@@ -0,0 +1,161 @@
+package com.nguyendevs.ecolens.managers
+
+import com.nguyendevs.ecolens.database.ChatDao
+import com.nguyendevs.ecolens.model.ChatMessage
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Cửa sổ tin nhắn của một phiên chat, phân trang theo khóa (timestamp, id).
+ * Chỉ giữ tối đa [MAX_PAGES] trang; trang cuối được theo dõi trực tiếp khi cửa sổ chạm đáy.
+ * Khi trang cuối đầy thêm một trang nữa, phần cũ được tách thành trang cố định và mốc theo dõi
+ * dịch lên, nên truy vấn trực tiếp không bao giờ vượt quá [TAIL_LIMIT] tin nhắn.
+ */
+class ChatMessagePager(
+    private val chatDao: ChatDao,
+    private val sessionId: Long,
+    private val scope: CoroutineScope
+) {
+    companion object {
+        const val PAGE_SIZE = 30
+        const val MAX_PAGES = 4
+
+        // Trang cuối được lớn tới hai trang trước khi dịch mốc, để không phải đăng ký lại sau mỗi tin nhắn
+        private const val TAIL_LIMIT = PAGE_SIZE * 2
+    }
+
+    private val mutex = Mutex()
+    private val pages = ArrayDeque<List<ChatMessage>>()
+    private var tailJob: Job? = null
+
+    private val _messages = MutableStateFlow<List<ChatMessage>>(emptyList())
+    val messages: StateFlow<List<ChatMessage>> = _messages.asStateFlow()
+
+    var hasOlder = false
+        private set
+    var hasNewer = false
+        private set
+
+    val isAttachedToTail: Boolean
+        get() = tailJob?.isActive == true
+
+    suspend fun loadLatest() = mutex.withLock {
+        detachTail()
+        pages.clear()
+
+        val latest = chatDao.getLatestMessages(sessionId, PAGE_SIZE).asReversed()
+        hasOlder = latest.size == PAGE_SIZE
+        hasNewer = false
+        pages.addLast(latest)
+        attachTail()
+        publish()
+    }
+
+    // Mở cửa sổ quanh một tin nhắn (kết quả tìm kiếm), tin nhắn nằm giữa trang
+    suspend fun loadAround(messageId: Long): Boolean = mutex.withLock {
+        val target = chatDao.getMessageById(messageId)
+        if (target == null || target.sessionId != sessionId) return@withLock false
+
+        detachTail()
+        pages.clear()
+
+        val half = PAGE_SIZE / 2
+        val before = chatDao.getMessagesBefore(sessionId, target.timestamp, target.id, half).asReversed()
+        val after = chatDao.getMessagesAfter(sessionId, target.timestamp, target.id, half)
+        hasOlder = before.size == half
+        hasNewer = after.size == half
+        pages.addLast(before + target + after)
+        if (!hasNewer) attachTail()
+        publish()
+        true
+    }
+
+    suspend fun loadOlder(): Boolean = mutex.withLock {
+        val first = pages.firstOrNull()?.firstOrNull()
+        if (!hasOlder || first == null) return@withLock false
+
+        val older = chatDao.getMessagesBefore(sessionId, first.timestamp, first.id, PAGE_SIZE).asReversed()
+        hasOlder = older.size == PAGE_SIZE
+        if (older.isEmpty()) return@withLock false
+
+        pages.addFirst(older)
+        if (pages.size > MAX_PAGES) {
+            detachTail()
+            pages.removeLast()
+            hasNewer = true
+        }
+        publish()
+        true
+    }
+
+    suspend fun loadNewer(): Boolean = mutex.withLock {
+        val last = pages.lastOrNull()?.lastOrNull()
+        if (!hasNewer || last == null) return@withLock false
+
+        val newer = chatDao.getMessagesAfter(sessionId, last.timestamp, last.id, PAGE_SIZE)
+        if (newer.isNotEmpty()) pages.addLast(newer)
+        if (newer.size < PAGE_SIZE) {
+            hasNewer = false
+            attachTail()
+        }
+        if (pages.size > MAX_PAGES) {
+            pages.removeFirst()
+            hasOlder = true
+        }
+        publish()
+        newer.isNotEmpty()
+    }
+
+    fun close() {
+        detachTail()
+    }
+
+    // Theo dõi trang cuối từ tin nhắn đầu tiên của nó; các trang trước giữ nguyên
+    private fun attachTail() {
+        val anchor = pages.lastOrNull()?.firstOrNull()
+        val fromTimestamp = anchor?.timestamp ?: Long.MIN_VALUE
+        val fromId = anchor?.id ?: Long.MIN_VALUE
+
+        tailJob = scope.launch {
+            chatDao.observeMessagesFrom(sessionId, fromTimestamp, fromId, TAIL_LIMIT).collect { tail ->
+                mutex.withLock {
+                    // Lượt theo dõi cũ đã bị thay trong lúc chờ khóa
+                    if (!isActive) return@withLock
+                    if (pages.isEmpty()) pages.addLast(tail) else pages[pages.lastIndex] = tail
+                    if (tail.size >= TAIL_LIMIT) rollTail()
+                    publish()
+                }
+            }
+        }
+    }
+
+    // Tách PAGE_SIZE tin cũ nhất của trang cuối thành trang cố định, theo dõi lại từ phần còn lại
+    // và bỏ trang cũ nhất khi vượt MAX_PAGES
+    private fun rollTail() {
+        val tail = pages.removeLast()
+        pages.addLast(tail.take(PAGE_SIZE))
+        pages.addLast(tail.drop(PAGE_SIZE))
+        while (pages.size > MAX_PAGES) {
+            pages.removeFirst()
+            hasOlder = true
+        }
+        detachTail()
+        attachTail()
+    }
+
+    private fun detachTail() {
+        tailJob?.cancel()
+        tailJob = null
+    }
+
+    private fun publish() {
+        _messages.value = pages.flatten()
+    }
+}
@@ -1,15 +1,24 @@
 package com.nguyendevs.ecolens.managers
 
+import android.text.TextUtils
 import android.util.Log
 import com.google.gson.Gson
 import com.nguyendevs.ecolens.api.*
 import com.nguyendevs.ecolens.database.ChatDao
 import com.nguyendevs.ecolens.model.ChatMessage
+import com.nguyendevs.ecolens.model.ChatMessageFts
+import com.nguyendevs.ecolens.model.ChatSearchCandidate
+import com.nguyendevs.ecolens.model.ChatSearchResult
 import com.nguyendevs.ecolens.model.ChatSession
 import com.nguyendevs.ecolens.network.RetrofitClient
 import com.nguyendevs.ecolens.utils.MarkdownProcessor
+import com.nguyendevs.ecolens.utils.RichContent
+import com.nguyendevs.ecolens.utils.RichText
+import com.nguyendevs.ecolens.utils.StreamingMarkdownProcessor
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.*
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
 
@@ -17,13 +26,20 @@ class ChatSessionManager(
     private val chatDao: ChatDao,
     private val scope: CoroutineScope
 ) {
+    companion object {
+        private const val SEARCH_RESULT_LIMIT = 50
+        private const val SEARCH_INDEX_BATCH_SIZE = 200
+    }
+
     private val gson = Gson()
     private val markdownProcessor = MarkdownProcessor()
-    private val apiService = RetrofitClient.iNaturalistApi
+    private val resumableStream = ResumableGeminiStream(RetrofitClient.streamingApi, gson)
     var currentSessionId: Long? = null
     private var messageCollectionJob: Job? = null
+    private var messagePager: ChatMessagePager? = null
     private val isGenerating = AtomicBoolean(false)
     private val streamingMessageId = AtomicLong(-1L)
+    private val isSearchIndexReady = AtomicBoolean(false)
 
     private val _chatMessages = MutableStateFlow<List<ChatMessage>>(emptyList())
     val chatMessages: StateFlow<List<ChatMessage>> = _chatMessages.asStateFlow()
@@ -35,7 +51,7 @@ class ChatSessionManager(
 
     suspend fun initNewChatSession(welcomeMessage: String, defaultTitle: String) {
         currentSessionId = null
-        messageCollectionJob?.cancel()
+        stopMessageCollection()
         _chatMessages.value = emptyList()
 
         withContext(Dispatchers.IO) {
@@ -67,10 +83,11 @@ class ChatSessionManager(
                 val welcomeMsg = ChatMessage(
                     sessionId = newId,
                     content = welcomeMessage,
+                    rawContent = welcomeMessage,
                     isUser = false,
                     timestamp = System.currentTimeMillis()
                 )
-                chatDao.insertMessage(welcomeMsg)
+                chatDao.insertMessageIndexed(welcomeMsg, welcomeMessage)
 
                 withContext(Dispatchers.Main) {
                     startMessageCollection(newId)
@@ -79,9 +96,9 @@ class ChatSessionManager(
         }
     }
 
-    fun loadChatSession(sessionId: Long) {
+    fun loadChatSession(sessionId: Long, targetMessageId: Long? = null) {
         currentSessionId = sessionId
-        startMessageCollection(sessionId)
+        startMessageCollection(sessionId, targetMessageId)
     }
 
     suspend fun sendChatMessage(userMessage: String, defaultTitle: String) {
@@ -89,14 +106,16 @@ class ChatSessionManager(
         val sessionId = currentSessionId ?: return
         if (isGenerating.getAndSet(true)) return
 
+        jumpToLatest()
         withContext(Dispatchers.IO) {
             val userChatMsg = ChatMessage(
                 sessionId = sessionId,
                 content = userMessage,
+                rawContent = userMessage,
                 isUser = true,
                 timestamp = System.currentTimeMillis()
             )
-            chatDao.insertMessage(userChatMsg)
+            chatDao.insertMessageIndexed(userChatMsg, userMessage)
 
             val currentSession = chatDao.getSessionById(sessionId)
             val newTitle = if (currentSession?.title == defaultTitle) {
@@ -132,14 +151,18 @@ class ChatSessionManager(
     }
 
     suspend fun deleteChatSession(sessionId: Long) {
+        deleteChatSessions(listOf(sessionId))
+    }
+
+    suspend fun deleteChatSessions(sessionIds: List<Long>) {
+        if (sessionIds.isEmpty()) return
         withContext(Dispatchers.IO) {
             try {
-                chatDao.deleteMessagesBySession(sessionId)
-                chatDao.deleteSession(sessionId)
-                if (currentSessionId == sessionId) {
+                chatDao.deleteSessions(sessionIds)
+                if (currentSessionId in sessionIds) {
                     withContext(Dispatchers.Main) {
                         currentSessionId = null
-                        messageCollectionJob?.cancel()
+                        stopMessageCollection()
                         _chatMessages.value = emptyList()
                     }
                 }
@@ -151,19 +174,120 @@ class ChatSessionManager(
 
     fun startNewChatSession() {
         currentSessionId = null
-        messageCollectionJob?.cancel()
+        stopMessageCollection()
         _chatMessages.value = emptyList()
     }
 
-    private fun startMessageCollection(sessionId: Long) {
-        messageCollectionJob?.cancel()
+    suspend fun loadOlderMessages(): Boolean = messagePager?.loadOlder() ?: false
+
+    suspend fun loadNewerMessages(): Boolean = messagePager?.loadNewer() ?: false
+
+    fun hasNewerMessages(): Boolean = messagePager?.hasNewer == true
+
+    // Đưa cửa sổ về trang cuối nếu người dùng đang xem các trang cũ
+    suspend fun jumpToLatest() {
+        val pager = messagePager ?: return
+        if (!pager.isAttachedToTail) pager.loadLatest()
+    }
+
+    private fun startMessageCollection(sessionId: Long, targetMessageId: Long? = null) {
+        stopMessageCollection()
+        val pager = ChatMessagePager(chatDao, sessionId, scope)
+        messagePager = pager
         messageCollectionJob = scope.launch {
-            chatDao.getMessagesBySession(sessionId).collect { messages ->
+            launch {
+                if (targetMessageId == null || !pager.loadAround(targetMessageId)) pager.loadLatest()
+            }
+            pager.messages.collect { messages ->
                 _chatMessages.value = messages
             }
         }
     }
 
+    private fun stopMessageCollection() {
+        messageCollectionJob?.cancel()
+        messagePager?.close()
+        messagePager = null
+    }
+
+    suspend fun searchMessages(query: String): List<ChatSearchResult> = withContext(Dispatchers.IO) {
+        val matchQuery = buildMatchQuery(query) ?: return@withContext emptyList()
+        try {
+            ensureSearchIndex()
+            // Xếp hạng mọi tin khớp rồi mới cắt, để tin liên quan nhất không bị loại trước khi được chấm điểm
+            val topIds = chatDao.searchCandidates(matchQuery)
+                .sortedWith(compareByDescending<ChatSearchCandidate> { rankMatch(it.matchInfo) }.thenByDescending { it.timestamp })
+                .take(SEARCH_RESULT_LIMIT)
+                .map { it.messageId }
+            if (topIds.isEmpty()) return@withContext emptyList()
+
+            val rows = chatDao.searchMessages(matchQuery, topIds).associateBy { it.messageId }
+            topIds.mapNotNull { rows[it] }
+                .map {
+                    ChatSearchResult(
+                        messageId = it.messageId,
+                        sessionId = it.sessionId,
+                        sessionTitle = it.sessionTitle,
+                        snippet = highlightSnippet(it.snippet),
+                        isUser = it.isUser,
+                        timestamp = it.timestamp
+                    )
+                }
+        } catch (e: Exception) {
+            Log.e("ChatSessionManager", "Search failed: ${e.message}", e)
+            emptyList()
+        }
+    }
+
+    // Đánh chỉ mục các tin nhắn có từ trước khi bảng FTS tồn tại
+    private suspend fun ensureSearchIndex() {
+        if (isSearchIndexReady.get()) return
+        while (true) {
+            val pending = chatDao.getUnindexedMessages(SEARCH_INDEX_BATCH_SIZE)
+            if (pending.isEmpty()) break
+            chatDao.insertMessageFts(pending.map {
+                ChatMessageFts(it.id, it.sessionId, markdownProcessor.toPlainText(it.content))
+            })
+        }
+        isSearchIndexReady.set(true)
+    }
+
+    // Escape nội dung tin nhắn trước, rồi mới đổi các dấu khớp thành thẻ <b>
+    private fun highlightSnippet(snippet: String): String {
+        return TextUtils.htmlEncode(snippet)
+            .replace(ChatDao.SNIPPET_MATCH_START, "<b>")
+            .replace(ChatDao.SNIPPET_MATCH_END, "</b>")
+    }
+
+    // Mỗi từ khóa được so khớp theo tiền tố, các từ nối với nhau bằng AND
+    private fun buildMatchQuery(query: String): String? {
+        val terms = query.split(Regex("\\s+"))
+            .map { term -> term.filter { it.isLetterOrDigit() } }
+            .filter { it.isNotEmpty() }
+        if (terms.isEmpty()) return null
+        return terms.joinToString(" ") { "$it*" }
+    }
+
+    // matchinfo 'pcx': số cụm, số cột, rồi 3 giá trị cho mỗi cặp (cụm, cột)
+    private fun rankMatch(matchInfo: ByteArray): Double {
+        val ints = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer()
+        if (ints.limit() < 2) return 0.0
+        val phraseCount = ints.get(0)
+        val columnCount = ints.get(1)
+        var score = 0.0
+        for (phrase in 0 until phraseCount) {
+            for (column in 0 until columnCount) {
+                val base = 2 + 3 * (phrase * columnCount + column)
+                val hitsInRow = ints.get(base)
+                val hitsInAllRows = ints.get(base + 1)
+                if (hitsInRow > 0 && hitsInAllRows > 0) {
+                    score += hitsInRow.toDouble() / hitsInAllRows
+                }
+            }
+        }
+        return score
+    }
+
     private suspend fun executeGeminiStreamingFlow(sessionId: Long) {
         _isStreamingActive.value = true
 
@@ -178,85 +302,75 @@ class ChatSessionManager(
         val messageId = chatDao.insertMessage(tempMessage)
         streamingMessageId.set(messageId)
 
+        val streamProcessor = StreamingMarkdownProcessor(markdownProcessor)
+
         try {
-            val currentHistory = chatDao.getMessagesBySession(sessionId).first()
+            val currentHistory = chatDao.getMessagesBySession(sessionId)
                 .filter { !it.isStreaming }
 
-            val geminiContents = currentHistory.map { msg ->
+            // Gửi markdown gốc thay vì HTML đã render; tin nhắn cũ chưa có markdown thì dùng văn bản thuần
+            val geminiContents = currentHistory.mapNotNull { msg ->
                 val role = if (msg.isUser) "user" else "model"
-                GeminiContent(role = role, parts = listOf(GeminiPart(msg.content)))
+                val text = msg.rawContent ?: if (msg.isUser) msg.content else markdownProcessor.toPlainText(msg.content)
+                if (text.isBlank()) return@mapNotNull null
+                GeminiContent(role = role, parts = listOf(GeminiPart(text)))
             }
 
-            val request = GeminiRequest(contents = geminiContents)
-            val response = apiService.streamGemini(request)
-
-            if (response.isSuccessful) {
-                val responseBody = response.body()
-                if (responseBody != null) {
-                    var accumulatedText = ""
-
-                    responseBody.byteStream().bufferedReader().use { reader ->
-                        var line: String?
-                        while (reader.readLine().also { line = it } != null) {
-                            val currentLine = line ?: continue
-                            if (currentLine.startsWith("data: ")) {
-                                val jsonData = currentLine.substring(6).trim()
-                                if (jsonData == "[DONE]") break
-
-                                try {
-                                    val streamResponse = gson.fromJson(jsonData, GeminiResponse::class.java)
-                                    val chunk = streamResponse.candidates?.firstOrNull()
-                                        ?.content?.parts?.firstOrNull()?.text
-
-                                    if (!chunk.isNullOrEmpty()) {
-                                        accumulatedText += chunk
-                                        val formattedText = markdownProcessor.process(accumulatedText)
-                                        chatDao.updateMessageContent(messageId, formattedText)
-                                        delay(50)
-                                    }
-                                } catch (e: Exception) {
-                                    Log.e("Streaming", "Parse error: ${e.message}")
-                                }
-                            }
-                        }
-                    }
+            // Rớt kết nối hay treo stream được thử lại và nối tiếp từ phần đã nhận
+            resumableStream.stream(geminiContents) { chunk ->
+                val formattedText = streamProcessor.append(chunk)
+                chatDao.updateMessageContent(messageId, formattedText)
+                delay(50)
+            }
 
-                    val finalFormattedText = markdownProcessor.process(accumulatedText)
-                    chatDao.updateMessage(
-                        ChatMessage(
-                            id = messageId,
-                            sessionId = sessionId,
-                            content = finalFormattedText,
-                            isUser = false,
-                            isStreaming = false,
-                            timestamp = System.currentTimeMillis()
-                        )
-                    )
+            val accumulatedText = streamProcessor.text
+            val finalContent = RichContent.from(markdownProcessor.process(accumulatedText))
+            chatDao.updateMessageIndexed(
+                ChatMessage(
+                    id = messageId,
+                    sessionId = sessionId,
+                    content = finalContent.html,
+                    rawContent = accumulatedText,
+                    isUser = false,
+                    isStreaming = false,
+                    timestamp = System.currentTimeMillis()
+                ),
+                finalContent.plainText
+            )
 
-                    val updatedSession = chatDao.getSessionById(sessionId)
-                    updatedSession?.let {
-                        chatDao.updateSession(it.copy(
-                            lastMessage = accumulatedText.take(100),
-                            timestamp = System.currentTimeMillis()
-                        ))
-                    }
-                }
-            } else {
-                throw Exception("API error: ${response.code()}")
+            val updatedSession = chatDao.getSessionById(sessionId)
+            updatedSession?.let {
+                chatDao.updateSession(it.copy(
+                    lastMessage = accumulatedText.take(100),
+                    timestamp = System.currentTimeMillis()
+                ))
             }
 
         } catch (e: Exception) {
             e.printStackTrace()
             val errorMsg = "Lỗi kết nối: ${e.message}"
-            chatDao.updateMessage(
+
+            // Giữ lại phần câu trả lời đã nhận, chỉ nối thêm thông báo lỗi; thông báo đi qua toHtml()
+            // để e.message được escape trước khi lưu vào nội dung HTML
+            val partialText = streamProcessor.text
+            val content = if (partialText.isBlank()) {
+                RichText(listOf(RichText.Run(errorMsg))).toHtml()
+            } else {
+                val errorRun = RichText.Run(errorMsg, RichText.STYLE_ITALIC)
+                RichText(markdownProcessor.process(partialText).runs + RichText.Run("\n\n") + errorRun).toHtml()
+            }
+            chatDao.updateMessageIndexed(
                 ChatMessage(
                     id = messageId,
                     sessionId = sessionId,
-                    content = errorMsg,
+                    content = content,
+                    // Chỉ giữ phần câu trả lời, thông báo lỗi không được gửi lại cho model
+                    rawContent = partialText,
                     isUser = false,
                     isStreaming = false,
                     timestamp = System.currentTimeMillis()
-                )
+                ),
+                markdownProcessor.toPlainText(content)
             )
         } finally {
             _isStreamingActive.value = false
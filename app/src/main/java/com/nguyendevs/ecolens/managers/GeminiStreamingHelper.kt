@@ -6,16 +6,21 @@ import com.nguyendevs.ecolens.api.*
 import com.nguyendevs.ecolens.model.*
 import com.nguyendevs.ecolens.utils.MarkdownProcessor
 import com.nguyendevs.ecolens.utils.PromptBuilder
+import com.nguyendevs.ecolens.utils.RichContent
 import kotlinx.coroutines.*
 import java.io.IOException
 
 class GeoBlockedException : IOException("Geo blocked")
 
+// Stream chi tiết bị ngắt giữa chừng; phần đã nhận nằm trong nhật ký để lượt sau stream tiếp
+class IncompleteDetailsException : IOException("Details stream interrupted")
+
 class GeminiStreamingHelper(
     private val apiService: INaturalistApi,
     private val gson: Gson
 ) {
     private val markdownProcessor = MarkdownProcessor()
+    private val resumableStream = ResumableGeminiStream(apiService, gson)
 
     suspend fun streamTaxonomy(
         scientificName: String,
@@ -26,57 +31,12 @@ class GeminiStreamingHelper(
         val isVietnamese = languageCode != "en"
         val prompt = PromptBuilder.buildTaxonomyPrompt(scientificName, isVietnamese)
 
-        val request = GeminiRequest(
-            contents = listOf(
-                GeminiContent(
-                    role = "user",
-                    parts = listOf(GeminiPart(text = prompt))
-                )
-            )
-        )
-        val response = apiService.streamGemini(request)
-        if (!response.isSuccessful) {
-            val errorBody = response.errorBody()?.string() ?: ""
-            if (errorBody.contains("User location is not supported", ignoreCase = true)) {
-                throw GeoBlockedException()
-            }
-            throw IOException("API Error: ${response.code()} - $errorBody")
-        }
-
+        val accumulatedJson = StringBuilder()
         try {
-            response.body()?.byteStream()?.bufferedReader()?.use { reader ->
-                var accumulatedJson = ""
-                var line: String?
-
-                while (reader.readLine().also { line = it } != null) {
-                    val currentLine = line ?: continue
-
-                    if (currentLine.startsWith("data: ")) {
-                        val jsonData = currentLine.substring(6).trim()
-                        if (jsonData == "[DONE]") break
-
-                        try {
-                            val streamResponse = gson.fromJson(jsonData, GeminiResponse::class.java)
-                            val chunk = streamResponse.candidates?.firstOrNull()
-                                ?.content?.parts?.firstOrNull()?.text
-
-                            if (!chunk.isNullOrEmpty()) {
-                                accumulatedJson += chunk
-
-                                val cleanedJson = cleanJsonString(accumulatedJson)
-                                try {
-                                    val taxonomyInfo = gson.fromJson(
-                                        cleanedJson,
-                                        TaxonomyResponse::class.java
-                                    )
-                                    updateTaxonomyUISync(taxonomyInfo, scientificName, isVietnamese, confidence, onStateUpdate)
-                                } catch (e: Exception) {
-                                }
-                            }
-                        } catch (e: Exception) {
-                            Log.e("StreamTaxonomy", "Parse error: ${e.message}")
-                        }
-                    }
+            resumableStream.stream(userContents(prompt), ::mapStreamError) { chunk ->
+                accumulatedJson.append(chunk)
+                parseJsonOrNull(accumulatedJson, TaxonomyResponse::class.java)?.let { taxonomyInfo ->
+                    updateTaxonomyUISync(taxonomyInfo, scientificName, isVietnamese, confidence, onStateUpdate)
                 }
             }
         } catch (e: Exception) {
@@ -85,71 +45,78 @@ class GeminiStreamingHelper(
         }
     }
 
+    // Trả về true nếu stream chi tiết kết thúc trọn vẹn. [resumeText] là phần JSON đã nhận ở lượt trước,
+    // [onText] nhận toàn bộ văn bản tích lũy sau mỗi chunk để ghi nhật ký
     suspend fun streamDetails(
         scientificName: String,
         confidence: Double,
         languageCode: String,
         currentInfo: SpeciesInfo,
+        resumeText: String = "",
+        onText: suspend (String) -> Unit = {},
         onStateUpdate: (EcoLensUiState) -> Unit
-    ) = withContext(Dispatchers.IO) {
+    ): Boolean = withContext(Dispatchers.IO) {
         val isVietnamese = languageCode != "en"
         val prompt = PromptBuilder.buildDetailsPrompt(scientificName, isVietnamese)
 
-        val request = GeminiRequest(
-            contents = listOf(
-                GeminiContent(
-                    role = "user",
-                    parts = listOf(GeminiPart(text = prompt))
-                )
-            )
-        )
-
+        // Kết nối rớt giữa chừng được nối tiếp trong resumableStream, các mục đã hiển thị được giữ nguyên
+        val accumulatedJson = StringBuilder(resumeText)
+        if (resumeText.isNotEmpty()) {
+            parseJsonOrNull(accumulatedJson, DetailsResponse::class.java)?.let { detailsInfo ->
+                updateDetailsUISync(detailsInfo, isVietnamese, currentInfo, onStateUpdate)
+            }
+        }
         try {
-            val response = apiService.streamGemini(request)
-
-            if (response.isSuccessful) {
-                val responseBody = response.body()
-                if (responseBody != null) {
-                    var accumulatedJson = ""
-
-                    responseBody.byteStream().bufferedReader().use { reader ->
-                        var line: String?
-
-                        while (reader.readLine().also { line = it } != null) {
-                            val currentLine = line ?: continue
-
-                            if (currentLine.startsWith("data: ")) {
-                                val jsonData = currentLine.substring(6).trim()
-                                if (jsonData == "[DONE]") break
-
-                                try {
-                                    val streamResponse = gson.fromJson(jsonData, GeminiResponse::class.java)
-                                    val chunk = streamResponse.candidates?.firstOrNull()
-                                        ?.content?.parts?.firstOrNull()?.text
-
-                                    if (!chunk.isNullOrEmpty()) {
-                                        accumulatedJson += chunk
-
-                                        val cleanedJson = cleanJsonString(accumulatedJson)
-                                        try {
-                                            val detailsInfo = gson.fromJson(
-                                                cleanedJson,
-                                                DetailsResponse::class.java
-                                            )
-                                            updateDetailsUISync(detailsInfo, isVietnamese, currentInfo, onStateUpdate)
-                                        } catch (e: Exception) {
-                                        }
-                                    }
-                                } catch (e: Exception) {
-                                    Log.e("StreamDetails", "Parse error: ${e.message}")
-                                }
-                            }
-                        }
-                    }
+            resumableStream.stream(userContents(prompt), ::mapStreamError, initialText = resumeText) { chunk ->
+                accumulatedJson.append(chunk)
+                onText(accumulatedJson.toString())
+                parseJsonOrNull(accumulatedJson, DetailsResponse::class.java)?.let { detailsInfo ->
+                    updateDetailsUISync(detailsInfo, isVietnamese, currentInfo, onStateUpdate)
                 }
             }
+            true
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e("StreamDetails", "Error: ${e.message}")
+            false
+        }
+    }
+
+    // Dựng lại phần chi tiết từ văn bản đã stream xong trước đó, không gọi mạng
+    suspend fun applyDetails(
+        detailsText: String,
+        languageCode: String,
+        currentInfo: SpeciesInfo,
+        onStateUpdate: (EcoLensUiState) -> Unit
+    ) = withContext(Dispatchers.IO) {
+        parseJsonOrNull(detailsText, DetailsResponse::class.java)?.let { detailsInfo ->
+            updateDetailsUISync(detailsInfo, languageCode != "en", currentInfo, onStateUpdate)
+        }
+    }
+
+    private fun userContents(prompt: String): List<GeminiContent> {
+        return listOf(
+            GeminiContent(
+                role = "user",
+                parts = listOf(GeminiPart(text = prompt))
+            )
+        )
+    }
+
+    private fun mapStreamError(code: Int, errorBody: String): IOException {
+        if (errorBody.contains("User location is not supported", ignoreCase = true)) {
+            return GeoBlockedException()
+        }
+        return IOException("API Error: $code - $errorBody")
+    }
+
+    // JSON chưa đủ để phân tích thì bỏ qua, chờ chunk tiếp theo
+    private fun <T> parseJsonOrNull(accumulated: CharSequence, type: Class<T>): T? {
+        return try {
+            gson.fromJson(cleanJsonString(accumulated.toString()), type)
+        } catch (e: Exception) {
+            null
         }
     }
 
@@ -278,7 +245,7 @@ class GeminiStreamingHelper(
         details.description?.let { desc ->
             if (desc.isNotBlank()) {
                 updated = updated.copy(
-                    description = markdownProcessor.process(desc, isVietnamese = isVietnamese)
+                    description = section(desc, isVietnamese = isVietnamese)
                 )
                 onStateUpdate(EcoLensUiState(
                     isLoading = true,
@@ -291,7 +258,7 @@ class GeminiStreamingHelper(
 
         if (characteristicsText.isNotBlank()) {
             updated = updated.copy(
-                characteristics = markdownProcessor.process(characteristicsText, isVietnamese = isVietnamese)
+                characteristics = section(characteristicsText, isVietnamese = isVietnamese)
             )
             onStateUpdate(EcoLensUiState(
                 isLoading = true,
@@ -304,7 +271,7 @@ class GeminiStreamingHelper(
         details.distribution?.let { dist ->
             if (dist.isNotBlank()) {
                 updated = updated.copy(
-                    distribution = markdownProcessor.process(dist, isVietnamese = isVietnamese)
+                    distribution = section(dist, isVietnamese = isVietnamese)
                 )
                 onStateUpdate(EcoLensUiState(
                     isLoading = true,
@@ -318,7 +285,7 @@ class GeminiStreamingHelper(
         details.habitat?.let { hab ->
             if (hab.isNotBlank()) {
                 updated = updated.copy(
-                    habitat = markdownProcessor.process(hab, isVietnamese = isVietnamese)
+                    habitat = section(hab, isVietnamese = isVietnamese)
                 )
                 onStateUpdate(EcoLensUiState(
                     isLoading = true,
@@ -332,7 +299,7 @@ class GeminiStreamingHelper(
         details.conservationStatus?.let { status ->
             if (status.isNotBlank()) {
                 updated = updated.copy(
-                    conservationStatus = markdownProcessor.process(
+                    conservationStatus = section(
                         status,
                         isConservationStatus = true,
                         isVietnamese = isVietnamese
@@ -348,6 +315,12 @@ class GeminiStreamingHelper(
         }
     }
 
+    // Phân tích một mục chi tiết; AST được giữ trong RichContent để màn hình, TTS và chia sẻ
+    // dùng lại, chuỗi HTML trả về chỉ là định dạng lưu của SpeciesInfo
+    private fun section(text: String, isConservationStatus: Boolean = false, isVietnamese: Boolean): String {
+        return RichContent.from(markdownProcessor.process(text, isConservationStatus, isVietnamese)).html
+    }
+
     private fun cleanJsonString(json: String): String {
         val firstBrace = json.indexOf('{')
         val lastBrace = json.lastIndexOf('}')
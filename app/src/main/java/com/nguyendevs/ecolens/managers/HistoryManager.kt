@@ -1,19 +1,32 @@
 package com.nguyendevs.ecolens.managers
 
+import android.content.Context
 import com.nguyendevs.ecolens.database.HistoryDao
+import com.nguyendevs.ecolens.database.HistoryStorageSettings
+import com.nguyendevs.ecolens.database.SpeciesDetailsCodec
 import com.nguyendevs.ecolens.model.HistoryEntry
 import com.nguyendevs.ecolens.model.HistorySortOption
+import com.nguyendevs.ecolens.model.HistorySummary
+import com.nguyendevs.ecolens.utils.ImageUtils
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.withContext
 
-class HistoryManager(private val historyDao: HistoryDao) {
+class HistoryManager(
+    private val context: Context,
+    private val historyDao: HistoryDao
+) {
+    companion object {
+        private const val CONVERSION_BATCH_SIZE = 50
+    }
+
+    private val storageSettings = HistoryStorageSettings(context)
 
     fun getHistoryBySortOption(
         sortOption: HistorySortOption,
         startDate: Long? = null,
         endDate: Long? = null
-    ): Flow<List<HistoryEntry>> {
+    ): Flow<List<HistorySummary>> {
         return if (startDate != null && endDate != null) {
             when (sortOption) {
                 HistorySortOption.NEWEST_FIRST -> historyDao.getHistoryByDateRangeNewest(startDate, endDate)
@@ -27,10 +40,82 @@ class HistoryManager(private val historyDao: HistoryDao) {
         }
     }
 
-    suspend fun toggleFavorite(entry: HistoryEntry) {
+    // Lấy bản ghi kèm chi tiết đã giải nén cho màn hình chi tiết
+    suspend fun getEntryWithDetails(id: Int): HistoryEntry? {
+        val entry = withContext(Dispatchers.IO) { historyDao.getHistoryById(id) } ?: return null
+        val compressed = entry.compressedDetails ?: return entry
+        return withContext(Dispatchers.Default) {
+            entry.copy(speciesInfo = SpeciesDetailsCodec.decode(compressed, entry.speciesInfo))
+        }
+    }
+
+    // Bật/tắt lưu nén và chuyển đổi các bản ghi hiện có sang định dạng tương ứng
+    suspend fun setCompressionEnabled(enabled: Boolean) {
+        // Giữ khóa ghi suốt lượt chuyển đổi để bản ghi mới không mang định dạng cũ
+        storageSettings.withWriteLock {
+            storageSettings.setCompressionEnabled(enabled)
+            withContext(Dispatchers.IO) {
+                try {
+                    while (true) {
+                        val batch = if (enabled) {
+                            historyDao.getEntriesWithPlainDetails(CONVERSION_BATCH_SIZE)
+                        } else {
+                            historyDao.getEntriesWithCompressedDetails(CONVERSION_BATCH_SIZE)
+                        }
+                        if (batch.isEmpty()) break
+
+                        historyDao.updateAll(batch.map { entry ->
+                            val compressed = entry.compressedDetails
+                            if (enabled) {
+                                entry.copy(
+                                    speciesInfo = SpeciesDetailsCodec.stripDetails(entry.speciesInfo),
+                                    compressedDetails = SpeciesDetailsCodec.encode(entry.speciesInfo)
+                                )
+                            } else if (compressed != null) {
+                                entry.copy(
+                                    speciesInfo = SpeciesDetailsCodec.decode(compressed, entry.speciesInfo),
+                                    compressedDetails = null
+                                )
+                            } else {
+                                entry
+                            }
+                        })
+                    }
+                } catch (e: Exception) {
+                    e.printStackTrace()
+                }
+            }
+        }
+    }
+
+    // Chỉ cập nhật cột yêu thích: bản ghi tóm tắt không có chi tiết nên không được ghi đè cả dòng
+    suspend fun toggleFavorite(entry: HistorySummary) {
+        withContext(Dispatchers.IO) {
+            try {
+                historyDao.updateFavoriteByIds(listOf(entry.id), !entry.isFavorite)
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+    }
+
+    suspend fun setFavorite(ids: List<Int>, isFavorite: Boolean) {
+        if (ids.isEmpty()) return
+        withContext(Dispatchers.IO) {
+            try {
+                historyDao.setFavorite(ids, isFavorite)
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+    }
+
+    suspend fun deleteEntries(ids: List<Int>) {
+        if (ids.isEmpty()) return
         withContext(Dispatchers.IO) {
             try {
-                historyDao.update(entry.copy(isFavorite = !entry.isFavorite))
+                val imagePaths = historyDao.deleteEntries(ids)
+                ImageUtils.deleteInternalImages(context, imagePaths)
             } catch (e: Exception) {
                 e.printStackTrace()
             }
@@ -39,7 +124,8 @@ class HistoryManager(private val historyDao: HistoryDao) {
 
     suspend fun deleteAllHistory() {
         withContext(Dispatchers.IO) {
-            historyDao.deleteAll()
+            val imagePaths = historyDao.deleteAllEntries()
+            ImageUtils.deleteInternalImages(context, imagePaths)
         }
     }
 }
\ No newline at end of file
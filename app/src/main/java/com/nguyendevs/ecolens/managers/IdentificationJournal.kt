@@ -0,0 +1,186 @@
+package com.nguyendevs.ecolens.managers
+
+import android.content.Context
+import android.net.Uri
+import android.util.Log
+import com.google.gson.Gson
+import com.nguyendevs.ecolens.database.IdentificationJournalDao
+import com.nguyendevs.ecolens.model.IdentificationJournalEntry
+import com.nguyendevs.ecolens.model.SpeciesInfo
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.InputStream
+import java.security.MessageDigest
+
+/**
+ * Nhật ký bền vững cho từng lượt nhận diện: kết quả score_image, thông tin phân loại đã xong và
+ * phần văn bản chi tiết đã stream được. Lượt chạy lại (thử lại, tiến trình bị hủy, hàng đợi
+ * ngoại tuyến) với cùng ảnh sẽ bắt đầu từ bước chưa xong đầu tiên thay vì gọi mạng lại từ đầu.
+ */
+class IdentificationJournal(
+    private val context: Context,
+    private val journalDao: IdentificationJournalDao,
+    private val gson: Gson
+) {
+
+    companion object {
+        private const val TAG = "IdentificationJournal"
+
+        private const val JOURNAL_DIR = "journal"
+        private const val HASH_BUFFER_SIZE = 64 * 1024
+
+        // Gộp các lần ghi văn bản chi tiết, mỗi chunk stream chỉ vài chục ký tự
+        private const val DETAILS_WRITE_INTERVAL_MS = 1_000L
+
+        private const val MAX_AGE_MS = 24 * 60 * 60 * 1000L
+        private const val RESUME_WINDOW_MS = 60 * 60 * 1000L
+
+        // Khóa nhật ký: SHA-256 (hex chữ thường) của nội dung ảnh, không phụ thuộc URI hay tên file
+        internal fun keyOf(input: InputStream): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            val buffer = ByteArray(HASH_BUFFER_SIZE)
+            while (true) {
+                val read = input.read(buffer)
+                if (read < 0) break
+                digest.update(buffer, 0, read)
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+    }
+
+    // Nhật ký của một lượt đang chạy; entry luôn là bản mới nhất, kể cả phần chưa ghi xuống Room
+    class Handle internal constructor(entry: IdentificationJournalEntry) {
+        @Volatile
+        var entry: IdentificationJournalEntry = entry
+            internal set
+        internal var lastDetailsWriteAt = 0L
+    }
+
+    suspend fun hashOf(uri: Uri): String? = withContext(Dispatchers.IO) {
+        try {
+            context.contentResolver.openInputStream(uri)?.use { keyOf(it) }
+        } catch (e: Exception) {
+            Log.w(TAG, "Cannot hash image: ${e.message}")
+            null
+        }
+    }
+
+    suspend fun hashOf(file: File): String = withContext(Dispatchers.IO) {
+        file.inputStream().use { keyOf(it) }
+    }
+
+    suspend fun open(imageHash: String, languageCode: String, historyId: Int?): Handle = withContext(Dispatchers.IO) {
+        val existing = journalDao.get(imageHash, languageCode)
+        if (existing != null) {
+            Log.d(TAG, "Resuming $imageHash: score=${existing.scientificName != null}, " +
+                    "taxonomy=${existing.taxonomyJson != null}, details=${existing.detailsText.length}")
+            return@withContext Handle(existing)
+        }
+
+        val entry = IdentificationJournalEntry(
+            imageHash = imageHash,
+            languageCode = languageCode,
+            historyId = historyId,
+            updatedAt = System.currentTimeMillis()
+        )
+        journalDao.upsert(entry)
+        Handle(entry)
+    }
+
+    // Lượt trên màn hình chính bị gián đoạn gần đây, dọn luôn các nhật ký quá hạn
+    suspend fun latestInterrupted(): Handle? = withContext(Dispatchers.IO) {
+        val now = System.currentTimeMillis()
+        journalDao.getStalePreparedPaths(now - MAX_AGE_MS).forEach { File(it).delete() }
+        journalDao.deleteOlderThan(now - MAX_AGE_MS)
+
+        val entry = journalDao.getLatestInterrupted(now - RESUME_WINDOW_MS) ?: return@withContext null
+        if (entry.preparedPath?.let { File(it).exists() } != true) {
+            journalDao.delete(entry.imageHash, entry.languageCode)
+            return@withContext null
+        }
+        Handle(entry)
+    }
+
+    fun preparedFileOf(handle: Handle?): File? {
+        return handle?.entry?.preparedPath?.let { File(it) }?.takeIf { it.exists() }
+    }
+
+    // Chuyển ảnh đã thu nhỏ vào thư mục nhật ký để lượt tiếp tục sau khi tiến trình bị hủy không phải giải mã lại
+    suspend fun recordPrepared(handle: Handle, preparedFile: File): File = withContext(Dispatchers.IO) {
+        val dir = File(context.filesDir, JOURNAL_DIR).apply { mkdirs() }
+        val target = File(dir, "${handle.entry.imageHash}_${handle.entry.languageCode}.jpg")
+        preparedFile.copyTo(target, overwrite = true)
+        preparedFile.delete()
+        write(handle, handle.entry.copy(preparedPath = target.absolutePath))
+        target
+    }
+
+    suspend fun recordScore(handle: Handle, scientificName: String, confidence: Double) {
+        write(handle, handle.entry.copy(scientificName = scientificName, confidence = confidence))
+    }
+
+    fun scoreOf(handle: Handle?): SpeciesIdentificationManager.ScoredImage? {
+        val entry = handle?.entry ?: return null
+        val scientificName = entry.scientificName ?: return null
+        val confidence = entry.confidence ?: return null
+        return SpeciesIdentificationManager.ScoredImage(scientificName, confidence)
+    }
+
+    // Chỉ ghi khi đã có tên thường gọi, tránh lượt sau bỏ qua bước phân loại với kết quả rỗng
+    suspend fun recordTaxonomy(handle: Handle, info: SpeciesInfo) {
+        if (info.commonName.isBlank() || info.commonName == "...") return
+        write(handle, handle.entry.copy(taxonomyJson = gson.toJson(info)))
+    }
+
+    fun taxonomyOf(handle: Handle?): SpeciesInfo? {
+        val json = handle?.entry?.taxonomyJson ?: return null
+        return try {
+            gson.fromJson(json, SpeciesInfo::class.java)
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    // Văn bản chi tiết luôn được cập nhật trong handle, chỉ ghi xuống Room tối đa mỗi giây một lần
+    suspend fun recordDetails(handle: Handle, text: String) {
+        val updated = handle.entry.copy(detailsText = text)
+        val now = System.currentTimeMillis()
+        if (now - handle.lastDetailsWriteAt >= DETAILS_WRITE_INTERVAL_MS) {
+            handle.lastDetailsWriteAt = now
+            write(handle, updated)
+        } else {
+            handle.entry = updated
+        }
+    }
+
+    // Bản ghi lịch sử đã lưu từ chi tiết dở dang, lượt tiếp tục cập nhật bản ghi này thay vì thêm mới
+    suspend fun recordHistoryId(handle: Handle, historyId: Int) {
+        if (handle.entry.historyId == historyId) return
+        write(handle, handle.entry.copy(historyId = historyId))
+    }
+
+    suspend fun recordDetailsComplete(handle: Handle) {
+        write(handle, handle.entry.copy(detailsComplete = true))
+    }
+
+    // Lượt không còn chạy trên màn hình chính (lỗi hoặc đã chuyển sang hàng đợi): xóa bản sao ảnh để
+    // latestInterrupted không trả về lượt này nữa, các bước đã xong vẫn giữ cho lần thử lại
+    suspend fun releasePrepared(handle: Handle) {
+        val preparedPath = handle.entry.preparedPath ?: return
+        withContext(Dispatchers.IO) { File(preparedPath).delete() }
+        write(handle, handle.entry.copy(preparedPath = null))
+    }
+
+    // Lượt đã xong (hoặc không thể xong): xóa nhật ký và bản sao ảnh
+    suspend fun complete(handle: Handle) = withContext(Dispatchers.IO) {
+        handle.entry.preparedPath?.let { File(it).delete() }
+        journalDao.delete(handle.entry.imageHash, handle.entry.languageCode)
+    }
+
+    private suspend fun write(handle: Handle, entry: IdentificationJournalEntry) = withContext(Dispatchers.IO) {
+        val stamped = entry.copy(updatedAt = System.currentTimeMillis())
+        handle.entry = stamped
+        journalDao.upsert(stamped)
+    }
+}
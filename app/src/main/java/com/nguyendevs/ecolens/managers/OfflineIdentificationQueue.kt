@@ -0,0 +1,234 @@
+package com.nguyendevs.ecolens.managers
+
+import android.Manifest
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.content.pm.PackageManager
+import android.net.ConnectivityManager
+import android.net.Network
+import android.net.NetworkCapabilities
+import android.os.Build
+import android.util.Log
+import androidx.core.app.NotificationCompat
+import androidx.core.app.NotificationManagerCompat
+import androidx.core.content.ContextCompat
+import com.nguyendevs.ecolens.MainActivity
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.database.PendingIdentificationDao
+import com.nguyendevs.ecolens.model.PendingIdentification
+import com.nguyendevs.ecolens.network.LaneScheduler
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+
+/**
+ * Hàng đợi nhận diện bền vững khi mất mạng: ảnh đã thu nhỏ được chép vào bộ nhớ trong và ghi
+ * vào Room; khi có mạng trở lại (hoặc lúc khởi động) hàng đợi được xả với số lượt chạy song song
+ * giới hạn, kết quả ghi vào lịch sử và người dùng nhận một thông báo gộp cho cả đợt.
+ */
+class OfflineIdentificationQueue(
+    private val context: Context,
+    private val pendingDao: PendingIdentificationDao
+) {
+
+    companion object {
+        private const val TAG = "OfflineQueue"
+
+        private const val PENDING_DIR = "pending"
+        private const val MAX_CONCURRENT = 2
+        private const val DRAIN_BATCH = 20
+        private const val MAX_ATTEMPTS = 5
+
+        private const val CHANNEL_ID = "offline_identifications"
+        private const val NOTIFICATION_ID = 4701
+    }
+
+    private val connectivityManager =
+        context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+
+    private var scope: CoroutineScope? = null
+    private var process: (suspend (PendingIdentification) -> Int?)? = null
+    // Chỉ đọc/ghi trong synchronized(this): drain() được gọi từ luồng chính, luồng callback mạng và luồng nền
+    private var drainJob: Job? = null
+
+    private val networkCallback = object : ConnectivityManager.NetworkCallback() {
+        override fun onAvailable(network: Network) {
+            drain()
+        }
+    }
+
+    // [process] trả về ID lịch sử khi nhận diện thành công, null khi không có kết quả hợp lệ
+    fun start(scope: CoroutineScope, process: suspend (PendingIdentification) -> Int?) {
+        this.scope = scope
+        this.process = process
+        try {
+            connectivityManager.registerDefaultNetworkCallback(networkCallback)
+        } catch (e: Exception) {
+            Log.w(TAG, "Cannot register network callback: ${e.message}")
+        }
+        drain()
+    }
+
+    fun stop() {
+        try {
+            connectivityManager.unregisterNetworkCallback(networkCallback)
+        } catch (e: Exception) {
+            Log.w(TAG, "Cannot unregister network callback: ${e.message}")
+        }
+        synchronized(this) {
+            drainJob?.cancel()
+            drainJob = null
+            scope = null
+            process = null
+        }
+    }
+
+    fun isOnline(): Boolean {
+        val capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.activeNetwork)
+            ?: return false
+        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+    }
+
+    // Chép ảnh đã chuẩn bị vào thư mục riêng vì ảnh tạm trong cache có thể bị hệ thống dọn
+    suspend fun enqueue(
+        preparedImage: File,
+        languageCode: String,
+        historyId: Int?,
+        imageHash: String? = null
+    ): Long = withContext(Dispatchers.IO) {
+        val dir = File(context.filesDir, PENDING_DIR).apply { mkdirs() }
+        val target = File.createTempFile("pending_", ".jpg", dir)
+        preparedImage.copyTo(target, overwrite = true)
+
+        pendingDao.insert(PendingIdentification(
+            imagePath = target.absolutePath,
+            languageCode = languageCode,
+            historyId = historyId,
+            imageHash = imageHash,
+            createdAt = System.currentTimeMillis()
+        ))
+    }
+
+    fun drain() {
+        synchronized(this) {
+            val currentScope = scope ?: return
+            val currentProcess = process ?: return
+            if (drainJob?.isActive == true) return
+
+            drainJob = currentScope.launch(Dispatchers.IO) {
+                var identified = 0
+                val semaphore = Semaphore(MAX_CONCURRENT)
+
+                while (isOnline()) {
+                    val jobs = pendingDao.getPending(DRAIN_BATCH)
+                    if (jobs.isEmpty()) break
+
+                    val results = jobs.map { job ->
+                        async { semaphore.withPermit { runJob(job, currentProcess) } }
+                    }.awaitAll()
+
+                    identified += results.count { it }
+                    // Cả đợt không tiến triển (mất mạng giữa chừng hoặc lỗi lặp lại): chờ lần có mạng sau
+                    if (results.none { it }) break
+                }
+
+                if (identified > 0) notifyCompleted(identified)
+            }
+        }
+    }
+
+    // Trả về true nếu lượt đã được nhận diện và ghi vào lịch sử
+    private suspend fun runJob(job: PendingIdentification, process: suspend (PendingIdentification) -> Int?): Boolean {
+        val imageFile = File(job.imagePath)
+        if (!imageFile.exists()) {
+            pendingDao.delete(job.id)
+            return false
+        }
+
+        val preemptionsBefore = LaneScheduler.preemptionCount
+        val error = try {
+            if (process(job) != null) {
+                pendingDao.delete(job.id)
+                imageFile.delete()
+                return true
+            }
+            "No valid result"
+        } catch (e: GeoBlockedException) {
+            // Không thể thành công khi mạng còn ở vùng bị chặn, bỏ khỏi hàng đợi
+            discard(job, imageFile)
+            return false
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: IOException) {
+            // Chỉ mất mạng thật hoặc bị lệnh tiền cảnh hủy mới không tính là một lần thử; lỗi API,
+            // chi tiết dở dang... khi vẫn có mạng đều được tính để lượt lỗi mãi không lặp vô hạn
+            if (!isOnline() || LaneScheduler.preemptionCount != preemptionsBefore) {
+                Log.w(TAG, "Job ${job.id} interrupted: ${e.message}")
+                return false
+            }
+            e.message ?: e.javaClass.simpleName
+        } catch (e: Exception) {
+            e.message ?: e.javaClass.simpleName
+        }
+
+        if (job.attempts + 1 >= MAX_ATTEMPTS) {
+            Log.w(TAG, "Job ${job.id} dropped after ${MAX_ATTEMPTS} attempts: $error")
+            discard(job, imageFile)
+        } else {
+            pendingDao.markAttempt(job.id, error)
+        }
+        return false
+    }
+
+    private suspend fun discard(job: PendingIdentification, imageFile: File) {
+        pendingDao.delete(job.id)
+        imageFile.delete()
+    }
+
+    private fun notifyCompleted(count: Int) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU &&
+            ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) !=
+            PackageManager.PERMISSION_GRANTED
+        ) {
+            return
+        }
+
+        val manager = context.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
+        if (manager.getNotificationChannel(CHANNEL_ID) == null) {
+            manager.createNotificationChannel(NotificationChannel(
+                CHANNEL_ID,
+                context.getString(R.string.offline_queue_channel),
+                NotificationManager.IMPORTANCE_DEFAULT
+            ))
+        }
+
+        val intent = Intent(context, MainActivity::class.java).apply {
+            flags = Intent.FLAG_ACTIVITY_SINGLE_TOP or Intent.FLAG_ACTIVITY_CLEAR_TOP
+        }
+        val pendingIntent = PendingIntent.getActivity(
+            context, 0, intent, PendingIntent.FLAG_IMMUTABLE or PendingIntent.FLAG_UPDATE_CURRENT
+        )
+
+        val notification = NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(R.drawable.ic_check_circle)
+            .setContentTitle(context.getString(R.string.offline_queue_done_title))
+            .setContentText(context.getString(R.string.offline_queue_done_text, count))
+            .setContentIntent(pendingIntent)
+            .setAutoCancel(true)
+            .build()
+
+        NotificationManagerCompat.from(context).notify(NOTIFICATION_ID, notification)
+    }
+}
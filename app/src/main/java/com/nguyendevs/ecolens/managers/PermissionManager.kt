@@ -36,6 +36,13 @@ class PermissionManager(
         permissionLauncher.launch(perms)
     }
 
+    // Thông báo kết quả của hàng đợi ngoại tuyến cần quyền riêng từ Android 13
+    fun needsNotificationPermission(): Boolean {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU &&
+                ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) !=
+                PackageManager.PERMISSION_GRANTED
+    }
+
     fun showPermissionDeniedDialog() {
         MaterialAlertDialogBuilder(context)
             .setTitle(context.getString(R.string.permission_title))
@@ -0,0 +1,236 @@
+package com.nguyendevs.ecolens.managers
+
+import android.util.Log
+import com.google.gson.Gson
+import com.nguyendevs.ecolens.api.GeminiContent
+import com.nguyendevs.ecolens.api.GeminiPart
+import com.nguyendevs.ecolens.api.GeminiRequest
+import com.nguyendevs.ecolens.api.GeminiResponse
+import com.nguyendevs.ecolens.api.INaturalistApi
+import com.nguyendevs.ecolens.network.RequestSentSignal
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import okhttp3.ResponseBody
+import retrofit2.Response
+import retrofit2.awaitResponse
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.random.Random
+
+/**
+ * Stream Gemini có khả năng nối tiếp: phát hiện stream bị treo (quá lâu không có chunk mới),
+ * thử lại với backoff lũy thừa có jitter, và ở các lần thử sau gửi kèm phần văn bản đã nhận
+ * để model viết tiếp; phần bị lặp lại ở đầu câu trả lời mới được cắt trước khi nối vào.
+ */
+class ResumableGeminiStream(
+    private val apiService: INaturalistApi,
+    private val gson: Gson
+) {
+
+    companion object {
+        private const val TAG = "ResumableStream"
+
+        private const val FIRST_BYTE_TIMEOUT_MS = 30_000L
+        private const val STALL_TIMEOUT_MS = 15_000L
+        private const val WATCHDOG_INTERVAL_MS = 1_000L
+        private const val MAX_ATTEMPTS = 4
+        private const val BASE_BACKOFF_MS = 500L
+        private const val MAX_BACKOFF_MS = 8_000L
+
+        // Đủ dài để nhận ra đoạn model viết lặp lại phần cuối đã có
+        private const val OVERLAP_WINDOW = 64
+        private const val MAX_OVERLAP = 200
+
+        // Trùng ngắn hơn mức này coi là ngẫu nhiên (một ký tự, dấu ngoặc JSON...) nên không cắt
+        private const val MIN_OVERLAP = 16
+
+        private const val CONTINUE_INSTRUCTION =
+            "Your previous reply was cut off. Continue exactly from where it stopped, " +
+                    "without repeating any text already written and without any preamble. " +
+                    "Keep the same language and format."
+
+        // Bỏ phần đầu của đoạn mới trùng với phần cuối đã nhận, chỉ khi đoạn trùng dài ít nhất MIN_OVERLAP
+        internal fun trimOverlap(received: String, next: String): String {
+            val maxLength = minOf(received.length, next.length, MAX_OVERLAP)
+            for (length in maxLength downTo MIN_OVERLAP) {
+                if (received.regionMatches(received.length - length, next, 0, length)) {
+                    return next.substring(length)
+                }
+            }
+            return next
+        }
+    }
+
+    // Hết lượt thử; [receivedText] là phần đã nhận được trước khi thất bại
+    class StreamFailedException(val receivedText: String, cause: Throwable?) :
+        IOException("Stream failed after retries: ${cause?.message}", cause)
+
+    private class NonRetryableException(val code: Int, val body: String) : IOException("API Error: $code")
+
+    private class StreamStalledException : IOException("Stream stalled")
+
+    /**
+     * Gửi [contents] và gọi [onChunk] với từng đoạn văn bản mới theo thứ tự, kể cả qua các lần nối tiếp.
+     * Trả về toàn bộ văn bản. Lỗi không thử lại được (4xx, chặn vùng) được ném ra ngay qua [mapError].
+     * [initialText] là phần đã nhận ở một lượt trước (từ nhật ký); khi có, lần gửi đầu tiên đã là nối tiếp.
+     */
+    suspend fun stream(
+        contents: List<GeminiContent>,
+        mapError: (code: Int, body: String) -> IOException = { code, body -> IOException("API Error: $code - $body") },
+        initialText: String = "",
+        onChunk: suspend (String) -> Unit
+    ): String = withContext(Dispatchers.IO) {
+        val received = StringBuilder(initialText)
+        var lastError: Throwable? = null
+
+        for (attempt in 0 until MAX_ATTEMPTS) {
+            if (attempt > 0) delay(backoffDelay(attempt))
+
+            val request = if (received.isEmpty()) {
+                GeminiRequest(contents = contents)
+            } else {
+                GeminiRequest(contents = contents + continuationTurns(received.toString()))
+            }
+
+            try {
+                val completed = streamOnce(request, isContinuation = received.isNotEmpty(), received, onChunk)
+                if (completed) return@withContext received.toString()
+                lastError = StreamStalledException()
+            } catch (e: NonRetryableException) {
+                throw mapError(e.code, e.body)
+            } catch (e: IOException) {
+                lastError = e
+            }
+            Log.w(TAG, "Stream attempt ${attempt + 1} failed (${received.length} chars received): ${lastError?.message}")
+        }
+
+        throw StreamFailedException(received.toString(), lastError)
+    }
+
+    // Trả về true nếu stream kết thúc bình thường, false nếu bị treo
+    private suspend fun streamOnce(
+        request: GeminiRequest,
+        isContinuation: Boolean,
+        received: StringBuilder,
+        onChunk: suspend (String) -> Unit
+    ): Boolean = coroutineScope {
+        val sentSignal = RequestSentSignal()
+        val call = apiService.streamGemini(request, sentSignal)
+
+        // Hạn chờ byte đầu tiên chỉ tính từ lúc request thực sự được gửi; thời gian chờ trong hàng
+        // giới hạn tốc độ (có thể vài phút khi cầu dao mở) không làm lượt thử bị hủy
+        val firstByteTimedOut = AtomicBoolean(false)
+        val firstByteWatchdog = launch {
+            while (isActive) {
+                delay(WATCHDOG_INTERVAL_MS)
+                val sentAt = sentSignal.sentAt
+                if (sentAt != 0L && System.currentTimeMillis() - sentAt > FIRST_BYTE_TIMEOUT_MS) {
+                    firstByteTimedOut.set(true)
+                    call.cancel()
+                    break
+                }
+            }
+        }
+        val response: Response<ResponseBody> = try {
+            call.awaitResponse()
+        } catch (e: IOException) {
+            if (firstByteTimedOut.get()) return@coroutineScope false
+            throw e
+        } finally {
+            firstByteWatchdog.cancel()
+        }
+
+        if (!response.isSuccessful) {
+            val errorBody = response.errorBody()?.string() ?: ""
+            val code = response.code()
+            if (code in 400..499 && code != 408 && code != 429) {
+                throw NonRetryableException(code, errorBody)
+            }
+            throw IOException("API Error: $code - $errorBody")
+        }
+        val body = response.body() ?: throw IOException("Empty body")
+
+        val lastChunkAt = AtomicLong(System.currentTimeMillis())
+        val stalled = AtomicBoolean(false)
+
+        // Hủy lệnh gọi khi quá lâu không có dữ liệu: OkHttp đóng socket nên readLine trên luồng đọc
+        // thoát ra ngay thay vì chờ readTimeout. Không đóng body từ đây vì luồng đọc vẫn đang dùng nó
+        val watchdog = launch {
+            while (isActive) {
+                delay(WATCHDOG_INTERVAL_MS)
+                if (System.currentTimeMillis() - lastChunkAt.get() > STALL_TIMEOUT_MS) {
+                    stalled.set(true)
+                    call.cancel()
+                    break
+                }
+            }
+        }
+
+        val pending = StringBuilder()
+        var splicing = isContinuation
+
+        suspend fun emit(text: String) {
+            if (text.isEmpty()) return
+            received.append(text)
+            onChunk(text)
+        }
+
+        try {
+            body.byteStream().bufferedReader().use { reader ->
+                while (true) {
+                    val line = reader.readLine() ?: break
+                    lastChunkAt.set(System.currentTimeMillis())
+                    if (!line.startsWith("data: ")) continue
+
+                    val jsonData = line.substring(6).trim()
+                    if (jsonData == "[DONE]") break
+
+                    val chunk = try {
+                        gson.fromJson(jsonData, GeminiResponse::class.java)
+                            .candidates?.firstOrNull()?.content?.parts?.firstOrNull()?.text
+                    } catch (e: Exception) {
+                        Log.e(TAG, "Parse error: ${e.message}")
+                        null
+                    }
+                    if (chunk.isNullOrEmpty()) continue
+
+                    if (splicing) {
+                        pending.append(chunk)
+                        if (pending.length >= OVERLAP_WINDOW) {
+                            emit(trimOverlap(received.toString(), pending.toString()))
+                            pending.setLength(0)
+                            splicing = false
+                        }
+                    } else {
+                        emit(chunk)
+                    }
+                }
+            }
+        } catch (e: IOException) {
+            if (!stalled.get()) throw e
+        } finally {
+            watchdog.cancel()
+        }
+
+        if (pending.isNotEmpty()) emit(trimOverlap(received.toString(), pending.toString()))
+        !stalled.get()
+    }
+
+    private fun continuationTurns(received: String): List<GeminiContent> {
+        return listOf(
+            GeminiContent(role = "model", parts = listOf(GeminiPart(received))),
+            GeminiContent(role = "user", parts = listOf(GeminiPart(CONTINUE_INSTRUCTION)))
+        )
+    }
+
+    // Jitter: ngẫu nhiên trong [cap/4, cap] với cap = min(MAX, BASE * 2^attempt)
+    private fun backoffDelay(attempt: Int): Long {
+        val cap = minOf(MAX_BACKOFF_MS, BASE_BACKOFF_MS shl attempt)
+        return Random.nextLong(cap / 4, cap + 1)
+    }
+}
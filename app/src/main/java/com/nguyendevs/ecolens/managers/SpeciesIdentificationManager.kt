@@ -4,28 +4,43 @@ import android.app.Application
 import android.net.Uri
 import com.google.gson.Gson
 import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.api.IdentificationResponse
 import com.nguyendevs.ecolens.database.HistoryDao
+import com.nguyendevs.ecolens.database.HistoryStorageSettings
+import com.nguyendevs.ecolens.database.SpeciesDetailsCodec
 import com.nguyendevs.ecolens.model.*
+import com.nguyendevs.ecolens.network.HedgingPolicy
 import com.nguyendevs.ecolens.network.RetrofitClient
 import com.nguyendevs.ecolens.utils.ImageUtils
 import kotlinx.coroutines.*
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
 import okhttp3.MultipartBody
 import okhttp3.RequestBody.Companion.asRequestBody
+import retrofit2.HttpException
+import java.io.File
+import java.io.IOException
 
 class SpeciesIdentificationManager(
     private val application: Application,
-    private val historyDao: HistoryDao
+    private val historyDao: HistoryDao,
+    private val offlineQueue: OfflineIdentificationQueue,
+    private val journal: IdentificationJournal
 ) {
     private val apiService = RetrofitClient.iNaturalistApi
     private val gson = Gson()
-    private val streamingHelper = GeminiStreamingHelper(apiService, gson)
+    private val streamingHelper = GeminiStreamingHelper(RetrofitClient.streamingApi, gson)
+    private val storageSettings = HistoryStorageSettings(application)
+
+    // Hàng đợi ngoại tuyến xả trên làn nền để không tranh với nhận diện người dùng đang chờ
+    private val backgroundStreamingHelper by lazy { GeminiStreamingHelper(RetrofitClient.backgroundApi, gson) }
 
     var currentImageUri: Uri? = null
     var currentHistoryEntryId: Int? = null
     var currentLanguageCode: String = "vi"
 
     private var currentSpeciesInfo: SpeciesInfo? = null
+    private var currentJournal: IdentificationJournal.Handle? = null
+    private var interruptedJournal: IdentificationJournal.Handle? = null
 
     suspend fun identifySpecies(
         imageUri: Uri,
@@ -33,6 +48,11 @@ class SpeciesIdentificationManager(
         existingHistoryId: Int?,
         onStateUpdate: (EcoLensUiState) -> Unit
     ) {
+        // Thử lại cùng ảnh dùng tiếp nhật ký đang mở, kể cả khi ảnh là bản sao trong nhật ký
+        val reusable = currentJournal?.takeIf {
+            imageUri == currentImageUri && it.entry.languageCode == languageCode
+        }
+
         currentLanguageCode = languageCode
         currentImageUri = imageUri
         currentHistoryEntryId = existingHistoryId
@@ -43,23 +63,61 @@ class SpeciesIdentificationManager(
         ))
         delay(100)
 
+        val handle = reusable ?: journal.hashOf(imageUri)?.let { hash ->
+            journal.open(hash, languageCode, existingHistoryId)
+        }
+        runIdentification(imageUri, languageCode, existingHistoryId, handle, onStateUpdate)
+    }
+
+    // Tìm lượt nhận diện bị gián đoạn gần đây (tiến trình bị hủy giữa chừng), trả về ảnh đã lưu của lượt đó
+    suspend fun findInterruptedIdentification(): Uri? {
+        val handle = journal.latestInterrupted() ?: return null
+        val preparedFile = journal.preparedFileOf(handle) ?: return null
+        interruptedJournal = handle
+        return Uri.fromFile(preparedFile)
+    }
+
+    suspend fun resumeInterruptedIdentification(onStateUpdate: (EcoLensUiState) -> Unit) {
+        val handle = interruptedJournal ?: return
+        interruptedJournal = null
+        val imageUri = Uri.fromFile(journal.preparedFileOf(handle) ?: return)
+
+        currentLanguageCode = handle.entry.languageCode
+        currentImageUri = imageUri
+        currentHistoryEntryId = handle.entry.historyId
+
+        onStateUpdate(EcoLensUiState(
+            isLoading = true,
+            loadingStage = LoadingStage.NONE
+        ))
+        runIdentification(imageUri, handle.entry.languageCode, handle.entry.historyId, handle, onStateUpdate)
+    }
+
+    // Chạy từ bước chưa xong đầu tiên theo nhật ký; handle null khi không đọc được ảnh để băm
+    private suspend fun runIdentification(
+        imageUri: Uri,
+        languageCode: String,
+        existingHistoryId: Int?,
+        handle: IdentificationJournal.Handle?,
+        onStateUpdate: (EcoLensUiState) -> Unit
+    ) {
+        currentJournal = handle
+        currentSpeciesInfo = null
+
+        var imageFile: File? = null
         try {
-            val imageFile = withContext(Dispatchers.Default) {
-                ImageUtils.uriToFile(application, imageUri, 1024)
+            val preparedFile = journal.preparedFileOf(handle) ?: prepareImage(imageUri).let { file ->
+                if (handle != null) journal.recordPrepared(handle, file) else file
             }
+            imageFile = preparedFile
 
-            val requestFile = imageFile.asRequestBody("image/jpeg".toMediaTypeOrNull())
-            val imagePart = MultipartBody.Part.createFormData("image", imageFile.name, requestFile)
-
-            val response = apiService.identifySpecies(
-                image = imagePart,
-                locale = languageCode
-            )
+            val scored = journal.scoreOf(handle) ?: scoreImageHedged(preparedFile, languageCode)?.also { result ->
+                handle?.let { journal.recordScore(it, result.scientificName, result.confidence) }
+            }
 
-            if (response.results.isNotEmpty()) {
-                val topResult = response.results.first()
-                val scientificName = topResult.taxon.name
-                val confidence = topResult.combined_score
+            if (scored != null) {
+                val scientificName = scored.scientificName
+                val confidence = scored.confidence
 
                 currentSpeciesInfo = SpeciesInfo(
                     scientificName = scientificName,
@@ -74,34 +132,64 @@ class SpeciesIdentificationManager(
                 ))
 
                 try {
-                    streamingHelper.streamTaxonomy(
-                        scientificName,
-                        confidence,
-                        languageCode
-                    ) { state ->
-                        currentSpeciesInfo = state.speciesInfo
-                        onStateUpdate(state)
+                    val journaledTaxonomy = journal.taxonomyOf(handle)
+                    if (journaledTaxonomy != null) {
+                        currentSpeciesInfo = journaledTaxonomy
+                        onStateUpdate(EcoLensUiState(
+                            isLoading = true,
+                            speciesInfo = journaledTaxonomy,
+                            loadingStage = LoadingStage.TAXONOMY
+                        ))
+                    } else {
+                        streamingHelper.streamTaxonomy(
+                            scientificName,
+                            confidence,
+                            languageCode
+                        ) { state ->
+                            currentSpeciesInfo = state.speciesInfo
+                            onStateUpdate(state)
+                        }
+                        val taxonomyInfo = currentSpeciesInfo
+                        if (handle != null && taxonomyInfo != null) journal.recordTaxonomy(handle, taxonomyInfo)
                     }
 
                     val infoForDetails = currentSpeciesInfo ?: SpeciesInfo(scientificName = scientificName, confidence = confidence)
-
-                    streamingHelper.streamDetails(
-                        scientificName,
-                        confidence,
-                        languageCode,
-                        infoForDetails
-                    ) { state ->
+                    val onDetailsState: (EcoLensUiState) -> Unit = { state ->
                         currentSpeciesInfo = state.speciesInfo
                         onStateUpdate(state)
                     }
 
+                    val detailsCompleted = if (handle?.entry?.detailsComplete == true) {
+                        streamingHelper.applyDetails(handle.entry.detailsText, languageCode, infoForDetails, onDetailsState)
+                        true
+                    } else {
+                        streamingHelper.streamDetails(
+                            scientificName,
+                            confidence,
+                            languageCode,
+                            infoForDetails,
+                            resumeText = handle?.entry?.detailsText.orEmpty(),
+                            onText = { text -> handle?.let { journal.recordDetails(it, text) } },
+                            onStateUpdate = onDetailsState
+                        ).also { completed ->
+                            if (completed && handle != null) journal.recordDetailsComplete(handle)
+                        }
+                    }
+
                     onStateUpdate(EcoLensUiState(
                         isLoading = false,
                         speciesInfo = currentSpeciesInfo,
                         loadingStage = LoadingStage.COMPLETE
                     ))
 
-                    saveToHistory(existingHistoryId, imageFile)
+                    val historyId = saveToHistory(existingHistoryId, preparedFile)
+                    // Chi tiết bị ngắt giữa chừng: giữ nhật ký (kèm ID bản ghi đã lưu) để lần thử lại
+                    // chỉ stream phần còn thiếu và cập nhật đúng bản ghi đó
+                    if (detailsCompleted) {
+                        finishJournal(handle)
+                    } else if (handle != null && historyId != null) {
+                        journal.recordHistoryId(handle, historyId)
+                    }
 
                 } catch (e: GeoBlockedException) {
                     onStateUpdate(EcoLensUiState(
@@ -109,9 +197,12 @@ class SpeciesIdentificationManager(
                         speciesInfo = null,
                         error = application.getString(R.string.error_geo_block)
                     ))
+                    finishJournal(handle)
                     return
                 } catch (e: Exception) {
-                    handleError(e, onStateUpdate)
+                    if (!enqueueIfOffline(e, preparedFile, languageCode, existingHistoryId, handle, onStateUpdate)) {
+                        handleError(e, handle, onStateUpdate)
+                    }
                     return
                 }
             } else {
@@ -119,65 +210,252 @@ class SpeciesIdentificationManager(
                     isLoading = false,
                     error = application.getString(R.string.error_no_result)
                 ))
+                finishJournal(handle)
             }
         } catch (e: Exception) {
-            handleError(e, onStateUpdate)
+            val preparedFile = imageFile
+            if (preparedFile == null || !enqueueIfOffline(e, preparedFile, languageCode, existingHistoryId, handle, onStateUpdate)) {
+                handleError(e, handle, onStateUpdate)
+            }
         }
     }
 
-    private suspend fun saveToHistory(existingHistoryId: Int?, imageFile: java.io.File) {
-        val currentInfo = currentSpeciesInfo ?: return
+    private suspend fun finishJournal(handle: IdentificationJournal.Handle?) {
+        handle ?: return
+        journal.complete(handle)
+        if (currentJournal === handle) currentJournal = null
+    }
+
+    /**
+     * Nhận diện một lượt trong hàng đợi ngoại tuyến, không cập nhật giao diện.
+     * Trả về ID lịch sử đã ghi, hoặc null nếu không có kết quả hợp lệ.
+     */
+    suspend fun identifyQueued(job: PendingIdentification): Int? {
+        val imageFile = File(job.imagePath)
+        val handle = journal.open(job.imageHash ?: journal.hashOf(imageFile), job.languageCode, job.historyId)
+
+        val scored = scoreImage(imageFile, job.languageCode, inBackground = true, journalHandle = handle)
+        if (scored == null) {
+            journal.complete(handle)
+            return null
+        }
+        // Chi tiết dở dang ném IOException: hàng đợi tính một lần thử và lần sau stream tiếp từ nhật ký
+        val info = describeSpecies(scored, job.languageCode, inBackground = true, journalHandle = handle)
+        return persistResult(info, job.historyId, imageFile).also {
+            journal.complete(handle)
+        }
+    }
+
+    // ==================== CÁC BƯỚC DÙNG CHUNG (HÀNG ĐỢI, NHẬN DIỆN HÀNG LOẠT) ====================
+
+    data class ScoredImage(val scientificName: String, val confidence: Double)
+
+    // Thu nhỏ ảnh về cạnh 1024px và ghi ra file JPEG tạm
+    suspend fun prepareImage(imageUri: Uri): File = withContext(Dispatchers.Default) {
+        ImageUtils.uriToFile(application, imageUri, 1024)
+    }
+
+    // Kết quả score_image tốt nhất, null nếu không nhận ra sinh vật nào; lấy từ nhật ký nếu đã có
+    suspend fun scoreImage(
+        imageFile: File,
+        languageCode: String,
+        inBackground: Boolean = false,
+        journalHandle: IdentificationJournal.Handle? = null
+    ): ScoredImage? {
+        journal.scoreOf(journalHandle)?.let { return it }
 
+        val api = if (inBackground) RetrofitClient.backgroundApi else apiService
+        val response = api.identifySpecies(
+            image = imagePartOf(imageFile),
+            locale = languageCode
+        )
+        val topResult = response.results.firstOrNull() ?: return null
+        return ScoredImage(topResult.taxon.name, topResult.combined_score).also { scored ->
+            journalHandle?.let { journal.recordScore(it, scored.scientificName, scored.confidence) }
+        }
+    }
+
+    // Stream phân loại rồi chi tiết, [onProgress] nhận thông tin loài mỗi khi có thêm trường.
+    // Bước đã có trong nhật ký được dựng lại tại chỗ, chi tiết dở dang được stream tiếp.
+    // Ném IncompleteDetailsException nếu chi tiết chưa nhận đủ, để nơi gọi không ghi kết quả dở dang
+    suspend fun describeSpecies(
+        scored: ScoredImage,
+        languageCode: String,
+        inBackground: Boolean = false,
+        journalHandle: IdentificationJournal.Handle? = null,
+        onProgress: (SpeciesInfo) -> Unit = {}
+    ): SpeciesInfo {
+        val helper = if (inBackground) backgroundStreamingHelper else streamingHelper
+        var info = SpeciesInfo(scientificName = scored.scientificName, confidence = scored.confidence)
+        val onState: (EcoLensUiState) -> Unit = { state ->
+            state.speciesInfo?.let { info = it; onProgress(it) }
+        }
+
+        val journaledTaxonomy = journal.taxonomyOf(journalHandle)
+        if (journaledTaxonomy != null) {
+            info = journaledTaxonomy
+            onProgress(journaledTaxonomy)
+        } else {
+            helper.streamTaxonomy(scored.scientificName, scored.confidence, languageCode, onState)
+            journalHandle?.let { journal.recordTaxonomy(it, info) }
+        }
+
+        if (journalHandle?.entry?.detailsComplete == true) {
+            helper.applyDetails(journalHandle.entry.detailsText, languageCode, info, onState)
+        } else {
+            val completed = helper.streamDetails(
+                scored.scientificName,
+                scored.confidence,
+                languageCode,
+                info,
+                resumeText = journalHandle?.entry?.detailsText.orEmpty(),
+                onText = { text -> journalHandle?.let { journal.recordDetails(it, text) } },
+                onStateUpdate = onState
+            )
+            if (!completed) throw IncompleteDetailsException()
+            journalHandle?.let { journal.recordDetailsComplete(it) }
+        }
+        return info
+    }
+
+    // score_image là phần chậm nhất của mỗi lần nhận diện, cắt đuôi trễ bằng yêu cầu dự phòng.
+    // Lệnh thắng được chọn khi có header, so được với p90 TTFB; body chỉ đọc của lệnh thắng
+    private suspend fun scoreImageHedged(imageFile: File, languageCode: String): ScoredImage? {
+        val response = HedgingPolicy.hedge("score_image", release = { it.body()?.close() }) {
+            val response = apiService.scoreImage(image = imagePartOf(imageFile), locale = languageCode)
+            if (!response.isSuccessful) {
+                response.errorBody()?.close()
+                throw HttpException(response)
+            }
+            response
+        }
+        val body = response.body() ?: return null
+        val identification = withContext(Dispatchers.IO) {
+            body.charStream().use { gson.fromJson(it, IdentificationResponse::class.java) }
+        }
+        val topResult = identification?.results?.firstOrNull() ?: return null
+        return ScoredImage(topResult.taxon.name, topResult.combined_score)
+    }
+
+    private fun imagePartOf(imageFile: File): MultipartBody.Part {
+        val requestFile = imageFile.asRequestBody("image/jpeg".toMediaTypeOrNull())
+        return MultipartBody.Part.createFormData("image", imageFile.name, requestFile)
+    }
+
+    // Lỗi mạng khi không có kết nối: giữ ảnh đã chuẩn bị trong hàng đợi thay vì báo lỗi
+    private suspend fun enqueueIfOffline(
+        e: Exception,
+        preparedFile: File,
+        languageCode: String,
+        existingHistoryId: Int?,
+        handle: IdentificationJournal.Handle?,
+        onStateUpdate: (EcoLensUiState) -> Unit
+    ): Boolean {
+        if (e !is IOException || e is GeoBlockedException || offlineQueue.isOnline()) return false
+
+        return try {
+            // Hàng đợi giữ khóa nhật ký để lượt chạy nền bắt đầu từ bước còn dở
+            offlineQueue.enqueue(preparedFile, languageCode, existingHistoryId, handle?.entry?.imageHash)
+            // Hàng đợi đã có bản sao riêng; lượt này không còn là lượt bị gián đoạn để tiếp tục khi mở lại
+            if (handle != null) {
+                journal.releasePrepared(handle)
+                if (currentJournal === handle) currentJournal = null
+            }
+            onStateUpdate(EcoLensUiState(
+                isLoading = false,
+                error = application.getString(R.string.offline_queued),
+                isQueuedOffline = true
+            ))
+            true
+        } catch (ioe: IOException) {
+            false
+        }
+    }
+
+    private suspend fun saveToHistory(existingHistoryId: Int?, imageFile: File): Int? {
+        val currentInfo = currentSpeciesInfo ?: return null
+        return persistResult(currentInfo, existingHistoryId, imageFile)?.also { currentHistoryEntryId = it }
+    }
+
+    // Ghi kết quả vào lịch sử (cập nhật bản ghi cũ hoặc thêm mới), trả về ID hoặc null nếu kết quả không hợp lệ
+    suspend fun persistResult(currentInfo: SpeciesInfo, existingHistoryId: Int?, imageFile: File): Int? {
         val isValidInfo = currentInfo.commonName.isNotEmpty() &&
                 currentInfo.commonName != "..." &&
                 currentInfo.commonName != "N/A" &&
                 !currentInfo.description.contains("An error occurred", ignoreCase = true) &&
                 !currentInfo.description.contains("Đã xảy ra lỗi", ignoreCase = true)
 
-        if (isValidInfo) {
-            withContext(Dispatchers.IO) {
-                val savedPath = if (existingHistoryId != null) {
-                    historyDao.getHistoryById(existingHistoryId)?.imagePath
-                } else {
-                    ImageUtils.saveBitmapToInternalStorage(application, imageFile)
-                }
+        if (!isValidInfo) return null
 
-                if (savedPath != null) {
-                    if (existingHistoryId != null) {
-                        historyDao.updateSpeciesDetails(
-                            id = existingHistoryId,
-                            commonName = currentInfo.commonName,
-                            scientificName = currentInfo.scientificName,
-                            kingdom = currentInfo.kingdom,
-                            phylum = currentInfo.phylum,
-                            className = currentInfo.className,
-                            taxorder = currentInfo.taxorder,
-                            family = currentInfo.family,
-                            genus = currentInfo.genus,
-                            species = currentInfo.species,
-                            description = currentInfo.description,
-                            characteristics = currentInfo.characteristics,
-                            distribution = currentInfo.distribution,
-                            habitat = currentInfo.habitat,
-                            conservationStatus = currentInfo.conservationStatus,
-                            confidence = currentInfo.confidence,
-                            timestamp = System.currentTimeMillis()
-                        )
-                        currentHistoryEntryId = existingHistoryId
-                    } else {
-                        val newId = historyDao.insert(HistoryEntry(
-                            imagePath = savedPath,
-                            speciesInfo = currentInfo,
-                            timestamp = System.currentTimeMillis()
-                        ))
-                        currentHistoryEntryId = newId.toInt()
-                    }
-                }
+        return storageSettings.withWriteLock { compressionEnabled ->
+            writeHistory(currentInfo, existingHistoryId, imageFile, compressionEnabled)
+        }
+    }
+
+    private suspend fun writeHistory(
+        currentInfo: SpeciesInfo,
+        existingHistoryId: Int?,
+        imageFile: File,
+        compressionEnabled: Boolean
+    ): Int? {
+        val compressedDetails = if (compressionEnabled) {
+            withContext(Dispatchers.Default) { SpeciesDetailsCodec.encode(currentInfo) }
+        } else {
+            null
+        }
+        val storedInfo = if (compressedDetails != null) SpeciesDetailsCodec.stripDetails(currentInfo) else currentInfo
+
+        return withContext(Dispatchers.IO) {
+            val savedPath = if (existingHistoryId != null) {
+                historyDao.getHistoryById(existingHistoryId)?.imagePath
+            } else {
+                ImageUtils.saveBitmapToInternalStorage(application, imageFile)
+            }
+
+            if (savedPath == null) return@withContext null
+
+            if (existingHistoryId != null) {
+                historyDao.updateSpeciesDetails(
+                    id = existingHistoryId,
+                    commonName = currentInfo.commonName,
+                    scientificName = currentInfo.scientificName,
+                    kingdom = currentInfo.kingdom,
+                    phylum = currentInfo.phylum,
+                    className = currentInfo.className,
+                    taxorder = currentInfo.taxorder,
+                    family = currentInfo.family,
+                    genus = currentInfo.genus,
+                    species = currentInfo.species,
+                    description = storedInfo.description,
+                    characteristics = storedInfo.characteristics,
+                    distribution = storedInfo.distribution,
+                    habitat = storedInfo.habitat,
+                    conservationStatus = storedInfo.conservationStatus,
+                    compressedDetails = compressedDetails,
+                    confidence = currentInfo.confidence,
+                    timestamp = System.currentTimeMillis()
+                )
+                existingHistoryId
+            } else {
+                historyDao.insert(HistoryEntry(
+                    imagePath = savedPath,
+                    speciesInfo = storedInfo,
+                    timestamp = System.currentTimeMillis(),
+                    compressedDetails = compressedDetails
+                )).toInt()
             }
         }
     }
 
-    private fun handleError(e: Exception, onStateUpdate: (EcoLensUiState) -> Unit) {
+    // Lỗi: giữ các bước đã xong trong nhật ký cho lần thử lại, nhưng bỏ bản sao ảnh để lượt này
+    // không bị coi là gián đoạn và chạy lại khi mở ứng dụng. Lượt bị hủy thì giữ nguyên để tiếp tục
+    private suspend fun handleError(
+        e: Exception,
+        handle: IdentificationJournal.Handle?,
+        onStateUpdate: (EcoLensUiState) -> Unit
+    ) {
+        if (e is CancellationException) throw e
+        handle?.let { journal.releasePrepared(it) }
         val errorMsg = when {
             e.message?.contains("429") == true ->
                 application.getString(R.string.error_quota_exceeded)
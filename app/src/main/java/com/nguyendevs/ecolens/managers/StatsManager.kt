@@ -0,0 +1,37 @@
+package com.nguyendevs.ecolens.managers
+
+import android.util.Log
+import com.nguyendevs.ecolens.database.StatsDao
+import com.nguyendevs.ecolens.model.KingdomSightingStat
+import com.nguyendevs.ecolens.model.MonthlySightingStat
+import com.nguyendevs.ecolens.model.TaxonSightingStat
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.withContext
+
+class StatsManager(private val statsDao: StatsDao) {
+
+    companion object {
+        private const val TOP_FAMILY_LIMIT = 10
+    }
+
+    val totalSightings: Flow<Int> = statsDao.getTotalSightings()
+    val monthlyStats: Flow<List<MonthlySightingStat>> = statsDao.getMonthlyStats()
+    val kingdomStats: Flow<List<KingdomSightingStat>> = statsDao.getKingdomStats()
+    val topFamilyStats: Flow<List<TaxonSightingStat>> = statsDao.getTopFamilyStats(TOP_FAMILY_LIMIT)
+
+    // So khớp bảng thống kê với history_table, xây lại nếu lệch
+    suspend fun verifyStats(): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val mismatched = statsDao.countInconsistentBuckets()
+            if (mismatched > 0) {
+                Log.w("StatsManager", "Rebuilding stats, $mismatched inconsistent buckets")
+                statsDao.rebuildStats()
+            }
+            mismatched == 0
+        } catch (e: Exception) {
+            Log.e("StatsManager", "Stats verification failed: ${e.message}", e)
+            false
+        }
+    }
+}
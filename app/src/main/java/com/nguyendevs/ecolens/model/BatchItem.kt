@@ -0,0 +1,29 @@
+package com.nguyendevs.ecolens.model
+
+import android.net.Uri
+
+// Trạng thái của từng ảnh trong một lượt nhận diện hàng loạt
+data class BatchItem(
+    val index: Int,
+    val imageUri: Uri,
+    val stage: BatchStage = BatchStage.WAITING,
+    val scientificName: String? = null,
+    val commonName: String? = null,
+    val historyId: Int? = null,
+    val error: String? = null
+)
+
+enum class BatchStage {
+    WAITING,
+    DECODING,
+    UPLOADING,
+    DESCRIBING,
+    RETRYING,
+    DONE,
+    NO_RESULT,
+    QUEUED_OFFLINE,
+    FAILED;
+
+    val isFinished: Boolean
+        get() = this == DONE || this == NO_RESULT || this == QUEUED_OFFLINE || this == FAILED
+}
@@ -13,13 +13,15 @@ import androidx.room.PrimaryKey
         childColumns = ["sessionId"],
         onDelete = ForeignKey.CASCADE
     )],
-    indices = [Index("sessionId")]
+    indices = [Index(value = ["sessionId", "timestamp", "id"])]
 )
 data class ChatMessage(
     @PrimaryKey(autoGenerate = true)
     val id: Long = 0,
     val sessionId: Long,
     val content: String,
+    // Markdown gốc của tin nhắn trợ lý; content là HTML đã render để hiển thị
+    val rawContent: String? = null,
     val isUser: Boolean,
     val timestamp: Long = System.currentTimeMillis(),
     val isLoading: Boolean = false,
@@ -0,0 +1,18 @@
+package com.nguyendevs.ecolens.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+import androidx.room.PrimaryKey
+
+// Chỉ mục toàn văn của chat_messages, rowid trùng với id tin nhắn
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61, notIndexed = ["sessionId"])
+@Entity(tableName = "chat_messages_fts")
+data class ChatMessageFts(
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    val rowId: Long,
+    val sessionId: Long,
+    val content: String
+)
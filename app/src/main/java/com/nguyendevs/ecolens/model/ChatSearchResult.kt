@@ -0,0 +1,27 @@
+package com.nguyendevs.ecolens.model
+
+data class ChatSearchResult(
+    val messageId: Long,
+    val sessionId: Long,
+    val sessionTitle: String,
+    val snippet: String,
+    val isUser: Boolean,
+    val timestamp: Long
+)
+
+// Một tin khớp kèm matchinfo, dùng để xếp hạng trước khi lấy snippet
+class ChatSearchCandidate(
+    val messageId: Long,
+    val timestamp: Long,
+    val matchInfo: ByteArray
+)
+
+// Dòng thô trả về từ truy vấn FTS cho các tin đã được chọn sau khi xếp hạng
+class ChatSearchRow(
+    val messageId: Long,
+    val sessionId: Long,
+    val sessionTitle: String,
+    val snippet: String,
+    val isUser: Boolean,
+    val timestamp: Long
+)
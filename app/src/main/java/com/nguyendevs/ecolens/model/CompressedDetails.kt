@@ -0,0 +1,11 @@
+package com.nguyendevs.ecolens.model
+
+// Phần chi tiết loài đã nén (deflate), chỉ giải nén khi màn hình chi tiết cần
+class CompressedDetails(val bytes: ByteArray) {
+
+    override fun equals(other: Any?): Boolean {
+        return other is CompressedDetails && bytes.contentEquals(other.bytes)
+    }
+
+    override fun hashCode(): Int = bytes.contentHashCode()
+}
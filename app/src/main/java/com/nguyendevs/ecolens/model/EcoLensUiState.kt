@@ -4,7 +4,8 @@ data class EcoLensUiState(
     val isLoading: Boolean = false,
     val speciesInfo: SpeciesInfo? = null,
     val error: String? = null,
-    val loadingStage: LoadingStage = LoadingStage.NONE
+    val loadingStage: LoadingStage = LoadingStage.NONE,
+    val isQueuedOffline: Boolean = false
 )
 
 enum class LoadingStage {
@@ -10,5 +10,6 @@ data class HistoryEntry(
     val imagePath: String,
     @Embedded val speciesInfo: SpeciesInfo,
     val timestamp: Long,
-    val isFavorite: Boolean = false
+    val isFavorite: Boolean = false,
+    val compressedDetails: CompressedDetails? = null
 )
\ No newline at end of file
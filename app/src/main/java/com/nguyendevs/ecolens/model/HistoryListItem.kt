@@ -0,0 +1,48 @@
+package com.nguyendevs.ecolens.model
+
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.TimeZone
+
+// Một dòng lịch sử đã tính sẵn nhóm theo ngày, dựng ngoài luồng chính
+data class HistoryListItem(
+    val entry: HistorySummary,
+    val dayKey: Long,
+    val isFirstOfDay: Boolean,
+    val isLastOfDay: Boolean,
+    val dateLabel: String,
+    val timeLabel: String
+) {
+    companion object {
+        private const val DAY_MILLIS = 24 * 60 * 60 * 1000L
+
+        fun build(entries: List<HistorySummary>): List<HistoryListItem> {
+            val timeZone = TimeZone.getDefault()
+            val dateFormatter = SimpleDateFormat("dd/MM/yyyy", Locale.getDefault()).apply { this.timeZone = timeZone }
+            val timeFormatter = SimpleDateFormat("HH:mm", Locale.getDefault()).apply { this.timeZone = timeZone }
+
+            val dayKeys = LongArray(entries.size) { index ->
+                val timestamp = entries[index].timestamp
+                Math.floorDiv(timestamp + timeZone.getOffset(timestamp), DAY_MILLIS)
+            }
+
+            var dateLabel = ""
+            return entries.mapIndexed { index, entry ->
+                val dayKey = dayKeys[index]
+                val isFirstOfDay = index == 0 || dayKeys[index - 1] != dayKey
+                val isLastOfDay = index == entries.lastIndex || dayKeys[index + 1] != dayKey
+                if (isFirstOfDay) dateLabel = dateFormatter.format(Date(entry.timestamp))
+
+                HistoryListItem(
+                    entry = entry,
+                    dayKey = dayKey,
+                    isFirstOfDay = isFirstOfDay,
+                    isLastOfDay = isLastOfDay,
+                    dateLabel = dateLabel,
+                    timeLabel = timeFormatter.format(Date(entry.timestamp))
+                )
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.nguyendevs.ecolens.model
+
+// Các cột màn hình danh sách lịch sử cần; không đọc chi tiết loài và BLOB compressedDetails
+data class HistorySummary(
+    val id: Int,
+    val imagePath: String,
+    val commonName: String,
+    val scientificName: String,
+    val timestamp: Long,
+    val isFavorite: Boolean
+)
@@ -0,0 +1,18 @@
+package com.nguyendevs.ecolens.model
+
+import androidx.room.Entity
+
+// Nhật ký các bước đã xong của một lượt nhận diện, khóa theo SHA-256 của ảnh và ngôn ngữ
+@Entity(tableName = "identification_journal", primaryKeys = ["imageHash", "languageCode"])
+data class IdentificationJournalEntry(
+    val imageHash: String,
+    val languageCode: String,
+    val historyId: Int? = null,
+    val preparedPath: String? = null,
+    val scientificName: String? = null,
+    val confidence: Double? = null,
+    val taxonomyJson: String? = null,
+    val detailsText: String = "",
+    val detailsComplete: Boolean = false,
+    val updatedAt: Long
+)
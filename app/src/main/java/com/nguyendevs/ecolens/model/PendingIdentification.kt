@@ -0,0 +1,18 @@
+package com.nguyendevs.ecolens.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// Lượt nhận diện chờ gửi khi mất mạng; imagePath trỏ tới ảnh đã thu nhỏ sẵn để tải lên,
+// imageHash là khóa nhật ký của lượt gốc để không làm lại các bước đã xong
+@Entity(tableName = "pending_identifications")
+data class PendingIdentification(
+    @PrimaryKey(autoGenerate = true) val id: Long = 0,
+    val imagePath: String,
+    val languageCode: String,
+    val historyId: Int? = null,
+    val imageHash: String? = null,
+    val createdAt: Long,
+    val attempts: Int = 0,
+    val lastError: String? = null
+)
@@ -0,0 +1,24 @@
+package com.nguyendevs.ecolens.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// Số lần nhận diện theo tháng (yyyy-MM), được trigger trên history_table duy trì
+@Entity(tableName = "stats_monthly")
+data class MonthlySightingStat(
+    @PrimaryKey val month: String,
+    val count: Int
+)
+
+// Số lần nhận diện theo giới/họ (đã bỏ thẻ HTML), được trigger duy trì
+@Entity(tableName = "stats_taxon", primaryKeys = ["kingdom", "family"])
+data class TaxonSightingStat(
+    val kingdom: String,
+    val family: String,
+    val count: Int
+)
+
+data class KingdomSightingStat(
+    val kingdom: String,
+    val count: Int
+)
@@ -0,0 +1,66 @@
+package com.nguyendevs.ecolens.network
+
+import android.util.Log
+import androidx.lifecycle.DefaultLifecycleObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.lifecycleScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.Request
+
+/**
+ * Làm nóng kết nối tới worker khi màn hình chụp ảnh đang mở: phân giải DNS, bắt tay TCP/TLS
+ * và giữ một kết nối HTTP/2 trong ConnectionPool dùng chung, làm mới định kỳ trước khi hết hạn rảnh,
+ * để lần tải ảnh nhận diện đi thẳng trên kết nối đã sẵn sàng.
+ */
+class ConnectionWarmer : DefaultLifecycleObserver {
+
+    companion object {
+        private const val TAG = "ConnectionWarmer"
+
+        // Ngắn hơn thời gian giữ kết nối rảnh của pool và của máy chủ
+        private const val REFRESH_INTERVAL_MS = 45_000L
+    }
+
+    private var warmJob: Job? = null
+
+    override fun onStart(owner: LifecycleOwner) {
+        warmJob?.cancel()
+        warmJob = owner.lifecycleScope.launch {
+            while (isActive) {
+                warmUp()
+                delay(REFRESH_INTERVAL_MS)
+            }
+        }
+    }
+
+    override fun onStop(owner: LifecycleOwner) {
+        warmJob?.cancel()
+        warmJob = null
+    }
+
+    private suspend fun warmUp() = withContext(Dispatchers.IO) {
+        try {
+            val baseUrl = RetrofitClient.workerBaseUrl.toHttpUrl()
+            val client = RetrofitClient.warmupClient
+
+            // Đưa địa chỉ worker vào bộ đệm DNS trước khi mở kết nối
+            client.dns.lookup(baseUrl.host)
+
+            val request = Request.Builder()
+                .url(baseUrl)
+                .head()
+                .build()
+
+            // Mã phản hồi không quan trọng, chỉ cần kết nối được trả về pool
+            client.newCall(request).execute().close()
+        } catch (e: Exception) {
+            Log.w(TAG, "Không làm nóng được kết nối: ${e.message}")
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.nguyendevs.ecolens.network
+
+import android.util.Log
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.RequestBody
+import okhttp3.Response
+import okio.BufferedSink
+import okio.GzipSink
+import okio.buffer
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Nén gzip body JSON gửi lên Worker (lịch sử chat dài là phần lớn dung lượng tải lên mỗi lượt).
+ * Mặc định gửi không nén; chỉ bật nén cho một host sau khi phản hồi của host đó quảng bá
+ * `Accept-Encoding: gzip` (RFC 7694). Nếu lệnh nén đầu tiên nhận lỗi 4xx/5xx (hoặc bất kỳ lúc nào
+ * nhận 415), coi như Worker không hỗ trợ: gửi lại bản không nén và tắt nén cho host đó một thời gian.
+ * Đặt trước HMACInterceptor để lần gửi lại được ký với request ID mới.
+ */
+class GzipRequestInterceptor : Interceptor {
+
+    companion object {
+        private const val TAG = "GzipRequest"
+
+        private const val HTTP_UNSUPPORTED_MEDIA_TYPE = 415
+
+        // Thử nhận quảng bá lại sau khoảng này, phòng khi Worker được cập nhật
+        private const val RETRY_AFTER_MS = 60 * 60 * 1000L
+    }
+
+    // ADVERTISED: host đã quảng bá gzip nhưng chưa có lệnh nén nào thành công
+    private enum class GzipSupport { ADVERTISED, CONFIRMED }
+
+    private val supportedHosts = ConcurrentHashMap<String, GzipSupport>()
+
+    // host -> thời điểm được bật nén lại
+    private val disabledHosts = ConcurrentHashMap<String, Long>()
+
+    private class GzipRequestBody(private val body: RequestBody) : RequestBody() {
+
+        override fun contentType(): MediaType? = body.contentType()
+
+        override fun contentLength(): Long = -1L
+
+        override fun isOneShot(): Boolean = body.isOneShot()
+
+        override fun writeTo(sink: BufferedSink) {
+            val gzipSink = GzipSink(sink).buffer()
+            body.writeTo(gzipSink)
+            gzipSink.close()
+        }
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val host = request.url.host
+        val body = request.body
+        if (body == null || !shouldCompress(request)) {
+            return chain.proceed(request).also { learn(host, it) }
+        }
+
+        val compressed = request.newBuilder()
+            .header("Content-Encoding", "gzip")
+            .method(request.method, GzipRequestBody(body))
+            .build()
+        val response = chain.proceed(compressed)
+
+        val rejected = response.code == HTTP_UNSUPPORTED_MEDIA_TYPE ||
+            (response.code >= 400 && supportedHosts[host] != GzipSupport.CONFIRMED)
+        if (rejected) {
+            Log.w(TAG, "Compressed request to $host failed with ${response.code}, disabling gzip")
+            supportedHosts.remove(host)
+            disabledHosts[host] = System.currentTimeMillis() + RETRY_AFTER_MS
+            if (body.isOneShot()) return response
+            response.close()
+            return chain.proceed(request)
+        }
+
+        if (response.isSuccessful) supportedHosts[host] = GzipSupport.CONFIRMED
+        learn(host, response)
+        return response
+    }
+
+    // Cập nhật trạng thái theo header Accept-Encoding của phản hồi (nếu có)
+    private fun learn(host: String, response: Response) {
+        val accepted = response.header("Accept-Encoding") ?: return
+        if (!accepted.contains("gzip", ignoreCase = true)) {
+            supportedHosts.remove(host)
+            return
+        }
+        val disabledUntil = disabledHosts[host]
+        if (disabledUntil != null) {
+            if (System.currentTimeMillis() < disabledUntil) return
+            disabledHosts.remove(host)
+        }
+        supportedHosts.putIfAbsent(host, GzipSupport.ADVERTISED)
+    }
+
+    // Chỉ nén body JSON (ảnh JPEG multipart đã nén sẵn) gửi lên Worker đã quảng bá gzip
+    private fun shouldCompress(request: Request): Boolean {
+        val body = request.body ?: return false
+        if (request.header("Content-Encoding") != null) return false
+        if (body.contentType()?.subtype != "json") return false
+
+        val host = request.url.host
+        if (!host.contains("workers.dev")) return false
+        return supportedHosts.containsKey(host)
+    }
+}
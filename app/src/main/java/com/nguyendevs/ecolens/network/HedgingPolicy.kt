@@ -0,0 +1,101 @@
+package com.nguyendevs.ecolens.network
+
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Gửi yêu cầu dự phòng (hedged request): nếu lệnh gọi chưa có header phản hồi sau p90 thời gian
+ * tới byte đầu tiên gần đây của endpoint, gửi thêm một lệnh giống hệt; lệnh nào có phản hồi trước
+ * được dùng, lệnh còn lại bị hủy. Lệnh gọi truyền vào phải trả về ngay khi có header (vd.
+ * `@Streaming Response<ResponseBody>`) và đọc body sau, để so được với TTFB.
+ * Mặc định tắt; ngân sách toàn cục giữ lượng gọi thêm dưới [budgetPercent]%.
+ */
+object HedgingPolicy {
+
+    private const val HEDGE_PERCENTILE = 90
+    private const val MIN_SAMPLES = 10
+    private const val MIN_DELAY_MS = 500L
+    private const val MAX_DELAY_MS = 10_000L
+
+    // Cho phép dồn tối đa vài lần gọi thêm khi mạng xấu liên tiếp
+    private const val MAX_BUDGET_TOKENS = 3.0
+
+    @Volatile
+    var enabled = false
+
+    @Volatile
+    var budgetPercent = 10
+
+    private var budgetTokens = 1.0
+
+    // [release] đóng kết quả của lệnh thua (vd. body phản hồi chưa đọc)
+    suspend fun <T> hedge(endpoint: String, release: (T) -> Unit = {}, call: suspend () -> T): T {
+        earnBudget()
+        val delayMs = hedgeDelayMs(endpoint) ?: return call()
+        return hedgeAfter(delayMs, release, call)
+    }
+
+    internal suspend fun <T> hedgeAfter(delayMs: Long, release: (T) -> Unit, call: suspend () -> T): T {
+        return coroutineScope {
+            val results = Channel<Result<T>>(capacity = 2)
+            val primary = launch { results.send(runCatching { call() }) }
+            var hedged: Job? = null
+            var outstanding = 1
+
+            var result = withTimeoutOrNull(delayMs) { results.receive() }
+            if (result == null) {
+                if (trySpendBudget()) {
+                    hedged = launch { results.send(runCatching { call() }) }
+                    outstanding++
+                }
+                result = results.receive()
+            }
+            outstanding--
+
+            // Một lệnh lỗi thì chờ lệnh còn lại trước khi báo lỗi
+            while (result!!.isFailure && outstanding > 0) {
+                result = results.receive()
+                outstanding--
+            }
+
+            primary.cancel()
+            hedged?.cancel()
+            primary.join()
+            hedged?.join()
+
+            // Lệnh thua có thể đã kịp trả về trước khi bị hủy
+            while (true) {
+                val leftover = results.tryReceive().getOrNull() ?: break
+                leftover.getOrNull()?.let(release)
+            }
+            result.getOrThrow()
+        }
+    }
+
+    private fun hedgeDelayMs(endpoint: String): Long? {
+        if (!enabled || budgetPercent <= 0) return null
+        val p90 = NetworkMetrics.ttfbPercentile(endpoint, HEDGE_PERCENTILE, MIN_SAMPLES) ?: return null
+        return p90.coerceIn(MIN_DELAY_MS, MAX_DELAY_MS)
+    }
+
+    @Synchronized
+    private fun earnBudget() {
+        budgetTokens = minOf(MAX_BUDGET_TOKENS, budgetTokens + budgetPercent / 100.0)
+    }
+
+    @Synchronized
+    private fun trySpendBudget(): Boolean {
+        if (budgetTokens < 1.0) return false
+        budgetTokens -= 1.0
+        return true
+    }
+
+    // Chỉ dùng trong test
+    @Synchronized
+    internal fun resetBudget(tokens: Double = 1.0) {
+        budgetTokens = tokens
+    }
+}
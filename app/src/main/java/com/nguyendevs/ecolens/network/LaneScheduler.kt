@@ -0,0 +1,128 @@
+package com.nguyendevs.ecolens.network
+
+import okhttp3.Call
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okio.BufferedSource
+import okio.ForwardingSource
+import okio.buffer
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+// Mỗi làn có Dispatcher riêng với giới hạn số lệnh gọi đồng thời
+enum class RequestLane(val maxRequests: Int) {
+    FOREGROUND(4),
+    STREAMING(4),
+    BACKGROUND(2)
+}
+
+/**
+ * Ưu tiên lệnh gọi của người dùng (nhận diện, stream đang hiển thị) hơn công việc nền:
+ * khi một lệnh tiền cảnh bắt đầu, mọi lệnh nền đang chạy bị hủy, và lệnh nền mới
+ * chờ tới khi không còn lệnh tiền cảnh nào đang chạy. Một lệnh gọi được tính là đang chạy
+ * tới khi body phản hồi được đóng, không chỉ tới khi có header. Nơi gọi nền tự xếp lại việc bị hủy.
+ */
+object LaneScheduler {
+
+    private const val WAIT_SLICE_MS = 250L
+
+    // Cả hai chỉ được đọc/ghi khi giữ [lock], để lệnh nền không lọt vào giữa lúc kiểm tra và đăng ký
+    private var activeForeground = 0
+    private val backgroundCalls = mutableSetOf<Call>()
+    private val lock = ReentrantLock()
+    private val foregroundIdle = lock.newCondition()
+
+    // Tăng mỗi khi lệnh tiền cảnh hủy lệnh nền; nơi gọi nền so sánh trước/sau để biết lỗi là do bị nhường lượt
+    @Volatile
+    var preemptionCount = 0
+        private set
+
+    fun interceptor(lane: RequestLane): Interceptor = Interceptor { chain ->
+        val call = chain.call()
+        val release = if (lane == RequestLane.BACKGROUND) registerBackground(call) else registerForeground()
+
+        val response = try {
+            chain.proceed(chain.request())
+        } catch (e: Throwable) {
+            release()
+            throw e
+        }
+        trackUntilClosed(response, release)
+    }
+
+    // Trả về hàm giải phóng lượt, gọi đúng một lần khi lệnh gọi kết thúc
+    private fun registerForeground(): () -> Unit {
+        lock.withLock {
+            activeForeground++
+            if (backgroundCalls.isNotEmpty()) preemptionCount++
+            backgroundCalls.forEach { it.cancel() }
+        }
+        return ::releaseForeground
+    }
+
+    private fun releaseForeground() {
+        lock.withLock {
+            activeForeground--
+            if (activeForeground == 0) foregroundIdle.signalAll()
+        }
+    }
+
+    private fun registerBackground(call: Call): () -> Unit {
+        lock.withLock {
+            while (activeForeground > 0) {
+                if (call.isCanceled()) throw IOException("Canceled")
+                foregroundIdle.await(WAIT_SLICE_MS, TimeUnit.MILLISECONDS)
+            }
+            backgroundCalls.add(call)
+        }
+        return { lock.withLock { backgroundCalls.remove(call) } }
+    }
+
+    // Giải phóng lượt của lệnh gọi khi body được đóng (đọc hết, hủy hoặc lỗi giữa chừng)
+    private fun trackUntilClosed(response: Response, release: () -> Unit): Response {
+        val body = response.body ?: return response.also { release() }
+        return response.newBuilder()
+            .body(TrackedResponseBody(body, release))
+            .build()
+    }
+
+    private class TrackedResponseBody(
+        private val delegate: ResponseBody,
+        onClose: () -> Unit
+    ) : ResponseBody() {
+
+        private val released = AtomicBoolean(false)
+        private val release = { if (released.compareAndSet(false, true)) onClose() }
+
+        private val trackedSource: BufferedSource by lazy {
+            object : ForwardingSource(delegate.source()) {
+                override fun close() {
+                    try {
+                        super.close()
+                    } finally {
+                        release()
+                    }
+                }
+            }.buffer()
+        }
+
+        override fun contentType(): MediaType? = delegate.contentType()
+
+        override fun contentLength(): Long = delegate.contentLength()
+
+        override fun source(): BufferedSource = trackedSource
+
+        override fun close() {
+            try {
+                delegate.close()
+            } finally {
+                release()
+            }
+        }
+    }
+}
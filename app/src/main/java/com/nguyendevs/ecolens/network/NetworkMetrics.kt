@@ -0,0 +1,101 @@
+package com.nguyendevs.ecolens.network
+
+import com.google.gson.Gson
+
+/**
+ * Bộ đệm vòng trong bộ nhớ chứa thời gian của các lệnh gọi mạng gần nhất,
+ * kèm thống kê phân vị (p50/p95/p99) theo từng endpoint và xuất dạng JSON lines.
+ */
+object NetworkMetrics {
+
+    private const val CAPACITY = 256
+
+    data class CallTiming(
+        val endpoint: String,
+        val method: String,
+        val startedAt: Long,
+        val dnsMs: Long?,
+        val connectMs: Long?,
+        val tlsMs: Long?,
+        val uploadMs: Long?,
+        val ttfbMs: Long?,
+        val totalMs: Long,
+        val requestBytes: Long,
+        val responseCode: Int?,
+        val success: Boolean
+    )
+
+    data class Percentiles(val p50: Long, val p95: Long, val p99: Long)
+
+    data class EndpointSummary(
+        val endpoint: String,
+        val count: Int,
+        val failures: Int,
+        val total: Percentiles,
+        val ttfb: Percentiles?,
+        val upload: Percentiles?,
+        val connect: Percentiles?
+    )
+
+    private val buffer = arrayOfNulls<CallTiming>(CAPACITY)
+    private var nextIndex = 0
+    private var size = 0
+    private val gson = Gson()
+
+    @Synchronized
+    fun record(timing: CallTiming) {
+        buffer[nextIndex] = timing
+        nextIndex = (nextIndex + 1) % CAPACITY
+        if (size < CAPACITY) size++
+    }
+
+    // Theo thứ tự thời gian, cũ nhất trước
+    @Synchronized
+    fun snapshot(): List<CallTiming> {
+        val start = (nextIndex - size + CAPACITY) % CAPACITY
+        return List(size) { buffer[(start + it) % CAPACITY]!! }
+    }
+
+    @Synchronized
+    fun clear() {
+        buffer.fill(null)
+        nextIndex = 0
+        size = 0
+    }
+
+    fun summaries(): List<EndpointSummary> {
+        return snapshot().groupBy { it.endpoint }.map { (endpoint, calls) ->
+            EndpointSummary(
+                endpoint = endpoint,
+                count = calls.size,
+                failures = calls.count { !it.success },
+                total = percentiles(calls.map { it.totalMs })!!,
+                ttfb = percentiles(calls.mapNotNull { it.ttfbMs }),
+                upload = percentiles(calls.mapNotNull { it.uploadMs }),
+                connect = percentiles(calls.mapNotNull { it.connectMs })
+            )
+        }.sortedByDescending { it.count }
+    }
+
+    // Phân vị thời gian tới byte đầu tiên của các lệnh gọi thành công gần đây; null nếu chưa đủ mẫu
+    fun ttfbPercentile(endpoint: String, percentile: Int, minSamples: Int): Long? {
+        val values = snapshot().filter { it.endpoint == endpoint && it.success }.mapNotNull { it.ttfbMs }
+        if (values.size < minSamples) return null
+        return rank(values.sorted(), percentile)
+    }
+
+    fun toJsonLines(): String {
+        return snapshot().joinToString(separator = "\n", postfix = "\n") { gson.toJson(it) }
+    }
+
+    // Phân vị theo hạng gần nhất trên danh sách đã sắp xếp
+    private fun percentiles(values: List<Long>): Percentiles? {
+        if (values.isEmpty()) return null
+        val sorted = values.sorted()
+        return Percentiles(rank(sorted, 50), rank(sorted, 95), rank(sorted, 99))
+    }
+
+    private fun rank(sorted: List<Long>, percentile: Int): Long {
+        return sorted[((percentile * sorted.size + 99) / 100 - 1).coerceIn(0, sorted.lastIndex)]
+    }
+}
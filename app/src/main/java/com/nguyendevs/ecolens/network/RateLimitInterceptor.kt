@@ -0,0 +1,51 @@
+package com.nguyendevs.ecolens.network
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.io.IOException
+
+/**
+ * Đặt ngoài cùng chuỗi interceptor để mỗi lần gửi lại đều được ký HMAC mới.
+ * Lệnh gọi chờ theo [RateLimitScheduler], gặp 429 hoặc hết key thì tự xếp hàng gửi lại;
+ * chỉ khi hết số lần thử mới trả phản hồi lỗi về cho nơi gọi qua [onGiveUp].
+ */
+class RateLimitInterceptor(private val onGiveUp: (Response) -> Unit) : Interceptor {
+
+    companion object {
+        private const val MAX_RETRIES = 3
+        private const val MAX_WAIT_MS = 90_000L
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val group = RateLimitScheduler.groupOf(request.url) ?: return chain.proceed(request)
+
+        val sentSignal = request.tag(RequestSentSignal::class.java)
+        var attempt = 0
+        while (true) {
+            // Đang chờ trong hàng: nơi gọi chưa tính hạn chờ byte đầu tiên
+            sentSignal?.markQueued()
+            if (!RateLimitScheduler.acquire(group, MAX_WAIT_MS) { chain.call().isCanceled() }) {
+                throw IOException(if (chain.call().isCanceled()) "Canceled" else "Rate limit wait exceeded")
+            }
+
+            val response = try {
+                chain.proceed(request)
+            } catch (e: IOException) {
+                RateLimitScheduler.onFailure(group)
+                throw e
+            }
+            RateLimitScheduler.onResponse(group, response)
+
+            val isThrottled = response.code == 429 || response.header("X-Gemini-All-Failed") == "true"
+            if (!isThrottled) return response
+            if (attempt >= MAX_RETRIES || request.body?.isOneShot() == true) {
+                onGiveUp(response)
+                return response
+            }
+
+            response.close()
+            attempt++
+        }
+    }
+}
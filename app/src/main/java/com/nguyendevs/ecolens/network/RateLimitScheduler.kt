@@ -0,0 +1,130 @@
+package com.nguyendevs.ecolens.network
+
+import okhttp3.HttpUrl
+import okhttp3.Response
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Điều phối lệnh gọi Gemini/iNaturalist phía client: mỗi nhóm có một token bucket,
+ * bị chặn tới hết cửa sổ X-RateLimit-Reset khi gặp 429, và một cầu dao (circuit breaker)
+ * mở ra khi worker báo X-Gemini-All-Failed. Lệnh gọi chờ trong hàng thay vì thất bại,
+ * rồi tự chạy tiếp khi có token hoặc cầu dao cho phép thử lại.
+ */
+object RateLimitScheduler {
+
+    const val GROUP_GEMINI = "gemini"
+    const val GROUP_INATURALIST = "inaturalist"
+
+    private const val BUCKET_CAPACITY = 10
+    private const val REFILL_PER_SECOND = 1.0
+    private const val DEFAULT_RESET_SECONDS = 10L
+    private const val BREAKER_BASE_COOLDOWN_MS = 30_000L
+    private const val BREAKER_MAX_COOLDOWN_MS = 5 * 60_000L
+    private const val WAIT_SLICE_MS = 250L
+
+    private class Bucket {
+        var tokens = BUCKET_CAPACITY.toDouble()
+        var lastRefillMs = System.currentTimeMillis()
+        var blockedUntilMs = 0L
+
+        // Cầu dao: số lần liên tiếp hết key, thời điểm được thử lại và lệnh thử đang chạy
+        var breakerFailures = 0
+        var breakerOpenUntilMs = 0L
+        var probeInFlight = false
+    }
+
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+    private val buckets = HashMap<String, Bucket>()
+
+    fun groupOf(url: HttpUrl): String? {
+        val path = url.encodedPath
+        return when {
+            path.contains("/gemini") -> GROUP_GEMINI
+            path.contains("/inaturalist/") -> GROUP_INATURALIST
+            else -> null
+        }
+    }
+
+    // Chờ tới khi được phép gửi; trả về false nếu lệnh gọi bị hủy hoặc chờ quá maxWaitMs
+    fun acquire(group: String, maxWaitMs: Long, isCanceled: () -> Boolean): Boolean {
+        val deadline = System.currentTimeMillis() + maxWaitMs
+        lock.withLock {
+            val bucket = buckets.getOrPut(group) { Bucket() }
+            while (true) {
+                if (isCanceled()) return false
+
+                val now = System.currentTimeMillis()
+                refill(bucket, now)
+                val waitMs = waitTime(bucket, now)
+                if (waitMs == 0L) {
+                    bucket.tokens -= 1.0
+                    if (bucket.breakerFailures > 0) bucket.probeInFlight = true
+                    return true
+                }
+
+                val remaining = deadline - now
+                if (remaining <= 0) return false
+                changed.await(minOf(waitMs, remaining, WAIT_SLICE_MS), TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    fun onResponse(group: String, response: Response) {
+        lock.withLock {
+            val bucket = buckets.getOrPut(group) { Bucket() }
+            val now = System.currentTimeMillis()
+
+            response.header("X-RateLimit-Remaining")?.toIntOrNull()?.let { remaining ->
+                bucket.tokens = minOf(bucket.tokens, remaining.toDouble())
+            }
+
+            if (response.code == 429) {
+                val resetSeconds = response.header("X-RateLimit-Reset")?.toLongOrNull() ?: DEFAULT_RESET_SECONDS
+                bucket.tokens = 0.0
+                bucket.blockedUntilMs = maxOf(bucket.blockedUntilMs, now + resetSeconds * 1000)
+            }
+
+            if (response.header("X-Gemini-All-Failed") == "true") {
+                bucket.breakerFailures++
+                val cooldown = (BREAKER_BASE_COOLDOWN_MS shl (bucket.breakerFailures - 1).coerceAtMost(4))
+                    .coerceAtMost(BREAKER_MAX_COOLDOWN_MS)
+                bucket.breakerOpenUntilMs = now + cooldown
+            } else if (response.isSuccessful) {
+                bucket.breakerFailures = 0
+                bucket.breakerOpenUntilMs = 0L
+            }
+            bucket.probeInFlight = false
+            changed.signalAll()
+        }
+    }
+
+    // Lỗi mạng: trả lại quyền thử cho lệnh khác, không coi là hết key
+    fun onFailure(group: String) {
+        lock.withLock {
+            buckets[group]?.probeInFlight = false
+            changed.signalAll()
+        }
+    }
+
+    private fun refill(bucket: Bucket, now: Long) {
+        val elapsedSeconds = (now - bucket.lastRefillMs) / 1000.0
+        if (elapsedSeconds > 0 && now >= bucket.blockedUntilMs) {
+            bucket.tokens = minOf(BUCKET_CAPACITY.toDouble(), bucket.tokens + elapsedSeconds * REFILL_PER_SECOND)
+        }
+        bucket.lastRefillMs = now
+    }
+
+    private fun waitTime(bucket: Bucket, now: Long): Long {
+        if (now < bucket.blockedUntilMs) return bucket.blockedUntilMs - now
+        if (bucket.breakerFailures > 0) {
+            if (now < bucket.breakerOpenUntilMs) return bucket.breakerOpenUntilMs - now
+            // Nửa mở: chỉ một lệnh thử tại một thời điểm
+            if (bucket.probeInFlight) return WAIT_SLICE_MS
+        }
+        if (bucket.tokens < 1.0) return ((1.0 - bucket.tokens) / REFILL_PER_SECOND * 1000).toLong().coerceAtLeast(1L)
+        return 0L
+    }
+}
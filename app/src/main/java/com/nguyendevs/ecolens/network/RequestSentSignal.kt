@@ -0,0 +1,31 @@
+package com.nguyendevs.ecolens.network
+
+import okhttp3.Interceptor
+
+/**
+ * Gắn vào request qua `@Tag` để nơi gọi biết lúc request thực sự rời máy (đã qua hàng chờ
+ * của [RateLimitInterceptor]), nhờ đó hạn chờ byte đầu tiên không tính thời gian xếp hàng.
+ * [sentAt] bằng 0 khi request đang chờ trong hàng.
+ */
+class RequestSentSignal {
+
+    @Volatile
+    var sentAt = 0L
+        private set
+
+    fun markQueued() {
+        sentAt = 0L
+    }
+
+    fun markSent() {
+        sentAt = System.currentTimeMillis()
+    }
+
+    companion object {
+        // Network interceptor: chạy ngay trước khi ghi request lên kết nối, sau mọi interceptor ứng dụng
+        val interceptor = Interceptor { chain ->
+            chain.request().tag(RequestSentSignal::class.java)?.markSent()
+            chain.proceed(chain.request())
+        }
+    }
+}
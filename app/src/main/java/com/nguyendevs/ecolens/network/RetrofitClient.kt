@@ -4,6 +4,9 @@ import android.content.Context
 import android.widget.Toast
 import com.nguyendevs.ecolens.BuildConfig
 import com.nguyendevs.ecolens.api.INaturalistApi
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.EventListener
 import okhttp3.Interceptor
 import okhttp3.OkHttpClient
 import okhttp3.logging.HttpLoggingInterceptor
@@ -15,6 +18,10 @@ object RetrofitClient {
 
     private const val WORKER_BASE_URL = BuildConfig.WORKER_BASE_URL
 
+    // Giữ kết nối rảnh đủ lâu cho một phiên chụp ảnh, ConnectionWarmer làm mới trước khi hết hạn
+    private const val MAX_IDLE_CONNECTIONS = 4
+    private const val KEEP_ALIVE_MINUTES = 3L
+
     private var appContext: Context? = null
 
     fun initialize(context: Context) {
@@ -49,27 +56,34 @@ object RetrofitClient {
             }
         }
 
-        // Xử lý 429 Rate Limit
-        if (response.code == 429) {
-            val resetTime = response.header("X-RateLimit-Reset") ?: "unknown"
+        // ==================== iNaturalist Error ====================
+        if (response.code == 401 && request.url.toString().contains("inaturalist")) {
             appContext?.let { context ->
                 android.os.Handler(android.os.Looper.getMainLooper()).post {
                     Toast.makeText(
                         context,
-                        "Quá nhiều yêu cầu. Vui lòng thử lại sau ${resetTime}s",
+                        "iNaturalist Token hết hạn. Vui lòng làm mới",
                         Toast.LENGTH_LONG
                     ).show()
                 }
             }
         }
 
-        // ==================== iNaturalist Error ====================
-        if (response.code == 401 && request.url.toString().contains("inaturalist")) {
+        response
+    }
+
+    // Đặt ngoài cùng: chờ/gửi lại khi bị giới hạn, chỉ báo người dùng khi đã hết lượt thử
+    private val rateLimitInterceptor = RateLimitInterceptor { response ->
+        val request = response.request
+
+        // Xử lý 429 Rate Limit
+        if (response.code == 429) {
+            val resetTime = response.header("X-RateLimit-Reset") ?: "unknown"
             appContext?.let { context ->
                 android.os.Handler(android.os.Looper.getMainLooper()).post {
                     Toast.makeText(
                         context,
-                        "iNaturalist Token hết hạn. Vui lòng làm mới",
+                        "Quá nhiều yêu cầu. Vui lòng thử lại sau ${resetTime}s",
                         Toast.LENGTH_LONG
                     ).show()
                 }
@@ -77,7 +91,7 @@ object RetrofitClient {
         }
 
         // ==================== Gemini Retry Info ====================
-        else if (request.url.toString().contains("gemini")) {
+        if (request.url.toString().contains("gemini")) {
             val allFailed = response.header("X-Gemini-All-Failed") == "true"
             val failedKeys = response.header("X-Gemini-Failed-Keys")?.split(",")?.filter { it.isNotEmpty() } ?: emptyList()
 
@@ -93,15 +107,24 @@ object RetrofitClient {
                 }
             }
         }
-
-        response
     }
 
+    // Nén body JSON gửi lên Worker khi Worker quảng bá Accept-Encoding: gzip, gửi lại bản không nén nếu bị từ chối
+    private val gzipRequestInterceptor = GzipRequestInterceptor()
+
+    private val connectionPool = ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES)
+
+    // Bắt tay chậm thì thất bại sớm để OkHttp thử lại địa chỉ/route khác thay vì treo 60s
     private val okHttpClient = OkHttpClient.Builder()
+        .addInterceptor(rateLimitInterceptor)
+        .addInterceptor(gzipRequestInterceptor)
         .addInterceptor(hmacInterceptor)
         .addInterceptor(loggingInterceptor)
         .addInterceptor(authErrorInterceptor)
-        .connectTimeout(60, TimeUnit.SECONDS)
+        .addNetworkInterceptor(RequestSentSignal.interceptor)
+        .eventListenerFactory(TimingEventListener.Factory())
+        .connectionPool(connectionPool)
+        .connectTimeout(15, TimeUnit.SECONDS)
         .readTimeout(120, TimeUnit.SECONDS)
         .writeTimeout(60, TimeUnit.SECONDS)
         .callTimeout(0, TimeUnit.SECONDS)
@@ -110,8 +133,48 @@ object RetrofitClient {
     private val iNaturalistRetrofit = Retrofit.Builder()
         .baseUrl(WORKER_BASE_URL)
         .client(okHttpClient)
+        // Body gửi đi được ghi thẳng vào socket, phản hồi vẫn đọc bằng GsonConverterFactory
+        .addConverterFactory(StreamingJsonConverterFactory())
         .addConverterFactory(GsonConverterFactory.create())
         .build()
 
-    val iNaturalistApi: INaturalistApi = iNaturalistRetrofit.create(INaturalistApi::class.java)
+    val workerBaseUrl: String = WORKER_BASE_URL
+
+    // Dùng chung pool với client chính nhưng không ký HMAC, không ghi log và không ghi số liệu
+    // vào NetworkMetrics (lệnh HEAD làm nóng không phải lệnh gọi thật), chỉ để mở sẵn kết nối
+    val warmupClient: OkHttpClient by lazy {
+        okHttpClient.newBuilder()
+            .apply { interceptors().clear() }
+            .eventListener(EventListener.NONE)
+            .callTimeout(15, TimeUnit.SECONDS)
+            .build()
+    }
+
+    // Client theo làn: cùng interceptor và ConnectionPool, Dispatcher riêng để giới hạn đồng thời từng làn
+    private fun laneClient(lane: RequestLane): OkHttpClient {
+        val dispatcher = Dispatcher().apply {
+            maxRequests = lane.maxRequests
+            maxRequestsPerHost = lane.maxRequests
+        }
+        return okHttpClient.newBuilder()
+            .dispatcher(dispatcher)
+            .apply { interceptors().add(0, LaneScheduler.interceptor(lane)) }
+            .build()
+    }
+
+    private fun createApi(lane: RequestLane): INaturalistApi {
+        return iNaturalistRetrofit.newBuilder()
+            .client(laneClient(lane))
+            .build()
+            .create(INaturalistApi::class.java)
+    }
+
+    // Nhận diện và tra cứu do người dùng chờ trực tiếp
+    val iNaturalistApi: INaturalistApi = createApi(RequestLane.FOREGROUND)
+
+    // Stream Gemini đang hiển thị trên màn hình
+    val streamingApi: INaturalistApi by lazy { createApi(RequestLane.STREAMING) }
+
+    // Công việc nền, bị hủy khi có lệnh gọi tiền cảnh
+    val backgroundApi: INaturalistApi by lazy { createApi(RequestLane.BACKGROUND) }
 }
\ No newline at end of file
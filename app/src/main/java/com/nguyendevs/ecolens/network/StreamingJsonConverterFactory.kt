@@ -0,0 +1,55 @@
+package com.nguyendevs.ecolens.network
+
+import com.google.gson.Gson
+import com.google.gson.TypeAdapter
+import com.google.gson.reflect.TypeToken
+import okhttp3.MediaType
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import retrofit2.Converter
+import retrofit2.Retrofit
+import java.io.OutputStreamWriter
+import java.lang.reflect.Type
+
+/**
+ * Converter cho @Body: ghi JSON thẳng vào sink của OkHttp khi gửi thay vì dựng cả body trong bộ nhớ
+ * như GsonConverterFactory. Body ghi lại được nhiều lần nên vẫn gửi lại được khi bị giới hạn
+ * hoặc khi Worker từ chối gzip. Phản hồi vẫn do GsonConverterFactory đọc.
+ */
+class StreamingJsonConverterFactory(private val gson: Gson = Gson()) : Converter.Factory() {
+
+    companion object {
+        private val MEDIA_TYPE_JSON = "application/json; charset=UTF-8".toMediaType()
+    }
+
+    private class JsonRequestBody<T>(
+        private val gson: Gson,
+        private val adapter: TypeAdapter<T>,
+        private val value: T
+    ) : RequestBody() {
+
+        override fun contentType(): MediaType = MEDIA_TYPE_JSON
+
+        // Không biết trước độ dài, OkHttp gửi theo chunked
+        override fun contentLength(): Long = -1L
+
+        override fun writeTo(sink: BufferedSink) {
+            // Không đóng writer để không đóng sink của OkHttp
+            val writer = gson.newJsonWriter(OutputStreamWriter(sink.outputStream(), Charsets.UTF_8))
+            adapter.write(writer, value)
+            writer.flush()
+        }
+    }
+
+    override fun requestBodyConverter(
+        type: Type,
+        parameterAnnotations: Array<out Annotation>,
+        methodAnnotations: Array<out Annotation>,
+        retrofit: Retrofit
+    ): Converter<*, RequestBody> {
+        @Suppress("UNCHECKED_CAST")
+        val adapter = gson.getAdapter(TypeToken.get(type)) as TypeAdapter<Any?>
+        return Converter<Any?, RequestBody> { value -> JsonRequestBody(gson, adapter, value) }
+    }
+}
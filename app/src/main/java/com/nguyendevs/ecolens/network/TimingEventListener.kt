@@ -0,0 +1,140 @@
+package com.nguyendevs.ecolens.network
+
+import okhttp3.Call
+import okhttp3.EventListener
+import okhttp3.Handshake
+import okhttp3.HttpUrl
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+
+/**
+ * Đo DNS, kết nối, TLS, tải lên body, thời gian tới byte đầu tiên và tổng thời gian của mỗi lệnh gọi,
+ * rồi ghi vào [NetworkMetrics] theo tên endpoint. Mỗi lệnh gọi có một listener riêng.
+ */
+class TimingEventListener private constructor(private val endpoint: String) : EventListener() {
+
+    class Factory : EventListener.Factory {
+        override fun create(call: Call): EventListener {
+            return TimingEventListener(endpointOf(call.request().url))
+        }
+    }
+
+    companion object {
+        // score_image, gemini/stream, gemini, taxa...; còn lại dùng nguyên đường dẫn
+        fun endpointOf(url: HttpUrl): String {
+            val path = url.encodedPath
+            return when {
+                path.endsWith("/score_image") -> "score_image"
+                path.endsWith("/gemini/stream") -> "gemini/stream"
+                path.endsWith("/gemini") -> "gemini"
+                path.contains("/taxa/") -> "taxa"
+                else -> path
+            }
+        }
+
+        private fun elapsedMs(startNs: Long, endNs: Long): Long? {
+            if (startNs == 0L || endNs == 0L) return null
+            return (endNs - startNs) / 1_000_000
+        }
+    }
+
+    private var method = ""
+    private var startedAt = 0L
+    private var callStartNs = 0L
+    private var dnsStartNs = 0L
+    private var dnsEndNs = 0L
+    private var connectStartNs = 0L
+    private var connectEndNs = 0L
+    private var tlsStartNs = 0L
+    private var tlsEndNs = 0L
+    private var uploadStartNs = 0L
+    private var uploadEndNs = 0L
+    private var firstByteNs = 0L
+    private var requestBytes = 0L
+    private var responseCode: Int? = null
+
+    override fun callStart(call: Call) {
+        method = call.request().method
+        startedAt = System.currentTimeMillis()
+        callStartNs = System.nanoTime()
+    }
+
+    override fun dnsStart(call: Call, domainName: String) {
+        dnsStartNs = System.nanoTime()
+    }
+
+    override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+        dnsEndNs = System.nanoTime()
+    }
+
+    override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+        if (connectStartNs == 0L) connectStartNs = System.nanoTime()
+    }
+
+    override fun secureConnectStart(call: Call) {
+        tlsStartNs = System.nanoTime()
+    }
+
+    override fun secureConnectEnd(call: Call, handshake: Handshake?) {
+        tlsEndNs = System.nanoTime()
+    }
+
+    override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+        connectEndNs = System.nanoTime()
+    }
+
+    override fun requestHeadersStart(call: Call) {
+        if (uploadStartNs == 0L) uploadStartNs = System.nanoTime()
+    }
+
+    override fun requestHeadersEnd(call: Call, request: Request) {
+        uploadEndNs = System.nanoTime()
+    }
+
+    override fun requestBodyEnd(call: Call, byteCount: Long) {
+        uploadEndNs = System.nanoTime()
+        requestBytes += byteCount
+    }
+
+    override fun responseHeadersStart(call: Call) {
+        if (firstByteNs == 0L) firstByteNs = System.nanoTime()
+    }
+
+    override fun responseHeadersEnd(call: Call, response: Response) {
+        responseCode = response.code
+    }
+
+    override fun callEnd(call: Call) {
+        finish(success = true)
+    }
+
+    override fun callFailed(call: Call, ioe: IOException) {
+        finish(success = false)
+    }
+
+    private fun finish(success: Boolean) {
+        if (callStartNs == 0L) return
+        NetworkMetrics.record(
+            NetworkMetrics.CallTiming(
+                endpoint = endpoint,
+                method = method,
+                startedAt = startedAt,
+                dnsMs = elapsedMs(dnsStartNs, dnsEndNs),
+                connectMs = elapsedMs(connectStartNs, connectEndNs),
+                tlsMs = elapsedMs(tlsStartNs, tlsEndNs),
+                uploadMs = elapsedMs(uploadStartNs, uploadEndNs),
+                ttfbMs = elapsedMs(callStartNs, firstByteNs),
+                totalMs = elapsedMs(callStartNs, System.nanoTime()) ?: 0L,
+                requestBytes = requestBytes,
+                responseCode = responseCode,
+                success = success && (responseCode ?: 0) < 400
+            )
+        )
+        callStartNs = 0L
+    }
+}
@@ -0,0 +1,71 @@
+package com.nguyendevs.ecolens.utils
+
+import android.view.Choreographer
+
+/**
+ * Gộp các cập nhật đến dồn dập (token stream, phát xạ Room) thành tối đa một lần vẽ mỗi vsync.
+ * Chỉ giá trị mới nhất trong một khung hình được áp dụng; các trạng thái trung gian bị bỏ qua
+ * và được đếm lại để theo dõi mức độ gộp. Mọi lời gọi phải ở luồng chính.
+ */
+class FramePacedPresenter<T : Any>(private val onFrame: (T) -> Unit) : Choreographer.FrameCallback {
+
+    data class Stats(val submitted: Long, val rendered: Long, val dropped: Long)
+
+    private val choreographer = Choreographer.getInstance()
+    private var pending: T? = null
+    private var isScheduled = false
+
+    private var submittedCount = 0L
+    private var renderedCount = 0L
+    private var droppedCount = 0L
+
+    val stats: Stats
+        get() = Stats(submittedCount, renderedCount, droppedCount)
+
+    // Lấy số liệu từ lần gọi trước tới giờ rồi đặt lại bộ đếm
+    fun takeStats(): Stats {
+        val current = stats
+        submittedCount = 0
+        renderedCount = 0
+        droppedCount = 0
+        return current
+    }
+
+    fun submit(value: T) {
+        submittedCount++
+        if (pending != null) droppedCount++
+        pending = value
+
+        if (!isScheduled) {
+            isScheduled = true
+            choreographer.postFrameCallback(this)
+        }
+    }
+
+    // Áp dụng ngay giá trị đang chờ, không đợi khung hình kế tiếp
+    fun flush() {
+        if (isScheduled) {
+            choreographer.removeFrameCallback(this)
+            isScheduled = false
+        }
+        render()
+    }
+
+    fun cancel() {
+        if (isScheduled) choreographer.removeFrameCallback(this)
+        isScheduled = false
+        pending = null
+    }
+
+    override fun doFrame(frameTimeNanos: Long) {
+        isScheduled = false
+        render()
+    }
+
+    private fun render() {
+        val value = pending ?: return
+        pending = null
+        renderedCount++
+        onFrame(value)
+    }
+}
@@ -14,7 +14,8 @@ object ImageUtils {
 
     fun uriToFile(context: Context, uri: Uri, maxDimension: Int): File {
         val cacheDir = context.cacheDir
-        val file = File(cacheDir, "temp_image_${System.currentTimeMillis()}.jpg")
+        // Tên duy nhất: nhận diện hàng loạt giải mã nhiều ảnh cùng lúc
+        val file = File.createTempFile("temp_image_", ".jpg", cacheDir)
 
         var inputStream: InputStream? = null
         try {
@@ -84,10 +85,24 @@ object ImageUtils {
         return Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
     }
 
+    // Chỉ xóa các ảnh nằm trong bộ nhớ trong của ứng dụng
+    fun deleteInternalImages(context: Context, paths: List<String>) {
+        val filesDir = context.filesDir.canonicalPath
+        paths.forEach { path ->
+            try {
+                val file = File(path)
+                if (file.canonicalPath.startsWith(filesDir) && file.exists()) {
+                    file.delete()
+                }
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+    }
+
     fun saveBitmapToInternalStorage(context: Context, file: File): String? {
         return try {
-            val filename = "species_${System.currentTimeMillis()}.jpg"
-            val destFile = File(context.filesDir, filename)
+            val destFile = File.createTempFile("species_", ".jpg", context.filesDir)
             file.copyTo(destFile, overwrite = true)
             destFile.absolutePath
         } catch (e: Exception) {
@@ -0,0 +1,68 @@
+package com.nguyendevs.ecolens.utils
+
+import android.text.Editable
+import android.widget.TextView
+import io.noties.markwon.Markwon
+
+/**
+ * Hiển thị tin nhắn đang stream mà không dựng lại toàn bộ nội dung mỗi token.
+ * Nội dung chat đã qua [MarkdownProcessor] nên mỗi dòng là một khối phân tách bởi `<br>`;
+ * các khối đã đóng được render một lần và nối vào Editable của TextView,
+ * chỉ khối cuối còn mở (kèm con trỏ) được thay thế ở mỗi lần cập nhật.
+ */
+class IncrementalMarkdownRenderer(private val markwon: Markwon) {
+
+    companion object {
+        private const val BLOCK_SEPARATOR = "<br>"
+        private const val CURSOR = " ▌"
+
+        // Khối không đứng đầu tin nhắn vẫn là văn bản nội dòng khi render cả đoạn,
+        // ký tự rỗng phía trước giữ cho "#", "-", "1." ... không bị hiểu thành cú pháp khối
+        private const val INLINE_GUARD = "\u200B"
+    }
+
+    private var editable: Editable? = null
+    private var messageId = -1L
+    private var committedEnd = 0
+    private var stableLength = 0
+
+    fun render(textView: TextView, messageId: Long, content: String) {
+        var target = textView.editableText
+        if (target == null || target !== editable || messageId != this.messageId || content.length < committedEnd) {
+            textView.setText("", TextView.BufferType.EDITABLE)
+            target = textView.editableText ?: return
+            editable = target
+            this.messageId = messageId
+            committedEnd = 0
+            stableLength = 0
+        }
+
+        var blockEnd = content.indexOf(BLOCK_SEPARATOR, committedEnd)
+        while (blockEnd != -1) {
+            val block = renderBlock(content.substring(committedEnd, blockEnd), isFirst = committedEnd == 0)
+            target.replace(stableLength, target.length, block)
+            target.append('\n')
+            stableLength = target.length
+            committedEnd = blockEnd + BLOCK_SEPARATOR.length
+            blockEnd = content.indexOf(BLOCK_SEPARATOR, committedEnd)
+        }
+
+        val openBlock = renderBlock(content.substring(committedEnd) + CURSOR, isFirst = committedEnd == 0)
+        target.replace(stableLength, target.length, openBlock)
+    }
+
+    fun reset() {
+        editable = null
+        messageId = -1L
+        committedEnd = 0
+        stableLength = 0
+    }
+
+    private fun renderBlock(source: String, isFirst: Boolean): CharSequence {
+        if (source.isEmpty()) return ""
+        val rendered = markwon.toMarkdown(if (isFirst) source else INLINE_GUARD + source)
+        var end = rendered.length
+        while (end > 0 && rendered[end - 1] == '\n') end--
+        return rendered.subSequence(0, end)
+    }
+}
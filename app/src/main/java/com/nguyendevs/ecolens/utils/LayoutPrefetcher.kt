@@ -0,0 +1,102 @@
+package com.nguyendevs.ecolens.utils
+
+import android.content.Context
+import android.content.ContextWrapper
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import androidx.annotation.LayoutRes
+import androidx.appcompat.app.AppCompatActivity
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater
+import androidx.lifecycle.DefaultLifecycleObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.recyclerview.widget.RecyclerView
+import com.nguyendevs.ecolens.R
+import java.util.WeakHashMap
+
+/**
+ * Inflate sẵn các layout lớn bằng AsyncLayoutInflater khi luồng chính rảnh, theo từng Activity.
+ * Màn hình cần view thì lấy bản đã inflate; nếu chưa có mới inflate đồng bộ.
+ */
+class LayoutPrefetcher private constructor(private val activity: AppCompatActivity) : DefaultLifecycleObserver {
+
+    companion object {
+        private const val DEFAULT_POOL_SIZE = 5
+
+        private val instances = WeakHashMap<AppCompatActivity, LayoutPrefetcher>()
+
+        // Số ViewHolder giữ lại cho mỗi loại mục, đủ cho khoảng một màn hình của danh sách tương ứng
+        private val poolSizes = mapOf(
+            R.layout.item_history_entry_modern to 12,
+            R.layout.item_chat_message_modern to 12,
+            R.layout.item_chat_entry_modern to 10,
+            R.layout.item_detail_section to 5
+        )
+
+        fun of(activity: AppCompatActivity): LayoutPrefetcher {
+            return instances.getOrPut(activity) {
+                LayoutPrefetcher(activity).also { activity.lifecycle.addObserver(it) }
+            }
+        }
+
+        // Dùng trong onCreateViewHolder: lấy view đã inflate nền của Activity chứa parent nếu có
+        fun inflate(@LayoutRes layoutRes: Int, parent: ViewGroup): View {
+            val activity = findActivity(parent.context)
+            return activity?.let { of(it).inflate(layoutRes, parent) }
+                ?: LayoutInflater.from(parent.context).inflate(layoutRes, parent, false)
+        }
+
+        private fun findActivity(context: Context): AppCompatActivity? {
+            var current: Context? = context
+            while (current is ContextWrapper) {
+                if (current is AppCompatActivity) return current
+                current = current.baseContext
+            }
+            return null
+        }
+    }
+
+    private val asyncInflater = AsyncLayoutInflater(activity)
+    private val readyViews = HashMap<Int, ArrayDeque<View>>()
+    private val pendingCounts = HashMap<Int, Int>()
+    private var isDestroyed = false
+
+    private val viewPools = HashMap<Int, RecyclerView.RecycledViewPool>()
+
+    fun prefetch(@LayoutRes layoutRes: Int, count: Int, parent: ViewGroup) {
+        val available = (readyViews[layoutRes]?.size ?: 0) + (pendingCounts[layoutRes] ?: 0)
+        repeat(count - available) {
+            pendingCounts[layoutRes] = (pendingCounts[layoutRes] ?: 0) + 1
+            asyncInflater.inflate(layoutRes, parent) { view, resId, _ ->
+                pendingCounts[resId] = ((pendingCounts[resId] ?: 1) - 1).coerceAtLeast(0)
+                if (!isDestroyed) readyViews.getOrPut(resId) { ArrayDeque() }.addLast(view)
+            }
+        }
+    }
+
+    fun obtain(@LayoutRes layoutRes: Int): View? {
+        return readyViews[layoutRes]?.removeFirstOrNull()
+    }
+
+    fun inflate(@LayoutRes layoutRes: Int, parent: ViewGroup): View {
+        return obtain(layoutRes) ?: LayoutInflater.from(parent.context).inflate(layoutRes, parent, false)
+    }
+
+    // Pool dùng chung theo layout mục cho mọi RecyclerView của cùng Activity,
+    // mỗi pool chỉ chứa một loại mục nên các adapter khác nhau không lẫn viewType
+    fun pool(@LayoutRes itemLayoutRes: Int): RecyclerView.RecycledViewPool {
+        return viewPools.getOrPut(itemLayoutRes) {
+            RecyclerView.RecycledViewPool().apply {
+                setMaxRecycledViews(0, poolSizes[itemLayoutRes] ?: DEFAULT_POOL_SIZE)
+            }
+        }
+    }
+
+    override fun onDestroy(owner: LifecycleOwner) {
+        isDestroyed = true
+        readyViews.clear()
+        viewPools.values.forEach { it.clear() }
+        viewPools.clear()
+        instances.remove(activity)
+    }
+}
@@ -4,64 +4,164 @@ import java.util.Locale
 
 class MarkdownProcessor {
 
+    private class Marker(val token: String, val style: Int, val color: String?)
+
+    private class Status(val label: String, val color: String)
+
+    companion object {
+        private const val HIGHLIGHT_COLOR = "#00796B"
+
+        private val BOLD = Marker("**", RichText.STYLE_BOLD, null)
+        private val HIGHLIGHT = Marker("##", RichText.STYLE_BOLD, HIGHLIGHT_COLOR)
+        private val ITALIC = Marker("~~", RichText.STYLE_ITALIC, null)
+
+        // Sắp xếp sẵn theo độ dài giảm dần để nhãn dài được ưu tiên
+        private val STATUSES_VI = listOf(
+            Status("Cực kỳ nguy cấp", "#8B0000"),
+            Status("Nguy cấp", "#8B0000"),
+            Status("Sách Đỏ Việt Nam", "#c97408"),
+            Status("Sách Đỏ", "#c97408"),
+            Status("Sắp nguy cấp", "#eddb11"),
+            Status("Ít lo ngại", "#55f200"),
+            Status("Chưa đánh giá", "#05deff")
+        ).sortedByDescending { it.label.length }
+
+        private val STATUSES_EN = listOf(
+            Status("Critically Endangered", "#8B0000"),
+            Status("Endangered", "#8B0000"),
+            Status("Vulnerable (Vietnam Red Data Book)", "#c97408"),
+            Status("Vulnerable", "#c97408"),
+            Status("Near Threatened", "#eddb11"),
+            Status("Least Concern", "#55f200"),
+            Status("Not Evaluated", "#05deff")
+        ).sortedByDescending { it.label.length }
+    }
+
+    // Phân tích một lượt: **đậm**, ##nhấn mạnh##, ~~nghiêng~~ và tô màu tình trạng bảo tồn.
+    // Kết quả là RichText, dựng span trực tiếp; chỉ gọi toHtml() khi cần lưu vào Room.
     fun process(
         text: String?,
         isConservationStatus: Boolean = false,
         isVietnamese: Boolean = true
-    ): String {
-        if (text.isNullOrBlank()) return ""
+    ): RichText {
+        if (text.isNullOrBlank()) return RichText.EMPTY
 
-        var result = text
-            .replace(Regex("\\*\\*(.+?)\\*\\*")) { "<b>${it.groupValues[1]}</b>" }
-            .replace(Regex("##(.+?)##")) { "<font color='#00796B'><b>${it.groupValues[1]}</b></font>" }
-            .replace(Regex("~~(.+?)~~")) { "<i>${it.groupValues[1]}</i>" }
-            .replace("\n", "<br>")
+        val statuses = when {
+            !isConservationStatus -> null
+            isVietnamese -> STATUSES_VI
+            else -> STATUSES_EN
+        }
+        val runs = ArrayList<RichText.Run>()
 
-        if (isConservationStatus) {
-            result = colorizeConservationStatus(result, isVietnamese)
+        var lineStart = 0
+        while (true) {
+            val lineEnd = text.indexOf('\n', lineStart).let { if (it == -1) text.length else it }
+            parseInline(text, lineStart, lineEnd, RichText.STYLE_NORMAL, null, statuses, runs)
+            if (lineEnd == text.length) break
+            runs.add(RichText.Run("\n"))
+            lineStart = lineEnd + 1
         }
+        return RichText(runs)
+    }
 
-        return result
+    // Văn bản thuần từ HTML đã lưu (RichText.toHtml), dùng cho chỉ mục tìm kiếm
+    fun toPlainText(html: String): String {
+        if (html.isBlank()) return ""
+        return RichContent.plainTextOf(html)
     }
 
-    private fun colorizeConservationStatus(text: String, isVietnamese: Boolean): String {
-        val statusMap = if (isVietnamese) {
-            mapOf(
-                "Cực kỳ nguy cấp" to "#8B0000",
-                "Nguy cấp" to "#8B0000",
-                "Sách Đỏ Việt Nam" to "#c97408",
-                "Sách Đỏ" to "#c97408",
-                "Sắp nguy cấp" to "#eddb11",
-                "Ít lo ngại" to "#55f200",
-                "Chưa đánh giá" to "#05deff"
-            )
-        } else {
-            mapOf(
-                "Critically Endangered" to "#8B0000",
-                "Endangered" to "#8B0000",
-                "Vulnerable (Vietnam Red Data Book)" to "#c97408",
-                "Vulnerable" to "#c97408",
-                "Near Threatened" to "#eddb11",
-                "Least Concern" to "#55f200",
-                "Not Evaluated" to "#05deff"
-            )
+    fun removeRankPrefix(text: String?, prefix: String): String {
+        val trimmed = text?.trim() ?: return ""
+
+        var start = 0
+        if (trimmed.regionMatches(0, prefix, 0, prefix.length, ignoreCase = true)) {
+            var end = prefix.length
+            while (end < trimmed.length && isPrefixSeparator(trimmed[end])) end++
+            if (end > prefix.length) start = end
         }
 
-        var result = text
-        statusMap.entries.sortedByDescending { it.key.length }.forEach { (status, color) ->
-            if (result.contains(status, ignoreCase = true)) {
-                result = result.replace(
-                    Regex("(?i)$status"),
-                    "<font color='$color'><b>$status</b></font>"
-                )
+        return trimmed.substring(start)
+            .replaceFirstChar { if (it.isLowerCase()) it.titlecase(Locale.getDefault()) else it.toString() }
+            .trim()
+    }
+
+    private fun parseInline(
+        text: String,
+        start: Int,
+        end: Int,
+        style: Int,
+        color: String?,
+        statuses: List<Status>?,
+        runs: MutableList<RichText.Run>
+    ) {
+        var plainStart = start
+        var index = start
+
+        while (index < end) {
+            val marker = markerAt(text, index, end)
+            if (marker != null) {
+                // Cần ít nhất một ký tự giữa hai dấu, và dấu đóng nằm trên cùng dòng
+                val close = text.indexOf(marker.token, index + marker.token.length + 1)
+                if (close != -1 && close + marker.token.length <= end) {
+                    addRun(text, plainStart, index, style, color, runs)
+                    parseInline(
+                        text,
+                        index + marker.token.length,
+                        close,
+                        style or marker.style,
+                        marker.color ?: color,
+                        statuses,
+                        runs
+                    )
+                    index = close + marker.token.length
+                    plainStart = index
+                    continue
+                }
+            }
+
+            val status = statuses?.let { statusAt(text, index, end, it) }
+            if (status != null) {
+                addRun(text, plainStart, index, style, color, runs)
+                runs.add(RichText.Run(status.label, style or RichText.STYLE_BOLD, status.color))
+                index += status.label.length
+                plainStart = index
+                continue
             }
+
+            index++
         }
-        return result
+        addRun(text, plainStart, end, style, color, runs)
     }
 
-    fun removeRankPrefix(text: String?, prefix: String): String {
-        return text?.trim()?.replaceFirst(Regex("^(?i)$prefix\\s*[:\\-\\s]+"), "")
-            ?.replaceFirstChar { if (it.isLowerCase()) it.titlecase(Locale.getDefault()) else it.toString() }
-            ?.trim() ?: ""
+    private fun markerAt(text: String, index: Int, end: Int): Marker? {
+        if (index + 1 >= end || text[index + 1] != text[index]) return null
+        return when (text[index]) {
+            '*' -> BOLD
+            '#' -> HIGHLIGHT
+            '~' -> ITALIC
+            else -> null
+        }
+    }
+
+    private fun statusAt(text: String, index: Int, end: Int, statuses: List<Status>): Status? {
+        return statuses.firstOrNull { status ->
+            index + status.label.length <= end &&
+                    text.regionMatches(index, status.label, 0, status.label.length, ignoreCase = true)
+        }
+    }
+
+    private fun addRun(
+        text: String,
+        start: Int,
+        end: Int,
+        style: Int,
+        color: String?,
+        runs: MutableList<RichText.Run>
+    ) {
+        if (end > start) runs.add(RichText.Run(text.substring(start, end), style, color))
+    }
+
+    private fun isPrefixSeparator(char: Char): Boolean {
+        return char == ':' || char == '-' || char.isWhitespace()
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package com.nguyendevs.ecolens.utils
+
+import android.content.Context
+import android.text.Spanned
+import android.util.LruCache
+import android.widget.TextView
+import io.noties.markwon.AbstractMarkwonPlugin
+import io.noties.markwon.Markwon
+import io.noties.markwon.core.MarkwonTheme
+import io.noties.markwon.html.HtmlPlugin
+
+/**
+ * Bộ dựng markdown dùng chung toàn ứng dụng: một Markwon cấu hình sẵn (HTML + cỡ tiêu đề)
+ * và bộ nhớ đệm kết quả parse, để chat, lịch sử và danh sách phiên không phải tự tạo Markwon
+ * hay parse lại cùng một nội dung mỗi lần bind.
+ */
+object RenderEngine {
+
+    private const val PARSE_CACHE_MAX_CHARS = 256 * 1024
+
+    @Volatile
+    private var markwon: Markwon? = null
+
+    private val parseCache = object : LruCache<String, Spanned>(PARSE_CACHE_MAX_CHARS) {
+        override fun sizeOf(key: String, value: Spanned): Int = key.length.coerceAtLeast(1)
+    }
+
+    fun markwon(context: Context): Markwon {
+        markwon?.let { return it }
+        return synchronized(this) {
+            markwon ?: buildMarkwon(context.applicationContext).also { markwon = it }
+        }
+    }
+
+    // Gán markdown đồng bộ, nội dung đã parse trước đó lấy lại từ cache
+    fun setMarkdown(textView: TextView, markdown: String) {
+        val engine = markwon(textView.context)
+        engine.setParsedMarkdown(textView, parse(engine, markdown))
+    }
+
+    fun parse(context: Context, markdown: String): Spanned {
+        return parse(markwon(context), markdown)
+    }
+
+    fun clearCache() {
+        parseCache.evictAll()
+    }
+
+    private fun parse(engine: Markwon, markdown: String): Spanned {
+        parseCache.get(markdown)?.let { return it }
+        return engine.toMarkdown(markdown).also { parseCache.put(markdown, it) }
+    }
+
+    private fun buildMarkwon(context: Context): Markwon {
+        return Markwon.builder(context)
+            .usePlugin(HtmlPlugin.create())
+            .usePlugin(object : AbstractMarkwonPlugin() {
+                override fun configureTheme(builder: MarkwonTheme.Builder) {
+                    builder
+                        .headingTextSizeMultipliers(floatArrayOf(
+                            2.0f,   // h1 (#)
+                            1.5f,   // h2 (##)
+                            1.17f,  // h3 (###)
+                            1.0f,   // h4 (####)
+                            0.83f,  // h5 (#####)
+                            0.67f   // h6 (######)
+                        ))
+                }
+            })
+            .build()
+    }
+}
@@ -0,0 +1,31 @@
+package com.nguyendevs.ecolens.utils
+
+/**
+ * Tổng số cập nhật đã nhận, đã vẽ và bị gộp bỏ của các [FramePacedPresenter] theo từng màn hình,
+ * hiển thị cùng số liệu mạng trong màn hình chẩn đoán.
+ */
+object RenderMetrics {
+
+    data class ScreenSummary(val screen: String, val submitted: Long, val rendered: Long, val dropped: Long)
+
+    private val totals = LinkedHashMap<String, ScreenSummary>()
+
+    @Synchronized
+    fun record(screen: String, stats: FramePacedPresenter.Stats) {
+        if (stats.submitted == 0L) return
+        val current = totals[screen] ?: ScreenSummary(screen, 0, 0, 0)
+        totals[screen] = current.copy(
+            submitted = current.submitted + stats.submitted,
+            rendered = current.rendered + stats.rendered,
+            dropped = current.dropped + stats.dropped
+        )
+    }
+
+    @Synchronized
+    fun summaries(): List<ScreenSummary> = totals.values.toList()
+
+    @Synchronized
+    fun clear() {
+        totals.clear()
+    }
+}
@@ -0,0 +1,89 @@
+package com.nguyendevs.ecolens.utils
+
+import android.text.Spanned
+import android.util.LruCache
+
+/**
+ * Một đoạn nội dung (tên loài, mô tả, tin nhắn chat...) giữ dưới dạng [RichText] đã phân tích.
+ * Span để hiển thị, văn bản thuần cho TTS/sao chép/chia sẻ và HTML để lưu đều dựng từ cùng AST.
+ * Nội dung vừa qua [MarkdownProcessor] dùng luôn AST đó; HTML đọc từ Room chỉ được giải mã một lần.
+ */
+class RichContent(
+    val richText: RichText,
+    private val fromStoredHtml: Boolean = false
+) {
+
+    companion object {
+        private const val CACHE_SIZE = 64
+
+        // HTML đã lưu -> nội dung đã phân tích, để chuỗi đọc lại từ Room trỏ về đúng AST ban đầu
+        private val cache = LruCache<String, RichContent>(CACHE_SIZE)
+
+        // Nội dung mới sinh từ tokenizer; ghi nhớ theo HTML sẽ được lưu để không phải giải mã lại
+        fun from(richText: RichText): RichContent {
+            return RichContent(richText).also { cache.put(it.html, it) }
+        }
+
+        fun of(html: String): RichContent {
+            cache.get(html)?.let { return it }
+            return RichContent(RichText.fromHtml(html), fromStoredHtml = true).also { cache.put(html, it) }
+        }
+
+        fun plainTextOf(html: String): String {
+            return if (html.isEmpty()) "" else of(html).plainText
+        }
+
+        // Bỏ các cặp dấu markdown còn sót lại (**, ##, ~~) trong cùng một dòng mà bộ xử lý regex cũ
+        // để lọt vào HTML; không đụng tới dấu * đơn vì đó thường là nội dung thật ("5 * 3 * 2")
+        private fun stripMarkers(text: String): String {
+            val skip = BooleanArray(text.length)
+            var index = 0
+            while (index < text.length) {
+                val token = markerAt(text, index)
+                if (token == null || skip[index]) {
+                    index++
+                    continue
+                }
+
+                val lineEnd = text.indexOf('\n', index).let { if (it == -1) text.length else it }
+                val close = text.indexOf(token, index + token.length)
+                if (close != -1 && close + token.length <= lineEnd) {
+                    for (offset in token.indices) {
+                        skip[index + offset] = true
+                        skip[close + offset] = true
+                    }
+                }
+                index += token.length
+            }
+
+            val builder = StringBuilder(text.length)
+            text.forEachIndexed { position, char -> if (!skip[position]) builder.append(char) }
+            return builder.toString()
+        }
+
+        private fun markerAt(text: String, index: Int): String? {
+            val char = text[index]
+            val isDouble = index + 1 < text.length && text[index + 1] == char
+            return when {
+                char == '*' && isDouble -> "**"
+                char == '#' && isDouble -> "##"
+                char == '~' && isDouble -> "~~"
+                else -> null
+            }
+        }
+    }
+
+    val html: String by lazy {
+        richText.toHtml()
+    }
+
+    val spanned: Spanned by lazy {
+        richText.toSpanned()
+    }
+
+    // Nội dung dựng từ AST không còn dấu markdown nào, chỉ HTML đọc từ Room mới cần dọn
+    val plainText: String by lazy {
+        val text = richText.toPlainText()
+        (if (fromStoredHtml) stripMarkers(text) else text).trim()
+    }
+}
@@ -0,0 +1,225 @@
+package com.nguyendevs.ecolens.utils
+
+import android.graphics.Color
+import android.graphics.Typeface
+import android.text.SpannableStringBuilder
+import android.text.Spanned
+import android.text.style.ForegroundColorSpan
+import android.text.style.StyleSpan
+
+/**
+ * Văn bản đã phân tích thành các đoạn (run) có kiểu chữ, do [MarkdownProcessor.process] sinh ra.
+ * Có thể xuất trực tiếp ra span, HTML (định dạng đang lưu trong Room) hoặc văn bản thuần.
+ */
+class RichText(val runs: List<Run>) {
+
+    data class Run(
+        val text: String,
+        val style: Int = STYLE_NORMAL,
+        val color: String? = null
+    )
+
+    private class OpenTag(val name: String, val style: Int, val color: String?)
+
+    companion object {
+        const val STYLE_NORMAL = 0
+        const val STYLE_BOLD = 1
+        const val STYLE_ITALIC = 1 shl 1
+
+        val EMPTY = RichText(emptyList())
+
+        private val ENTITIES = mapOf(
+            "amp" to "&",
+            "lt" to "<",
+            "gt" to ">",
+            "quot" to "\"",
+            "apos" to "'",
+            "nbsp" to " "
+        )
+
+        /**
+         * Đọc lại HTML đã lưu (do [toHtml] hoặc bộ xử lý regex cũ sinh ra) trong một lượt:
+         * chỉ hiểu <b>, <i>, <font color>, <br> và các thực thể ký tự, thẻ khác bị bỏ qua.
+         */
+        fun fromHtml(html: String): RichText {
+            if (html.isEmpty()) return EMPTY
+
+            val runs = ArrayList<Run>()
+            val stack = ArrayList<OpenTag>()
+            val text = StringBuilder()
+            var style = STYLE_NORMAL
+            var color: String? = null
+
+            fun flush() {
+                if (text.isNotEmpty()) {
+                    runs.add(Run(text.toString(), style, color))
+                    text.setLength(0)
+                }
+            }
+
+            fun restyle() {
+                style = stack.fold(STYLE_NORMAL) { acc, tag -> acc or tag.style }
+                color = stack.lastOrNull { it.color != null }?.color
+            }
+
+            var index = 0
+            while (index < html.length) {
+                val char = html[index]
+                if (char == '<') {
+                    val close = html.indexOf('>', index + 1)
+                    val tag = if (close != -1) html.substring(index + 1, close) else ""
+                    val name = tagName(tag)
+                    if (name != null) {
+                        flush()
+                        val isClosing = tag.startsWith("/")
+                        when {
+                            name == "br" -> runs.add(Run("\n"))
+                            isClosing -> {
+                                val open = stack.indexOfLast { it.name == name }
+                                if (open != -1) {
+                                    while (stack.size > open) stack.removeAt(stack.size - 1)
+                                    restyle()
+                                }
+                            }
+                            name == "b" || name == "strong" -> stack.add(OpenTag(name, STYLE_BOLD, null))
+                            name == "i" || name == "em" -> stack.add(OpenTag(name, STYLE_ITALIC, null))
+                            name == "font" -> stack.add(OpenTag(name, STYLE_NORMAL, attribute(tag, "color")))
+                        }
+                        restyle()
+                        index = close + 1
+                        continue
+                    }
+                } else if (char == '&') {
+                    val semicolon = html.indexOf(';', index + 1)
+                    val decoded = if (semicolon != -1 && semicolon - index <= 10) {
+                        decodeEntity(html.substring(index + 1, semicolon))
+                    } else {
+                        null
+                    }
+                    if (decoded != null) {
+                        text.append(decoded)
+                        index = semicolon + 1
+                        continue
+                    }
+                }
+
+                // Xuống dòng thô trong HTML chỉ là khoảng trắng, như khi hiển thị
+                text.append(if (char == '\n' || char == '\r') ' ' else char)
+                index++
+            }
+            flush()
+            return RichText(runs)
+        }
+
+        // Tên thẻ viết thường, hoặc null nếu chuỗi giữa < > không phải một thẻ
+        private fun tagName(tag: String): String? {
+            if (tag.isEmpty()) return null
+            val start = if (tag.startsWith("/")) 1 else 0
+            var end = start
+            while (end < tag.length && tag[end].isLetterOrDigit()) end++
+            if (end == start || !tag[start].isLetter()) return null
+            if (end < tag.length && !tag[end].isWhitespace() && tag[end] != '/') return null
+            return tag.substring(start, end).lowercase()
+        }
+
+        private fun attribute(tag: String, name: String): String? {
+            val key = tag.indexOf("$name=", ignoreCase = true)
+            if (key == -1) return null
+            var start = key + name.length + 1
+            if (start >= tag.length) return null
+            val quote = tag[start]
+            val end = if (quote == '\'' || quote == '"') {
+                start++
+                tag.indexOf(quote, start).let { if (it == -1) tag.length else it }
+            } else {
+                var position = start
+                while (position < tag.length && !tag[position].isWhitespace() && tag[position] != '/') position++
+                position
+            }
+            return tag.substring(start, end).takeIf { it.isNotEmpty() }
+        }
+
+        private fun decodeEntity(name: String): String? {
+            if (name.startsWith("#")) {
+                val code = if (name.startsWith("#x") || name.startsWith("#X")) {
+                    name.substring(2).toIntOrNull(16)
+                } else {
+                    name.substring(1).toIntOrNull()
+                }
+                return code?.takeIf { Character.isValidCodePoint(it) }?.let { String(Character.toChars(it)) }
+            }
+            return ENTITIES[name]
+        }
+
+        private fun appendEscaped(builder: StringBuilder, text: String) {
+            text.forEach { char ->
+                when (char) {
+                    '&' -> builder.append("&amp;")
+                    '<' -> builder.append("&lt;")
+                    '>' -> builder.append("&gt;")
+                    '\n' -> builder.append("<br>")
+                    else -> builder.append(char)
+                }
+            }
+        }
+    }
+
+    val isEmpty: Boolean
+        get() = runs.isEmpty()
+
+    fun toHtml(): String {
+        val builder = StringBuilder()
+        runs.forEach { run ->
+            val isBold = run.style and STYLE_BOLD != 0
+            val isItalic = run.style and STYLE_ITALIC != 0
+
+            if (run.color != null) builder.append("<font color='").append(run.color).append("'>")
+            if (isBold) builder.append("<b>")
+            if (isItalic) builder.append("<i>")
+            appendEscaped(builder, run.text)
+            if (isItalic) builder.append("</i>")
+            if (isBold) builder.append("</b>")
+            if (run.color != null) builder.append("</font>")
+        }
+        return builder.toString()
+    }
+
+    fun toSpanned(): Spanned {
+        val builder = SpannableStringBuilder()
+        runs.forEach { run ->
+            val start = builder.length
+            builder.append(run.text)
+            val end = builder.length
+            if (start == end) return@forEach
+
+            val typeface = when {
+                run.style and STYLE_BOLD != 0 && run.style and STYLE_ITALIC != 0 -> Typeface.BOLD_ITALIC
+                run.style and STYLE_BOLD != 0 -> Typeface.BOLD
+                run.style and STYLE_ITALIC != 0 -> Typeface.ITALIC
+                else -> null
+            }
+            typeface?.let { builder.setSpan(StyleSpan(it), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE) }
+            run.color?.let { value ->
+                parseColor(value)?.let {
+                    builder.setSpan(ForegroundColorSpan(it), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE)
+                }
+            }
+        }
+        return builder
+    }
+
+    fun toPlainText(): String {
+        val builder = StringBuilder()
+        runs.forEach { builder.append(it.text) }
+        return builder.toString().trim()
+    }
+
+    // Màu đọc từ HTML cũ có thể không hợp lệ; khi đó bỏ màu thay vì làm hỏng cả đoạn
+    private fun parseColor(value: String): Int? {
+        return try {
+            Color.parseColor(value)
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.nguyendevs.ecolens.utils
+
+import android.content.Context
+import com.nguyendevs.ecolens.R
+import com.nguyendevs.ecolens.model.SpeciesInfo
+
+object ShareTextGenerator {
+
+    private const val DIVIDER = "━━━━━━━━━━━━━━━━━━━━"
+
+    fun generateShareText(context: Context, info: SpeciesInfo): String {
+        val confidencePercent =
+            String.format("%.2f", if (info.confidence > 1) info.confidence else info.confidence * 100)
+
+        return buildString {
+            append(context.getString(R.string.share_title))
+            append("\n$DIVIDER\n\n")
+            append("📌 ${plain(info.commonName)}\n🔬 ${plain(info.scientificName)}\n")
+            append("✅ ${context.getString(R.string.label_confidence_template, confidencePercent)}%\n\n")
+            append("$DIVIDER\n${context.getString(R.string.share_taxonomy_title)}\n$DIVIDER\n\n")
+            appendTaxon(context, R.string.label_kingdom, info.kingdom)
+            appendTaxon(context, R.string.label_phylum, info.phylum)
+            appendTaxon(context, R.string.label_class, info.className)
+            appendTaxon(context, R.string.label_order, info.taxorder)
+            appendTaxon(context, R.string.label_family, info.family)
+            appendTaxon(context, R.string.label_genus, info.genus)
+            appendTaxon(context, R.string.label_species, info.species)
+
+            appendSection(context, R.string.share_desc_title, info.description)
+            appendSection(context, R.string.share_char_title, info.characteristics)
+            appendSection(context, R.string.share_dist_title, info.distribution)
+            appendSection(context, R.string.share_hab_title, info.habitat)
+            appendSection(context, R.string.share_cons_title, info.conservationStatus)
+
+            append("\n$DIVIDER\n${context.getString(R.string.share_footer)}")
+        }
+    }
+
+    fun generateShareSubject(context: Context, info: SpeciesInfo): String {
+        return context.getString(R.string.share_subject, plain(info.commonName))
+    }
+
+    private fun StringBuilder.appendTaxon(context: Context, labelResId: Int, value: String) {
+        if (value.isNotEmpty()) append("• ${context.getString(labelResId)} ${plain(value)}\n")
+    }
+
+    private fun StringBuilder.appendSection(context: Context, titleResId: Int, content: String) {
+        if (content.isNotEmpty()) {
+            append("\n$DIVIDER\n${context.getString(titleResId)}\n$DIVIDER\n\n${plain(content)}\n")
+        }
+    }
+
+    private fun plain(html: String): String = RichContent.plainTextOf(html)
+}
@@ -0,0 +1,45 @@
+package com.nguyendevs.ecolens.utils
+
+/**
+ * Xử lý văn bản Gemini trả về theo từng chunk. Các quy tắc của [MarkdownProcessor.process]
+ * chỉ áp dụng trong một dòng, nên các dòng đã kết thúc được xử lý một lần và giữ lại;
+ * mỗi chunk mới chỉ xử lý lại dòng cuối còn đang mở.
+ */
+class StreamingMarkdownProcessor(
+    private val processor: MarkdownProcessor = MarkdownProcessor()
+) {
+    private val rawText = StringBuilder()
+    private val stableHtml = StringBuilder()
+    private var openLineStart = 0
+
+    val text: String
+        get() = rawText.toString()
+
+    // Thêm chunk và trả về HTML của toàn bộ nội dung đã nhận
+    fun append(chunk: String): String {
+        rawText.append(chunk)
+
+        var lineEnd = rawText.indexOf("\n", openLineStart)
+        while (lineEnd != -1) {
+            stableHtml.append(processLine(rawText.substring(openLineStart, lineEnd))).append("<br>")
+            openLineStart = lineEnd + 1
+            lineEnd = rawText.indexOf("\n", openLineStart)
+        }
+
+        val openLine = processLine(rawText.substring(openLineStart))
+        return StringBuilder(stableHtml.length + openLine.length)
+            .append(stableHtml)
+            .append(openLine)
+            .toString()
+    }
+
+    fun reset() {
+        rawText.setLength(0)
+        stableHtml.setLength(0)
+        openLineStart = 0
+    }
+
+    private fun processLine(line: String): String {
+        return if (line.isBlank()) line else processor.process(line).toHtml()
+    }
+}
@@ -0,0 +1,120 @@
+package com.nguyendevs.ecolens.utils
+
+import android.text.Spanned
+import android.util.LruCache
+import android.widget.TextView
+import androidx.core.text.PrecomputedTextCompat
+import androidx.core.widget.TextViewCompat
+import com.nguyendevs.ecolens.R
+import io.noties.markwon.Markwon
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * Dựng HTML/markdown thành Spanned (và PrecomputedTextCompat cho HTML) trên luồng nền.
+ * Kết quả được giữ trong LruCache theo chính nội dung và tham số hiển thị của TextView,
+ * nên lần bind sau chỉ còn gán text đã tính sẵn.
+ */
+object TextRenderService {
+
+    private const val CACHE_MAX_CHARS = 512 * 1024
+    private const val SYNC_RENDER_LIMIT = 256
+    private const val KIND_HTML = 0
+    private const val KIND_MARKDOWN = 1
+
+    // Khóa giữ nguyên chuỗi nội dung: hai nội dung khác nhau không bao giờ trùng khóa
+    private data class RenderKey(
+        val kind: Int,
+        val content: String,
+        val params: PrecomputedTextCompat.Params?
+    )
+
+    private val cache = object : LruCache<RenderKey, CharSequence>(CACHE_MAX_CHARS) {
+        override fun sizeOf(key: RenderKey, value: CharSequence): Int =
+            (key.content.length + value.length).coerceAtLeast(1)
+    }
+
+    // Gán HTML cho TextView; nội dung ngắn dựng ngay, nội dung dài dựng nền rồi gán lại
+    fun setHtml(textView: TextView, html: String, scope: CoroutineScope) {
+        val params = TextViewCompat.getTextMetricsParams(textView)
+        val key = RenderKey(KIND_HTML, html, params)
+        textView.setTag(R.id.tag_render_key, key)
+
+        val cached = cache.get(key)
+        if (cached != null) {
+            applyHtml(textView, cached, html)
+            return
+        }
+
+        if (html.length <= SYNC_RENDER_LIMIT) {
+            val spanned = fromHtml(html)
+            cache.put(key, spanned)
+            textView.text = spanned
+            return
+        }
+
+        scope.launch {
+            val rendered = renderHtml(html, params)
+            if (textView.getTag(R.id.tag_render_key) == key) {
+                applyHtml(textView, rendered, html)
+            }
+        }
+    }
+
+    // Gán markdown qua Markwon dùng chung (RenderEngine); phần parse/render chạy nền,
+    // chỉ setParsedMarkdown trên luồng chính. Text cũ giữ nguyên đến khi bản mới sẵn sàng.
+    fun setMarkdown(textView: TextView, markwon: Markwon, markdown: String, scope: CoroutineScope) {
+        val key = RenderKey(KIND_MARKDOWN, markdown, null)
+        textView.setTag(R.id.tag_render_key, key)
+
+        val cached = cache.get(key)
+        if (cached is Spanned) {
+            markwon.setParsedMarkdown(textView, cached)
+            return
+        }
+
+        scope.launch {
+            val rendered = withContext(Dispatchers.Default) {
+                markwon.toMarkdown(markdown).also { cache.put(key, it) }
+            }
+            if (textView.getTag(R.id.tag_render_key) == key) {
+                markwon.setParsedMarkdown(textView, rendered)
+            }
+        }
+    }
+
+    suspend fun renderHtml(html: String, params: PrecomputedTextCompat.Params?): CharSequence {
+        val key = RenderKey(KIND_HTML, html, params)
+        cache.get(key)?.let { return it }
+
+        return withContext(Dispatchers.Default) {
+            val spanned = fromHtml(html)
+            val rendered: CharSequence = if (params != null) PrecomputedTextCompat.create(spanned, params) else spanned
+            cache.put(key, rendered)
+            rendered
+        }
+    }
+
+    fun clear() {
+        cache.evictAll()
+    }
+
+    private fun applyHtml(textView: TextView, rendered: CharSequence, html: String) {
+        if (rendered is PrecomputedTextCompat) {
+            // TextView đổi kiểu chữ sau khi tính sẵn thì không dùng được bản precomputed
+            if (rendered.params == TextViewCompat.getTextMetricsParams(textView)) {
+                TextViewCompat.setPrecomputedText(textView, rendered)
+            } else {
+                textView.text = fromHtml(html)
+            }
+        } else {
+            textView.text = rendered
+        }
+    }
+
+    private fun fromHtml(html: String): Spanned {
+        return RichContent.of(html).spanned
+    }
+}
@@ -8,8 +8,8 @@ object TextToSpeechGenerator {
 
     fun generateSpeechText(context: Context, info: SpeciesInfo): String {
         val sb = StringBuilder()
-        sb.append("${info.commonName}. ")
-        sb.append("${context.getString(R.string.tts_scientific_name)} ${info.scientificName}. ")
+        sb.append("${RichContent.plainTextOf(info.commonName)}. ")
+        sb.append("${context.getString(R.string.tts_scientific_name)} ${RichContent.plainTextOf(info.scientificName)}. ")
 
         val taxonomyList = buildTaxonomyList(context, info)
         if (taxonomyList.isNotEmpty()) {
@@ -29,28 +29,19 @@ object TextToSpeechGenerator {
 
     private fun buildTaxonomyList(context: Context, info: SpeciesInfo): List<String> {
         val taxonomyList = mutableListOf<String>()
-        if (info.kingdom.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_kingdom)} ${stripHtml(info.kingdom)}")
-        if (info.phylum.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_phylum)} ${stripHtml(info.phylum)}")
-        if (info.className.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_class)} ${stripHtml(info.className)}")
-        if (info.taxorder.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_order)} ${stripHtml(info.taxorder)}")
-        if (info.family.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_family)} ${stripHtml(info.family)}")
-        if (info.genus.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_genus)} ${stripHtml(info.genus)}")
-        if (info.species.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_species)} ${stripHtml(info.species)}")
+        if (info.kingdom.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_kingdom)} ${RichContent.plainTextOf(info.kingdom)}")
+        if (info.phylum.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_phylum)} ${RichContent.plainTextOf(info.phylum)}")
+        if (info.className.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_class)} ${RichContent.plainTextOf(info.className)}")
+        if (info.taxorder.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_order)} ${RichContent.plainTextOf(info.taxorder)}")
+        if (info.family.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_family)} ${RichContent.plainTextOf(info.family)}")
+        if (info.genus.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_genus)} ${RichContent.plainTextOf(info.genus)}")
+        if (info.species.isNotEmpty()) taxonomyList.add("${context.getString(R.string.label_species)} ${RichContent.plainTextOf(info.species)}")
         return taxonomyList
     }
 
     private fun appendSectionIfNotEmpty(sb: StringBuilder, context: Context, titleResId: Int, content: String) {
         if (content.isNotEmpty()) {
-            sb.append("${context.getString(titleResId)}. ${stripHtml(content)}. ")
-        }
-    }
-
-    private fun stripHtml(html: String): String {
-        return if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
-            android.text.Html.fromHtml(html, android.text.Html.FROM_HTML_MODE_COMPACT).toString()
-        } else {
-            @Suppress("DEPRECATION")
-            android.text.Html.fromHtml(html).toString()
+            sb.append("${context.getString(titleResId)}. ${RichContent.plainTextOf(content)}. ")
         }
     }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import com.google.gson.Gson
 import com.nguyendevs.ecolens.database.HistoryDatabase
 import com.nguyendevs.ecolens.managers.*
 import com.nguyendevs.ecolens.model.*
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
 
@@ -15,20 +16,49 @@ class EcoLensViewModel(application: Application) : AndroidViewModel(application)
 
     private val historyDao = HistoryDatabase.getDatabase(application).historyDao()
     private val chatDao = HistoryDatabase.getDatabase(application).chatDao()
+    private val statsDao = HistoryDatabase.getDatabase(application).statsDao()
+    private val pendingIdentificationDao = HistoryDatabase.getDatabase(application).pendingIdentificationDao()
+    private val journalDao = HistoryDatabase.getDatabase(application).identificationJournalDao()
 
     // Managers
-    private val speciesManager = SpeciesIdentificationManager(application, historyDao)
-    private val historyManager = HistoryManager(historyDao)
+    private val journal = IdentificationJournal(application, journalDao, Gson())
+    private val offlineQueue = OfflineIdentificationQueue(application, pendingIdentificationDao)
+    private val speciesManager = SpeciesIdentificationManager(application, historyDao, offlineQueue, journal)
+    private val batchPipeline = BatchIdentificationPipeline(application, speciesManager, offlineQueue, journal)
+    private val historyManager = HistoryManager(application, historyDao)
     private val chatManager = ChatSessionManager(chatDao, viewModelScope)
+    private val statsManager = StatsManager(statsDao)
 
     // UI State
     private val _uiState = MutableStateFlow(EcoLensUiState())
     val uiState: StateFlow<EcoLensUiState> = _uiState.asStateFlow()
 
+    // Batch State
+    val batchItems: StateFlow<List<BatchItem>> = batchPipeline.items
+
     // Chat State
     val chatMessages: StateFlow<List<ChatMessage>> = chatManager.chatMessages
     val isStreamingActive: StateFlow<Boolean> = chatManager.isStreamingActive
     val allChatSessions: Flow<List<ChatSession>> = chatManager.allChatSessions
+    private var isPagingMessages = false
+    private var hasCheckedInterrupted = false
+
+    // Stats State
+    val totalSightings: Flow<Int> = statsManager.totalSightings
+    val monthlyStats: Flow<List<MonthlySightingStat>> = statsManager.monthlyStats
+    val kingdomStats: Flow<List<KingdomSightingStat>> = statsManager.kingdomStats
+    val topFamilyStats: Flow<List<TaxonSightingStat>> = statsManager.topFamilyStats
+
+    init {
+        // Xả hàng đợi ngoại tuyến ngay khi mở ứng dụng và mỗi khi có mạng trở lại
+        offlineQueue.start(viewModelScope, speciesManager::identifyQueued)
+    }
+
+    override fun onCleared() {
+        batchPipeline.cancel()
+        offlineQueue.stop()
+        super.onCleared()
+    }
 
     // ==================== SPECIES IDENTIFICATION ====================
 
@@ -45,6 +75,22 @@ class EcoLensViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
+    // Ảnh của lượt nhận diện bị gián đoạn lần trước (nếu có) để màn hình chính hiển thị và tiếp tục.
+    // Chỉ kiểm tra một lần cho mỗi ViewModel, xoay màn hình không kích hoạt lại
+    suspend fun findInterruptedIdentification(): Uri? {
+        if (hasCheckedInterrupted) return null
+        hasCheckedInterrupted = true
+        return speciesManager.findInterruptedIdentification()
+    }
+
+    fun resumeInterruptedIdentification() {
+        viewModelScope.launch {
+            speciesManager.resumeInterruptedIdentification { state ->
+                _uiState.value = state
+            }
+        }
+    }
+
     fun retryIdentification() {
         speciesManager.currentImageUri?.let { uri ->
             identifySpecies(
@@ -55,6 +101,15 @@ class EcoLensViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
+    // Trả về false nếu đang có một lượt hàng loạt khác chạy
+    fun identifyBatch(imageUris: List<Uri>, languageCode: String): Boolean {
+        return batchPipeline.start(viewModelScope, imageUris, languageCode)
+    }
+
+    fun cancelBatchIdentification() {
+        batchPipeline.cancel()
+    }
+
     // ==================== CHAT FUNCTIONS ====================
 
     fun initNewChatSession(welcomeMessage: String, defaultTitle: String) {
@@ -63,8 +118,36 @@ class EcoLensViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
-    fun loadChatSession(sessionId: Long) {
-        chatManager.loadChatSession(sessionId)
+    fun loadChatSession(sessionId: Long, targetMessageId: Long? = null) {
+        chatManager.loadChatSession(sessionId, targetMessageId)
+    }
+
+    fun searchChatMessages(query: String): Flow<List<ChatSearchResult>> = flow {
+        emit(chatManager.searchMessages(query))
+    }
+
+    fun loadOlderMessages() {
+        if (isPagingMessages) return
+        isPagingMessages = true
+        viewModelScope.launch {
+            try {
+                chatManager.loadOlderMessages()
+            } finally {
+                isPagingMessages = false
+            }
+        }
+    }
+
+    fun loadNewerMessages() {
+        if (isPagingMessages || !chatManager.hasNewerMessages()) return
+        isPagingMessages = true
+        viewModelScope.launch {
+            try {
+                chatManager.loadNewerMessages()
+            } finally {
+                isPagingMessages = false
+            }
+        }
     }
 
     fun sendChatMessage(userMessage: String, defaultTitle: String) {
@@ -85,6 +168,12 @@ class EcoLensViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
+    fun deleteChatSessions(sessionIds: List<Long>) {
+        viewModelScope.launch {
+            chatManager.deleteChatSessions(sessionIds)
+        }
+    }
+
     fun startNewChatSession() {
         chatManager.startNewChatSession()
     }
@@ -95,19 +184,60 @@ class EcoLensViewModel(application: Application) : AndroidViewModel(application)
         sortOption: HistorySortOption,
         startDate: Long? = null,
         endDate: Long? = null
-    ): Flow<List<HistoryEntry>> {
+    ): Flow<List<HistorySummary>> {
         return historyManager.getHistoryBySortOption(sortOption, startDate, endDate)
     }
 
-    fun toggleFavorite(entry: HistoryEntry) {
+    // Danh sách lịch sử đã nhóm theo ngày, tính trên luồng nền
+    fun getHistorySections(
+        sortOption: HistorySortOption,
+        startDate: Long? = null,
+        endDate: Long? = null
+    ): Flow<List<HistoryListItem>> {
+        return getHistoryBySortOption(sortOption, startDate, endDate)
+            .map { HistoryListItem.build(it) }
+            .flowOn(Dispatchers.Default)
+    }
+
+    fun toggleFavorite(entry: HistorySummary) {
         viewModelScope.launch {
             historyManager.toggleFavorite(entry)
         }
     }
 
+    fun getHistoryEntry(id: Int): Flow<HistoryEntry?> = flow {
+        emit(historyManager.getEntryWithDetails(id))
+    }
+
+    fun setHistoryCompressionEnabled(enabled: Boolean) {
+        viewModelScope.launch {
+            historyManager.setCompressionEnabled(enabled)
+        }
+    }
+
+    fun setFavorite(ids: List<Int>, isFavorite: Boolean) {
+        viewModelScope.launch {
+            historyManager.setFavorite(ids, isFavorite)
+        }
+    }
+
+    fun deleteHistoryEntries(ids: List<Int>) {
+        viewModelScope.launch {
+            historyManager.deleteEntries(ids)
+        }
+    }
+
     fun deleteAllHistory() {
         viewModelScope.launch {
             historyManager.deleteAllHistory()
         }
     }
-}
\ No newline at end of file
+
+    // ==================== STATS FUNCTIONS ====================
+
+    fun verifyStats() {
+        viewModelScope.launch {
+            statsManager.verifyStats()
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.nguyendevs.ecolens.managers
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.security.MessageDigest
+
+class IdentificationJournalTest {
+
+    @Test
+    fun keyOf_isLowercaseSha256Hex() {
+        assertEquals(
+            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            IdentificationJournal.keyOf("abc".byteInputStream())
+        )
+    }
+
+    @Test
+    fun keyOf_emptyImage() {
+        assertEquals(
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+            IdentificationJournal.keyOf(ByteArrayInputStream(ByteArray(0)))
+        )
+    }
+
+    @Test
+    fun keyOf_coversWholeStreamLargerThanBuffer() {
+        val bytes = ByteArray(200 * 1024) { (it * 31).toByte() }
+        val expected = MessageDigest.getInstance("SHA-256").digest(bytes).joinToString("") { "%02x".format(it) }
+
+        assertEquals(expected, IdentificationJournal.keyOf(ByteArrayInputStream(bytes)))
+    }
+
+    @Test
+    fun keyOf_doesNotDependOnReadChunking() {
+        val bytes = ByteArray(100 * 1024) { it.toByte() }
+
+        // Content resolver có thể trả về từng đoạn ngắn hơn bộ đệm
+        val trickling = object : FilterInputStream(ByteArrayInputStream(bytes)) {
+            override fun read(b: ByteArray, off: Int, len: Int): Int = super.read(b, off, minOf(len, 1000))
+        }
+
+        assertEquals(IdentificationJournal.keyOf(ByteArrayInputStream(bytes)), IdentificationJournal.keyOf(trickling))
+    }
+
+    @Test
+    fun keyOf_differsForDifferentImages() {
+        val first: InputStream = ByteArrayInputStream(byteArrayOf(1, 2, 3))
+        val second: InputStream = ByteArrayInputStream(byteArrayOf(1, 2, 4))
+
+        assertNotEquals(IdentificationJournal.keyOf(first), IdentificationJournal.keyOf(second))
+    }
+}
@@ -0,0 +1,52 @@
+package com.nguyendevs.ecolens.managers
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ResumableGeminiStreamTest {
+
+    @Test
+    fun trimOverlap_removesRepeatedTail() {
+        val received = "Loài này sống ở rừng nhiệt đới ẩm và thường ra hoa"
+        val next = "ở rừng nhiệt đới ẩm và thường ra hoa vào mùa xuân."
+
+        assertEquals(" vào mùa xuân.", ResumableGeminiStream.trimOverlap(received, next))
+    }
+
+    @Test
+    fun trimOverlap_keepsTextWhenOnlyOneCharacterMatches() {
+        val received = "Lá có hình bầu dục."
+        val next = ". Hoa màu trắng, năm cánh."
+
+        assertEquals(next, ResumableGeminiStream.trimOverlap(received, next))
+    }
+
+    @Test
+    fun trimOverlap_keepsJsonWhenOnlyPunctuationMatches() {
+        val received = "{\"description\": \"Cây gỗ lớn\", "
+        val next = "\", \"habitat\": \"Rừng thường xanh\"}"
+
+        assertEquals(next, ResumableGeminiStream.trimOverlap(received, next))
+    }
+
+    @Test
+    fun trimOverlap_ignoresOverlapShorterThanMinimum() {
+        val received = "abc 0123456789"
+        val next = "0123456789 tiếp theo"
+
+        assertEquals(next, ResumableGeminiStream.trimOverlap(received, next))
+    }
+
+    @Test
+    fun trimOverlap_trimsOverlapAtMinimumLength() {
+        val received = "phần đầu 0123456789abcdef"
+        val next = "0123456789abcdef phần sau"
+
+        assertEquals(" phần sau", ResumableGeminiStream.trimOverlap(received, next))
+    }
+
+    @Test
+    fun trimOverlap_returnsNextWhenNothingReceived() {
+        assertEquals("mới", ResumableGeminiStream.trimOverlap("", "mới"))
+    }
+}
@@ -0,0 +1,123 @@
+package com.nguyendevs.ecolens.network
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
+
+class HedgingPolicyTest {
+
+    @Before
+    fun setUp() {
+        HedgingPolicy.resetBudget()
+    }
+
+    @Test
+    fun disabledByDefault() {
+        assertFalse(HedgingPolicy.enabled)
+    }
+
+    @Test
+    fun fastPrimary_sendsNoHedge() = runBlocking {
+        val calls = AtomicInteger()
+
+        val result = HedgingPolicy.hedgeAfter(200, release = {}) {
+            calls.incrementAndGet()
+            "primary"
+        }
+
+        assertEquals("primary", result)
+        assertEquals(1, calls.get())
+    }
+
+    @Test
+    fun slowPrimary_hedgeWinsAndPrimaryIsCancelled() = runBlocking {
+        val calls = AtomicInteger()
+        val primaryCancelled = CompletableDeferred<Boolean>()
+
+        val result = HedgingPolicy.hedgeAfter(50, release = {}) {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    awaitCancellation()
+                } finally {
+                    primaryCancelled.complete(true)
+                }
+            }
+            "hedged"
+        }
+
+        assertEquals("hedged", result)
+        assertEquals(2, calls.get())
+        assertTrue(primaryCancelled.await())
+    }
+
+    @Test
+    fun noBudget_waitsForPrimary() = runBlocking {
+        HedgingPolicy.resetBudget(0.0)
+        val calls = AtomicInteger()
+
+        val result = HedgingPolicy.hedgeAfter(20, release = {}) {
+            calls.incrementAndGet()
+            delay(100)
+            "primary"
+        }
+
+        assertEquals("primary", result)
+        assertEquals(1, calls.get())
+    }
+
+    @Test
+    fun failedPrimary_waitsForHedge() = runBlocking {
+        val calls = AtomicInteger()
+
+        val result = HedgingPolicy.hedgeAfter(20, release = {}) {
+            if (calls.incrementAndGet() == 1) {
+                delay(60)
+                throw IOException("reset")
+            }
+            delay(120)
+            "hedged"
+        }
+
+        assertEquals("hedged", result)
+    }
+
+    @Test
+    fun bothFail_throwsLastError() = runBlocking {
+        val calls = AtomicInteger()
+
+        val error = runCatching {
+            HedgingPolicy.hedgeAfter<String>(20, release = {}) {
+                delay(50)
+                throw IOException("call ${calls.incrementAndGet()}")
+            }
+        }.exceptionOrNull()
+
+        assertTrue(error is IOException)
+        assertEquals(2, calls.get())
+    }
+
+    @Test
+    fun loserThatAlreadyCompleted_isReleased() = runBlocking {
+        val released = Collections.synchronizedList(mutableListOf<String>())
+        val calls = AtomicInteger()
+
+        // Lệnh gốc không dừng kịp khi bị hủy và vẫn trả về, kết quả đó phải được đóng
+        val result = HedgingPolicy.hedgeAfter(30, release = { released.add(it) }) {
+            val index = calls.incrementAndGet()
+            if (index == 1) withContext(NonCancellable) { delay(60) }
+            "call $index"
+        }
+
+        assertEquals("call 2", result)
+        assertEquals(listOf("call 1"), released)
+    }
+}
@@ -0,0 +1,94 @@
+package com.nguyendevs.ecolens.network
+
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class NetworkMetricsTest {
+
+    @Before
+    fun setUp() {
+        NetworkMetrics.clear()
+    }
+
+    private fun timing(endpoint: String, totalMs: Long, ttfbMs: Long? = totalMs / 2, success: Boolean = true) =
+        NetworkMetrics.CallTiming(
+            endpoint = endpoint,
+            method = "POST",
+            startedAt = 0L,
+            dnsMs = null,
+            connectMs = null,
+            tlsMs = null,
+            uploadMs = null,
+            ttfbMs = ttfbMs,
+            totalMs = totalMs,
+            requestBytes = 0L,
+            responseCode = if (success) 200 else 500,
+            success = success
+        )
+
+    @Test
+    fun summaries_useNearestRankPercentiles() {
+        (1L..100L).shuffled().forEach { NetworkMetrics.record(timing("score_image", it)) }
+
+        val summary = NetworkMetrics.summaries().single()
+
+        assertEquals(100, summary.count)
+        assertEquals(NetworkMetrics.Percentiles(50, 95, 99), summary.total)
+    }
+
+    @Test
+    fun summaries_singleSampleIsEveryPercentile() {
+        NetworkMetrics.record(timing("taxa", 42, ttfbMs = null))
+
+        val summary = NetworkMetrics.summaries().single()
+
+        assertEquals(NetworkMetrics.Percentiles(42, 42, 42), summary.total)
+        assertNull(summary.ttfb)
+        assertNull(summary.upload)
+    }
+
+    @Test
+    fun summaries_groupByEndpointAndCountFailures() {
+        repeat(3) { NetworkMetrics.record(timing("gemini", 100)) }
+        NetworkMetrics.record(timing("gemini", 100, success = false))
+        NetworkMetrics.record(timing("taxa", 10))
+
+        val summaries = NetworkMetrics.summaries()
+
+        assertEquals(listOf("gemini", "taxa"), summaries.map { it.endpoint })
+        assertEquals(4, summaries[0].count)
+        assertEquals(1, summaries[0].failures)
+    }
+
+    @Test
+    fun ringBuffer_keepsNewestCalls() {
+        (1L..300L).forEach { NetworkMetrics.record(timing("score_image", it)) }
+
+        val snapshot = NetworkMetrics.snapshot()
+
+        assertEquals(256, snapshot.size)
+        assertEquals(45L, snapshot.first().totalMs)
+        assertEquals(300L, snapshot.last().totalMs)
+    }
+
+    @Test
+    fun ttfbPercentile_needsMinimumSuccessfulSamples() {
+        repeat(9) { NetworkMetrics.record(timing("score_image", 200, ttfbMs = 100)) }
+        NetworkMetrics.record(timing("score_image", 200, ttfbMs = 100, success = false))
+
+        assertNull(NetworkMetrics.ttfbPercentile("score_image", 90, 10))
+
+        NetworkMetrics.record(timing("score_image", 200, ttfbMs = 100))
+        assertEquals(100L, NetworkMetrics.ttfbPercentile("score_image", 90, 10))
+    }
+
+    @Test
+    fun ttfbPercentile_ignoresFailuresAndOtherEndpoints() {
+        (1L..10L).forEach { NetworkMetrics.record(timing("score_image", 1000, ttfbMs = it * 10)) }
+        NetworkMetrics.record(timing("score_image", 1000, ttfbMs = 9_000, success = false))
+        NetworkMetrics.record(timing("gemini", 1000, ttfbMs = 9_000))
+
+        assertEquals(90L, NetworkMetrics.ttfbPercentile("score_image", 90, 10))
+    }
+}
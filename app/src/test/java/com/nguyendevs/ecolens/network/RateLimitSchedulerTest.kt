@@ -0,0 +1,88 @@
+package com.nguyendevs.ecolens.network
+
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.UUID
+
+class RateLimitSchedulerTest {
+
+    // Trạng thái của scheduler là toàn cục, mỗi test dùng một nhóm riêng
+    private val group = "test-${UUID.randomUUID()}"
+
+    private fun response(code: Int = 200, vararg headers: Pair<String, String>): Response {
+        return Response.Builder()
+            .request(Request.Builder().url("https://worker.test/gemini").build())
+            .protocol(Protocol.HTTP_1_1)
+            .code(code)
+            .message("")
+            .apply { headers.forEach { (name, value) -> header(name, value) } }
+            .build()
+    }
+
+    private fun tryAcquire(maxWaitMs: Long = 50) = RateLimitScheduler.acquire(group, maxWaitMs) { false }
+
+    @Test
+    fun groupOf_mapsWorkerPaths() {
+        assertEquals(RateLimitScheduler.GROUP_GEMINI, RateLimitScheduler.groupOf("https://w.dev/gemini/stream".toHttpUrl()))
+        assertEquals(
+            RateLimitScheduler.GROUP_INATURALIST,
+            RateLimitScheduler.groupOf("https://w.dev/inaturalist/v1/taxa/1".toHttpUrl())
+        )
+        assertNull(RateLimitScheduler.groupOf("https://w.dev/health".toHttpUrl()))
+    }
+
+    @Test
+    fun acquire_allowsBurstUpToCapacity() {
+        repeat(10) { assertTrue(tryAcquire()) }
+        assertFalse(tryAcquire())
+    }
+
+    @Test
+    fun acquire_waitsForRefill() {
+        repeat(10) { tryAcquire() }
+
+        val startedAt = System.currentTimeMillis()
+        assertTrue(tryAcquire(maxWaitMs = 3_000))
+        assertTrue(System.currentTimeMillis() - startedAt >= 500)
+    }
+
+    @Test
+    fun acquire_returnsFalseWhenCanceled() {
+        assertFalse(RateLimitScheduler.acquire(group, 1_000) { true })
+    }
+
+    @Test
+    fun rateLimitRemaining_capsTokens() {
+        RateLimitScheduler.onResponse(group, response(200, "X-RateLimit-Remaining" to "1"))
+
+        assertTrue(tryAcquire())
+        assertFalse(tryAcquire())
+    }
+
+    @Test
+    fun tooManyRequests_blocksUntilReset() {
+        RateLimitScheduler.onResponse(group, response(429, "X-RateLimit-Reset" to "60"))
+
+        assertFalse(tryAcquire(maxWaitMs = 300))
+    }
+
+    @Test
+    fun allKeysFailed_opensBreakerUntilSuccess() {
+        RateLimitScheduler.onResponse(group, response(503, "X-Gemini-All-Failed" to "true"))
+        assertFalse(tryAcquire())
+
+        RateLimitScheduler.onResponse(group, response(200))
+        assertTrue(tryAcquire())
+    }
+
+    @Test
+    fun networkFailure_doesNotOpenBreaker() {
+        RateLimitScheduler.onFailure(group)
+
+        assertTrue(tryAcquire())
+    }
+}
@@ -0,0 +1,66 @@
+package com.nguyendevs.ecolens.utils
+
+// Bản regex cũ của MarkdownProcessor.process, giữ lại làm chuẩn so sánh và benchmark
+class LegacyMarkdownProcessor {
+
+    fun process(
+        text: String?,
+        isConservationStatus: Boolean = false,
+        isVietnamese: Boolean = true
+    ): String {
+        if (text.isNullOrBlank()) return ""
+
+        var result = text
+            .replace(Regex("\\*\\*(.+?)\\*\\*")) { "<b>${it.groupValues[1]}</b>" }
+            .replace(Regex("##(.+?)##")) { "<font color='#00796B'><b>${it.groupValues[1]}</b></font>" }
+            .replace(Regex("~~(.+?)~~")) { "<i>${it.groupValues[1]}</i>" }
+            .replace("\n", "<br>")
+
+        if (isConservationStatus) {
+            result = colorizeConservationStatus(result, isVietnamese)
+        }
+
+        return result
+    }
+
+    private fun colorizeConservationStatus(text: String, isVietnamese: Boolean): String {
+        val statusMap = if (isVietnamese) {
+            mapOf(
+                "Cực kỳ nguy cấp" to "#8B0000",
+                "Nguy cấp" to "#8B0000",
+                "Sách Đỏ Việt Nam" to "#c97408",
+                "Sách Đỏ" to "#c97408",
+                "Sắp nguy cấp" to "#eddb11",
+                "Ít lo ngại" to "#55f200",
+                "Chưa đánh giá" to "#05deff"
+            )
+        } else {
+            mapOf(
+                "Critically Endangered" to "#8B0000",
+                "Endangered" to "#8B0000",
+                "Vulnerable (Vietnam Red Data Book)" to "#c97408",
+                "Vulnerable" to "#c97408",
+                "Near Threatened" to "#eddb11",
+                "Least Concern" to "#55f200",
+                "Not Evaluated" to "#05deff"
+            )
+        }
+
+        var result = text
+        statusMap.entries.sortedByDescending { it.key.length }.forEach { (status, color) ->
+            if (result.contains(status, ignoreCase = true)) {
+                result = result.replace(
+                    Regex("(?i)$status"),
+                    "<font color='$color'><b>$status</b></font>"
+                )
+            }
+        }
+        return result
+    }
+
+    fun removeRankPrefix(text: String?, prefix: String): String {
+        return text?.trim()?.replaceFirst(Regex("^(?i)$prefix\\s*[:\\-\\s]+"), "")
+            ?.replaceFirstChar { if (it.isLowerCase()) it.titlecase() else it.toString() }
+            ?.trim() ?: ""
+    }
+}
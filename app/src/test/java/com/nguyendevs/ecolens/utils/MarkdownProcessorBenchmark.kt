@@ -0,0 +1,58 @@
+package com.nguyendevs.ecolens.utils
+
+import org.junit.Assert.*
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Benchmark JVM: tokenizer một lượt (ra RichText) so với chuỗi regex cũ (ra HTML).
+ * Kết quả in ra stdout; chỉ kiểm tra hai bên xử lý cùng một khối văn bản.
+ * Bị bỏ qua trong lượt test thường, chạy bằng ./gradlew testDebugUnitTest -Pbenchmark.
+ */
+class MarkdownProcessorBenchmark {
+
+    companion object {
+        private const val WARMUP_ROUNDS = 200
+        private const val MEASURED_ROUNDS = 1000
+    }
+
+    private val sample = buildString {
+        repeat(20) { index ->
+            append("Đoạn $index: lá **xanh đậm**, hoa ##nổi bật## và quả ~~hơi cong~~. ")
+            append("Tình trạng: Sắp nguy cấp, có trong Sách Đỏ Việt Nam.\n")
+        }
+    }
+
+    @Before
+    fun requireBenchmarkFlag() {
+        assumeTrue(System.getProperty("benchmark") == "true")
+    }
+
+    @Test
+    fun tokenizerVersusLegacyRegex() {
+        val processor = MarkdownProcessor()
+        val legacy = LegacyMarkdownProcessor()
+
+        val legacyNanos = measure { legacy.process(sample, isConservationStatus = true).length }
+        val tokenizerNanos = measure { processor.process(sample, isConservationStatus = true).runs.size }
+        val tokenizerHtmlNanos = measure { processor.process(sample, isConservationStatus = true).toHtml().length }
+
+        println("MarkdownProcessor benchmark (${sample.length} chars, ns/op):")
+        println("  legacy regex -> HTML:     ${legacyNanos / MEASURED_ROUNDS}")
+        println("  tokenizer -> RichText:    ${tokenizerNanos / MEASURED_ROUNDS}")
+        println("  tokenizer -> HTML string: ${tokenizerHtmlNanos / MEASURED_ROUNDS}")
+
+        assertFalse(processor.process(sample, isConservationStatus = true).isEmpty)
+    }
+
+    private inline fun measure(block: () -> Int): Long {
+        var sink = 0
+        repeat(WARMUP_ROUNDS) { sink += block() }
+        val start = System.nanoTime()
+        repeat(MEASURED_ROUNDS) { sink += block() }
+        val elapsed = System.nanoTime() - start
+        assertTrue(sink > 0)
+        return elapsed
+    }
+}
@@ -0,0 +1,111 @@
+package com.nguyendevs.ecolens.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class MarkdownProcessorTest {
+
+    private val processor = MarkdownProcessor()
+    private val legacy = LegacyMarkdownProcessor()
+
+    // Từng ký tự kèm kiểu chữ và màu, để so sánh hai cách chia run khác nhau nhưng hiển thị như nhau
+    private fun styledChars(text: RichText): List<Triple<Char, Int, String?>> {
+        return text.runs.flatMap { run ->
+            run.text.map { char ->
+                if (char == '\n') Triple(char, RichText.STYLE_NORMAL, null) else Triple(char, run.style, run.color)
+            }
+        }
+    }
+
+    private fun assertSameAsLegacy(input: String, isConservationStatus: Boolean = false, isVietnamese: Boolean = true) {
+        val expected = RichText.fromHtml(legacy.process(input, isConservationStatus, isVietnamese))
+        val actual = processor.process(input, isConservationStatus, isVietnamese)
+        assertEquals("input: $input", styledChars(expected), styledChars(actual))
+    }
+
+    @Test
+    fun process_matchesLegacyOutput() {
+        listOf(
+            "Văn bản thường không có định dạng",
+            "Lá **xanh đậm** và ~~hơi cong~~",
+            "##Điểm nổi bật## của loài",
+            "**đậm ##nhấn mạnh## đậm**",
+            "##nhấn **đậm** nhấn##",
+            "Dòng 1\nDòng **2**\n\n~~Dòng 4~~",
+            "** không đóng",
+            "****",
+            "Hai **a** và **b** trên một dòng",
+            "**mở ở dòng này\nđóng ở dòng kia**"
+        ).forEach { assertSameAsLegacy(it) }
+    }
+
+    @Test
+    fun process_matchesLegacyConservationColoring() {
+        listOf(
+            "Nguy cấp theo IUCN",
+            "Ghi trong Sách Đỏ Việt Nam",
+            "Ít lo ngại, **chưa đánh giá** lại"
+        ).forEach { assertSameAsLegacy(it, isConservationStatus = true, isVietnamese = true) }
+
+        listOf(
+            "Critically Endangered in the wild",
+            "Listed as Vulnerable",
+            "least concern overall"
+        ).forEach { assertSameAsLegacy(it, isConservationStatus = true, isVietnamese = false) }
+    }
+
+    @Test
+    fun process_prefersLongestStatusWithoutRecasingInnerWords() {
+        val result = processor.process("Cực kỳ nguy cấp", isConservationStatus = true)
+
+        assertEquals(listOf(RichText.Run("Cực kỳ nguy cấp", RichText.STYLE_BOLD, "#8B0000")), result.runs)
+    }
+
+    // Bản regex cũ coi dấu ngoặc trong nhãn là nhóm regex nên không bao giờ tô được nhãn này
+    @Test
+    fun process_colorsStatusLabelContainingParentheses() {
+        val result = processor.process("Vulnerable (Vietnam Red Data Book)", isConservationStatus = true, isVietnamese = false)
+
+        assertEquals(
+            listOf(RichText.Run("Vulnerable (Vietnam Red Data Book)", RichText.STYLE_BOLD, "#c97408")),
+            result.runs
+        )
+    }
+
+    @Test
+    fun process_keepsStatusTextUncoloredOutsideConservationSection() {
+        val result = processor.process("Nguy cấp")
+
+        assertEquals(listOf(RichText.Run("Nguy cấp")), result.runs)
+    }
+
+    @Test
+    fun process_splitsLinesIntoBreakRuns() {
+        val result = processor.process("a\n**b**")
+
+        assertEquals(listOf(
+            RichText.Run("a"),
+            RichText.Run("\n"),
+            RichText.Run("b", RichText.STYLE_BOLD)
+        ), result.runs)
+    }
+
+    @Test
+    fun process_returnsEmptyForBlankInput() {
+        assertTrue(processor.process(null).isEmpty)
+        assertTrue(processor.process("   ").isEmpty)
+    }
+
+    @Test
+    fun removeRankPrefix_matchesLegacy() {
+        listOf(
+            "Giới: thực vật" to "Giới",
+            "giới - Động vật" to "Giới",
+            "Kingdom   Plantae" to "Kingdom",
+            "Plantae" to "Kingdom",
+            "  Họ:Fagaceae  " to "Họ"
+        ).forEach { (text, prefix) ->
+            assertEquals(legacy.removeRankPrefix(text, prefix), processor.removeRankPrefix(text, prefix))
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.nguyendevs.ecolens.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class RichTextTest {
+
+    @Test
+    fun toHtml_escapesTextAndEncodesLineBreaks() {
+        val text = RichText(listOf(
+            RichText.Run("a < b & c", RichText.STYLE_BOLD),
+            RichText.Run("\n"),
+            RichText.Run("x", RichText.STYLE_ITALIC, "#00796B")
+        ))
+
+        assertEquals("<b>a &lt; b &amp; c</b><br><font color='#00796B'><i>x</i></font>", text.toHtml())
+    }
+
+    @Test
+    fun fromHtml_roundTripsToHtmlOutput() {
+        val original = RichText(listOf(
+            RichText.Run("Loài "),
+            RichText.Run("quý <hiếm>", RichText.STYLE_BOLD, "#8B0000"),
+            RichText.Run("\n"),
+            RichText.Run("nghiêng & đậm", RichText.STYLE_BOLD or RichText.STYLE_ITALIC)
+        ))
+
+        assertEquals(original.runs, RichText.fromHtml(original.toHtml()).runs)
+    }
+
+    @Test
+    fun fromHtml_readsNestedLegacyMarkup() {
+        val parsed = RichText.fromHtml("<b>a <font color='#00796B'><b>b</b></font> c</b><br><i>d</i>")
+
+        assertEquals(listOf(
+            RichText.Run("a ", RichText.STYLE_BOLD),
+            RichText.Run("b", RichText.STYLE_BOLD, "#00796B"),
+            RichText.Run(" c", RichText.STYLE_BOLD),
+            RichText.Run("\n"),
+            RichText.Run("d", RichText.STYLE_ITALIC)
+        ), parsed.runs)
+    }
+
+    @Test
+    fun fromHtml_dropsUnknownTagsAndKeepsStrayBrackets() {
+        val parsed = RichText.fromHtml("<p>1 < 2</p><br/>x&nbsp;&#65;&#x42;&bogus;")
+
+        assertEquals("1 < 2\nx AB&bogus;", parsed.runs.joinToString("") { it.text })
+    }
+
+    @Test
+    fun fromHtml_treatsRawNewlinesAsSpaces() {
+        assertEquals("a b", RichText.fromHtml("a\nb").toPlainText())
+    }
+
+    @Test
+    fun toPlainText_joinsRunsAndTrims() {
+        assertEquals("Tên: Lan", RichText.fromHtml("  <b>Tên:</b> Lan<br>").toPlainText())
+    }
+}